@@ -0,0 +1,57 @@
+package com.shizy.scan;
+
+import android.os.SystemClock;
+
+import androidx.test.core.app.ActivityScenario;
+
+import java.util.concurrent.atomic.AtomicReference;
+
+import static org.junit.Assert.fail;
+
+/**
+ * Runs the demo activity and hands out its scan fragment, for tests on a device with a camera.
+ */
+final class ScanFragmentScenario implements AutoCloseable {
+
+    interface Condition {
+
+        boolean isMet();
+
+    }
+
+    private final ActivityScenario<CodeScanDemoActivity> scenario;
+
+    private ScanFragmentScenario(ActivityScenario<CodeScanDemoActivity> scenario) {
+        this.scenario = scenario;
+    }
+
+    static ScanFragmentScenario launch() {
+        return new ScanFragmentScenario(ActivityScenario.launch(CodeScanDemoActivity.class));
+    }
+
+    CodeScanFragment getFragment() {
+        final AtomicReference<CodeScanFragment> fragment = new AtomicReference<>();
+        scenario.onActivity(activity -> fragment.set((CodeScanFragment)
+                activity.getSupportFragmentManager().findFragmentById(R.id.cameraxFragment)));
+        return fragment.get();
+    }
+
+    /**
+     * Polls {@code condition} until it is met, failing the test after {@code timeoutMillis}.
+     */
+    static void waitFor(String what, long timeoutMillis, Condition condition) {
+        final long deadline = SystemClock.elapsedRealtime() + timeoutMillis;
+        while (!condition.isMet()) {
+            if (SystemClock.elapsedRealtime() > deadline) {
+                fail("Timed out waiting for " + what);
+            }
+            SystemClock.sleep(10);
+        }
+    }
+
+    @Override
+    public void close() {
+        scenario.close();
+    }
+
+}
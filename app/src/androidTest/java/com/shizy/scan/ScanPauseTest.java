@@ -0,0 +1,65 @@
+package com.shizy.scan;
+
+import android.Manifest;
+import android.os.SystemClock;
+import android.util.Log;
+
+import androidx.test.ext.junit.runners.AndroidJUnit4;
+import androidx.test.platform.app.InstrumentationRegistry;
+import androidx.test.rule.GrantPermissionRule;
+
+import com.shizy.scan.core.ScanMetrics;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+
+import static org.junit.Assert.assertEquals;
+
+/**
+ * Checks on a device that a stopped scan really stops the analysis stream, rather than receiving
+ * and discarding frames.
+ */
+@RunWith(AndroidJUnit4.class)
+public class ScanPauseTest {
+
+    private static final String TAG = ScanPauseTest.class.getSimpleName();
+
+    private static final long CAMERA_TIMEOUT_MILLIS = 10000;
+
+    /**
+     * Frames the camera had already handed over when the use case was unbound still arrive.
+     */
+    private static final long IN_FLIGHT_MILLIS = 500;
+
+    private static final long PAUSE_MILLIS = 3000;
+
+    @Rule
+    public final GrantPermissionRule cameraPermission = GrantPermissionRule.grant(Manifest.permission.CAMERA);
+
+    @Test
+    public void noAnalysisFramesArriveWhileStopped() {
+        try (ScanFragmentScenario scenario = ScanFragmentScenario.launch()) {
+            final CodeScanFragment fragment = scenario.getFragment();
+            ScanFragmentScenario.waitFor("analysis frames", CAMERA_TIMEOUT_MILLIS,
+                    () -> fragment.getScanMetrics().getFramesReceived() > 0);
+
+            fragment.stopScan();
+            // stopScan unbinds on the main thread.
+            InstrumentationRegistry.getInstrumentation().waitForIdleSync();
+            SystemClock.sleep(IN_FLIGHT_MILLIS);
+            final ScanMetrics.Snapshot unbound = fragment.getScanMetrics();
+            SystemClock.sleep(PAUSE_MILLIS);
+            final ScanMetrics.Snapshot paused = fragment.getScanMetrics();
+            Log.i(TAG, "Frames while paused: " + unbound.getFramesWhilePaused() + " in flight, "
+                    + (paused.getFramesWhilePaused() - unbound.getFramesWhilePaused()) + " after unbinding");
+            assertEquals(unbound.getFramesWhilePaused(), paused.getFramesWhilePaused());
+            assertEquals(unbound.getFramesReceived(), paused.getFramesReceived());
+
+            fragment.startScan();
+            ScanFragmentScenario.waitFor("analysis frames after restarting", CAMERA_TIMEOUT_MILLIS,
+                    () -> fragment.getScanMetrics().getFramesReceived() > paused.getFramesReceived());
+        }
+    }
+
+}
@@ -0,0 +1,49 @@
+package com.shizy.scan;
+
+import android.Manifest;
+import android.util.Log;
+
+import androidx.test.ext.junit.runners.AndroidJUnit4;
+import androidx.test.rule.GrantPermissionRule;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+
+import java.util.Arrays;
+
+/**
+ * Measures the time from creating the scan fragment to its first analyzed frame over a few
+ * launches, on a device with a camera. Every launch but the first finds the process warm; the
+ * per-step breakdown of each launch is logged by {@link StartupTrace}.
+ */
+@RunWith(AndroidJUnit4.class)
+public class StartupTimeTest {
+
+    private static final String TAG = StartupTimeTest.class.getSimpleName();
+
+    private static final int LAUNCHES = 5;
+
+    private static final long FIRST_FRAME_TIMEOUT_MILLIS = 10000;
+
+    @Rule
+    public final GrantPermissionRule cameraPermission = GrantPermissionRule.grant(Manifest.permission.CAMERA);
+
+    @Test
+    public void measuresTimeToFirstFrame() {
+        final long[] millis = new long[LAUNCHES];
+        for (int i = 0; i < LAUNCHES; i++) {
+            try (ScanFragmentScenario scenario = ScanFragmentScenario.launch()) {
+                final CodeScanFragment fragment = scenario.getFragment();
+                ScanFragmentScenario.waitFor("the first frame", FIRST_FRAME_TIMEOUT_MILLIS,
+                        () -> fragment.getTimeToFirstFrameMillis() >= 0);
+                millis[i] = fragment.getTimeToFirstFrameMillis();
+            }
+        }
+        Log.i(TAG, "Time to first frame, first launch " + millis[0] + " ms, all " + Arrays.toString(millis));
+        final long[] sorted = millis.clone();
+        Arrays.sort(sorted);
+        Log.i(TAG, "Median " + sorted[LAUNCHES / 2] + " ms, best " + sorted[0] + " ms");
+    }
+
+}
@@ -0,0 +1,51 @@
+package com.shizy.scan;
+
+import android.content.Context;
+import android.content.SharedPreferences;
+import android.os.Build;
+
+import androidx.annotation.NonNull;
+
+import com.shizy.scan.core.AnalysisProfile;
+import com.shizy.scan.core.AnalysisTuner;
+
+/**
+ * Remembers the analysis profile the tuner settled on, so that the next launch starts from it
+ * rather than from the default. The profile is tagged with the build fingerprint: after a backup
+ * is restored onto another device or the system is updated, tuning starts over.
+ */
+final class AnalysisProfileStore {
+
+    private static final String PREFS_NAME = "code_scan_analysis_profile";
+    private static final String KEY_FINGERPRINT = "fingerprint";
+    private static final String KEY_WIDTH = "width";
+    private static final String KEY_HEIGHT = "height";
+    private static final String KEY_FRAME_INTERVAL = "frameIntervalMillis";
+
+    private final SharedPreferences prefs;
+
+    AnalysisProfileStore(@NonNull Context context) {
+        prefs = context.getApplicationContext().getSharedPreferences(PREFS_NAME, Context.MODE_PRIVATE);
+    }
+
+    @NonNull
+    AnalysisProfile load() {
+        if (!Build.FINGERPRINT.equals(prefs.getString(KEY_FINGERPRINT, null))) {
+            return AnalysisTuner.defaultProfile();
+        }
+        final AnalysisProfile fallback = AnalysisTuner.defaultProfile();
+        return new AnalysisProfile(prefs.getInt(KEY_WIDTH, fallback.getWidth()),
+                prefs.getInt(KEY_HEIGHT, fallback.getHeight()),
+                prefs.getLong(KEY_FRAME_INTERVAL, fallback.getFrameIntervalMillis()));
+    }
+
+    void save(@NonNull AnalysisProfile profile) {
+        prefs.edit()
+                .putString(KEY_FINGERPRINT, Build.FINGERPRINT)
+                .putInt(KEY_WIDTH, profile.getWidth())
+                .putInt(KEY_HEIGHT, profile.getHeight())
+                .putLong(KEY_FRAME_INTERVAL, profile.getFrameIntervalMillis())
+                .apply();
+    }
+
+}
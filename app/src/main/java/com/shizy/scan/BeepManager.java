@@ -2,59 +2,104 @@ package com.shizy.scan;
 
 import android.app.Activity;
 import android.content.Context;
-import android.content.res.AssetFileDescriptor;
+import android.media.AudioAttributes;
 import android.media.AudioManager;
-import android.media.MediaPlayer;
+import android.media.SoundPool;
+import android.os.Handler;
+import android.os.HandlerThread;
+import android.os.Process;
+import android.os.SystemClock;
 import android.os.Vibrator;
 import android.util.Log;
 
 import androidx.annotation.NonNull;
 
 import java.io.Closeable;
-import java.io.IOException;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
 
 /**
  * Manages beeps and vibrations.
+ * <p>
+ * Feedback is played on a thread of its own, from a {@link SoundPool} loaded up front, so that
+ * {@link #playBeepSoundAndVibrate} can be called straight from a decoding thread: it only bumps a
+ * counter and, for the first request of a burst, posts to that thread. Requests arriving within
+ * {@value #MIN_INTERVAL_MS} ms of the last beep are merged into one, which keeps continuous
+ * scanning from turning into a buzz.
  */
-final class BeepManager implements MediaPlayer.OnErrorListener, Closeable {
+final class BeepManager implements Closeable {
 
     private static final String TAG = BeepManager.class.getSimpleName();
 
     private static final float BEEP_VOLUME = 0.10f;
     private static final long VIBRATE_DURATION = 200L;
+    private static final long MIN_INTERVAL_MS = 300L;
 
     private final Activity activity;
-    private MediaPlayer mediaPlayer;
-    private boolean playBeep;
-    private boolean vibrate;
+    private final Vibrator vibrator;
+    private final AtomicLong requests = new AtomicLong();
+    private final AtomicLong played = new AtomicLong();
+    private volatile Feedback feedback;
+    private volatile boolean playBeep;
+    private volatile boolean vibrate;
+    private volatile Runnable onReady;
 
     BeepManager(@NonNull Activity activity) {
         this.activity = activity;
-        this.mediaPlayer = null;
+        this.vibrator = (Vibrator) activity.getSystemService(Context.VIBRATOR_SERVICE);
         updatePrefs();
     }
 
-    synchronized void updatePrefs() {
+    /**
+     * Main thread only, like {@link #close}.
+     */
+    void updatePrefs() {
         playBeep = shouldBeep(activity);
         vibrate = true;
-        if (playBeep && mediaPlayer == null) {
+        if (feedback == null) {
+            feedback = new Feedback();
+        }
+        if (playBeep) {
             // The volume on STREAM_SYSTEM is not adjustable, and users found it too loud,
             // so we now play on the music stream.
             activity.setVolumeControlStream(AudioManager.STREAM_MUSIC);
-            mediaPlayer = buildMediaPlayer(activity);
+            feedback.loadSound();
         }
     }
 
-    synchronized void playBeepSoundAndVibrate() {
-        if (playBeep && mediaPlayer != null) {
-            mediaPlayer.start();
-        }
-        if (vibrate) {
-            Vibrator vibrator = (Vibrator) activity.getSystemService(Context.VIBRATOR_SERVICE);
-            vibrator.vibrate(VIBRATE_DURATION);
+    /**
+     * @param onReady called on the feedback thread once the beep can be played, or {@code null}
+     */
+    void setOnReady(Runnable onReady) {
+        this.onReady = onReady;
+    }
+
+    /**
+     * Never blocks. May be called from any thread.
+     */
+    void playBeepSoundAndVibrate() {
+        requests.incrementAndGet();
+        final Feedback feedback = this.feedback;
+        if (feedback != null) {
+            feedback.request();
         }
     }
 
+    /**
+     * @return calls to {@link #playBeepSoundAndVibrate}
+     */
+    long getRequests() {
+        return requests.get();
+    }
+
+    /**
+     * @return beeps and vibrations actually played, fewer than the requests when they came in
+     * bursts
+     */
+    long getPlayed() {
+        return played.get();
+    }
+
     private static boolean shouldBeep(@NonNull Context activity) {
         boolean shouldPlayBeep = true;
         if (shouldPlayBeep) {
@@ -67,37 +112,110 @@ final class BeepManager implements MediaPlayer.OnErrorListener, Closeable {
         return shouldPlayBeep;
     }
 
-    private MediaPlayer buildMediaPlayer(Context activity) {
-        MediaPlayer mediaPlayer = new MediaPlayer();
-        try (AssetFileDescriptor file = activity.getResources().openRawResourceFd(R.raw.beep)) {
-            mediaPlayer.setDataSource(file.getFileDescriptor(), file.getStartOffset(), file.getLength());
-            mediaPlayer.setOnErrorListener(this);
-            mediaPlayer.setAudioStreamType(AudioManager.STREAM_MUSIC);
-            mediaPlayer.setLooping(false);
-            mediaPlayer.setVolume(BEEP_VOLUME, BEEP_VOLUME);
-            mediaPlayer.prepare();
-            return mediaPlayer;
-        } catch (IOException ioe) {
-            Log.w(TAG, ioe);
-            mediaPlayer.release();
-            return null;
+    /**
+     * Releases the sound and stops the feedback thread. {@link #updatePrefs} starts them again.
+     */
+    @Override
+    public void close() {
+        final Feedback feedback = this.feedback;
+        if (feedback != null) {
+            this.feedback = null;
+            feedback.quit();
         }
     }
 
-    @Override
-    public synchronized boolean onError(MediaPlayer mp, int what, int extra) {
-        // possibly media player error, so release and recreate
-        close();
-        updatePrefs();
-        return true;
-    }
+    /**
+     * One feedback thread and its sound pool. Everything but {@link #request} runs on that thread.
+     */
+    private final class Feedback implements SoundPool.OnLoadCompleteListener {
 
-    @Override
-    public synchronized void close() {
-        if (mediaPlayer != null) {
-            mediaPlayer.release();
-            mediaPlayer = null;
+        private final HandlerThread thread;
+        private final Handler handler;
+        private final AtomicInteger pending = new AtomicInteger();
+        private final Runnable drain = this::drain;
+        private SoundPool soundPool;
+        private int soundId;
+        private boolean loaded;
+        private long lastPlayedMillis = -MIN_INTERVAL_MS;
+
+        Feedback() {
+            thread = new HandlerThread("scan-feedback", Process.THREAD_PRIORITY_AUDIO);
+            thread.start();
+            handler = new Handler(thread.getLooper());
+        }
+
+        void request() {
+            // Only the first request of a burst posts, the others are picked up by the same drain.
+            if (pending.getAndIncrement() == 0) {
+                handler.post(drain);
+            }
+        }
+
+        void loadSound() {
+            handler.post(() -> {
+                if (soundPool != null) {
+                    return;
+                }
+                soundPool = new SoundPool.Builder()
+                        .setMaxStreams(2)
+                        .setAudioAttributes(new AudioAttributes.Builder()
+                                .setUsage(AudioAttributes.USAGE_MEDIA)
+                                .setContentType(AudioAttributes.CONTENT_TYPE_SONIFICATION)
+                                .build())
+                        .build();
+                // Called back on this thread, which created the pool.
+                soundPool.setOnLoadCompleteListener(this);
+                soundId = soundPool.load(activity, R.raw.beep, 1);
+            });
+        }
+
+        @Override
+        public void onLoadComplete(SoundPool soundPool, int sampleId, int status) {
+            if (soundPool != this.soundPool || sampleId != soundId) {
+                return;
+            }
+            if (status != 0) {
+                Log.w(TAG, "Failed to load beep: " + status);
+                return;
+            }
+            loaded = true;
+            final Runnable ready = onReady;
+            if (ready != null) {
+                ready.run();
+            }
         }
+
+        private void drain() {
+            final long now = SystemClock.uptimeMillis();
+            final long wait = lastPlayedMillis + MIN_INTERVAL_MS - now;
+            if (wait > 0) {
+                // Whatever else comes in meanwhile is merged into this one.
+                handler.postDelayed(drain, wait);
+                return;
+            }
+            pending.set(0);
+            lastPlayedMillis = now;
+            played.incrementAndGet();
+            if (playBeep && loaded) {
+                soundPool.play(soundId, BEEP_VOLUME, BEEP_VOLUME, 1, 0, 1f);
+            }
+            if (vibrate && vibrator != null) {
+                vibrator.vibrate(VIBRATE_DURATION);
+            }
+        }
+
+        void quit() {
+            handler.removeCallbacks(drain);
+            handler.post(() -> {
+                if (soundPool != null) {
+                    soundPool.release();
+                    soundPool = null;
+                    loaded = false;
+                }
+            });
+            thread.quitSafely();
+        }
+
     }
 
-}
\ No newline at end of file
+}
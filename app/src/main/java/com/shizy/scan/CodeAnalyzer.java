@@ -1,92 +1,709 @@
 package com.shizy.scan;
 
+import android.graphics.Rect;
 import android.util.Log;
 
 import androidx.annotation.NonNull;
 import androidx.camera.core.ImageAnalysis;
 import androidx.camera.core.ImageProxy;
 
-import com.google.zxing.BinaryBitmap;
-import com.google.zxing.DecodeHintType;
-import com.google.zxing.MultiFormatReader;
-import com.google.zxing.PlanarYUVLuminanceSource;
-import com.google.zxing.ReaderException;
 import com.google.zxing.Result;
-import com.google.zxing.common.HybridBinarizer;
+import com.google.zxing.ResultPoint;
+import com.shizy.scan.core.AnalysisTuner;
+import com.shizy.scan.core.CodeLocationTracker;
+import com.shizy.scan.core.DecodeConfig;
+import com.shizy.scan.core.DecodePipeline;
+import com.shizy.scan.core.DecodeStats;
+import com.shizy.scan.core.DecodeToken;
+import com.shizy.scan.core.Frame;
+import com.shizy.scan.core.FrameDecoder;
+import com.shizy.scan.core.FrameQualityFilter;
+import com.shizy.scan.core.FrameRecorder;
+import com.shizy.scan.core.FrameSequence;
+import com.shizy.scan.core.MultiCodeTracker;
+import com.shizy.scan.core.ResultCache;
+import com.shizy.scan.core.ResultStream;
+import com.shizy.scan.core.ScanHistory;
+import com.shizy.scan.core.ScanResult;
+import com.shizy.scan.core.ScanMetrics;
+import com.shizy.scan.core.ScanStage;
+import com.shizy.scan.core.StrategyScheduler;
 
-import java.nio.ByteBuffer;
-import java.util.Map;
+import java.io.Closeable;
+import java.io.IOException;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
 
-class CodeAnalyzer implements ImageAnalysis.Analyzer {
+/**
+ * Adapts CameraX images to the scan-core decoder: wraps the Y plane in a {@link Frame}, restricts it
+ * to the viewfinder and hands it to a {@link FrameDecoder} or a {@link DecodePipeline}.
+ * <p>
+ * A decode in progress is abandoned when analysis is disabled, on {@link #cancelDecodes()} and once
+ * it exceeds the decode budget, so that a hard frame cannot hold on to the CPU after the result is
+ * no longer wanted.
+ */
+class CodeAnalyzer implements ImageAnalysis.Analyzer, Closeable {
 
     interface AnalyzerListener {
 
+        /**
+         * Called on a decoding thread, with several decode workers possibly from more than one at
+         * once.
+         *
+         * @param result its points are in the coordinates of the preview view while a framing rect
+         *               mapper is set, otherwise in those of the analysis image rotated upright
+         */
         void analyzerResult(Result result);
 
+        /**
+         * Called in multiple-code mode once the target count is reached, with every distinct code
+         * found. Each of them has already been passed to {@link #analyzerResult} as it was found.
+         */
+        default void analyzerComplete(List<Result> results) {
+        }
+
+        /**
+         * Called on a decoding thread for every point detectors report, such as QR finder
+         * patterns, while a framing rect mapper is set. Must be quick and must not block.
+         *
+         * @param x in the coordinates of the preview view
+         * @param y in the coordinates of the preview view
+         */
+        default void analyzerPoint(float x, float y) {
+        }
+
+        /**
+         * Called on a decoding thread once the scan history stopped recording, e.g. because its log
+         * is full. The analyzer records nothing from then on.
+         */
+        default void analyzerHistoryFailed(IOException e) {
+        }
+
     }
 
     private static final String TAG = CodeAnalyzer.class.getSimpleName();
 
-    private MultiFormatReader multiFormatReader;
-    private Map<DecodeHintType, ?> hints;
+    /**
+     * Logs every analyzed frame. Costs string building and logcat I/O per frame, debugging only.
+     */
+    private static final boolean LOG_FRAMES = false;
+
+    /**
+     * A code is recorded in the scan history once per sighting: again only after it has been out of
+     * view this long, however many frames it was decoded in.
+     */
+    private static final long HISTORY_SIGHTING_GAP_MILLIS = 2000L;
+    private static final int HISTORY_SIGHTINGS = 64;
+
     private AnalyzerListener analyzerListener;
-    private boolean analyzeEnable = true;
+    private volatile boolean analyzeEnable = true;
+    private final AtomicInteger cancelGeneration = new AtomicInteger();
+    private volatile long decodeBudgetNanos;
+    private final FrameToken frameToken = new FrameToken();
+    private volatile FramingRectMapper framingRectMapper;
+    private volatile FrameRecorder frameRecorder;
+    private volatile MultiCodeTracker multiCodeTracker;
+    private volatile ResultCache resultCache;
+    private volatile StrategyScheduler strategyScheduler;
+    private volatile FrameQualityFilter qualityFilter;
+    private volatile CodeLocationTracker locationTracker;
+    private volatile ScanMetrics metrics;
+    private volatile AnalysisTuner analysisTuner;
+    private volatile long frameIntervalNanos;
+    private volatile Runnable onFirstFrame;
+    private volatile ResultStream resultStream;
+    private volatile ScanHistory scanHistory;
+    private volatile ResultCache historySightings;
+    private volatile boolean skipSeenCodes;
+    // Geometry of the latest camera image, to map points back to the view.
+    private volatile int imageWidth;
+    private volatile int imageHeight;
+    private volatile int imageRotation;
+    private final FrameDecoder.PointListener pointListener = this::onPoint;
+    private long lastAnalyzedNanos;
+    // Timing of the frame last decoded on the analyzer thread.
+    private int decodeScale;
+    private long frameTimestampNanos;
+    private long decodeStartNanos;
+    private long decodeEndNanos;
+    private final Rect cropRect = new Rect();
+    private volatile DecodeConfig decodeConfig;
+    private FrameDecoder frameDecoder;
+    private final DecodePipeline decodePipeline;
 
     public CodeAnalyzer(AnalyzerListener analyzerListener) {
-        multiFormatReader = new MultiFormatReader();
-        multiFormatReader.setHints(hints);
+        this(analyzerListener, DecodeConfig.DEFAULT, 1);
+    }
+
+    /**
+     * @param decodeWorkers number of threads decoding in parallel. With a single worker frames are
+     *                      decoded on the thread calling {@link #analyze}; with more, that thread
+     *                      only copies the frame and hands it to a {@link DecodePipeline}.
+     */
+    public CodeAnalyzer(AnalyzerListener analyzerListener, @NonNull DecodeConfig decodeConfig, int decodeWorkers) {
         this.analyzerListener = analyzerListener;
+        this.decodeConfig = decodeConfig;
+        if (decodeWorkers > 1) {
+            frameDecoder = null;
+            decodePipeline = new DecodePipeline(decodeWorkers, decodeConfig, this::dispatchResults);
+        } else {
+            frameDecoder = new FrameDecoder(decodeConfig);
+            frameDecoder.setDecodeToken(frameToken);
+            frameDecoder.setPointListener(pointListener);
+            decodePipeline = null;
+        }
+        if (decodePipeline != null) {
+            decodePipeline.setPointListener(pointListener);
+        }
+    }
+
+    /**
+     * Cancellation and deadline of the frame being decoded on the analyzer thread.
+     */
+    private final class FrameToken implements DecodeToken {
+
+        private int generation;
+        private long deadlineNanos;
+        private boolean cancelled;
+        private boolean timedOut;
+
+        void arm() {
+            final long budget = decodeBudgetNanos;
+            generation = cancelGeneration.get();
+            deadlineNanos = budget > 0 ? System.nanoTime() + budget : Long.MAX_VALUE;
+            cancelled = false;
+            timedOut = false;
+        }
+
+        @Override
+        public boolean isCancelled() {
+            if (!analyzeEnable || generation != cancelGeneration.get()) {
+                cancelled = true;
+            } else if (System.nanoTime() > deadlineNanos) {
+                timedOut = true;
+            }
+            return cancelled || timedOut;
+        }
+
+    }
+
+    @NonNull
+    public DecodeConfig getDecodeConfig() {
+        return decodeConfig;
+    }
+
+    /**
+     * Changes what is decoded. Frames already being decoded finish with the previous configuration.
+     */
+    public void setDecodeConfig(@NonNull DecodeConfig decodeConfig) {
+        this.decodeConfig = decodeConfig;
+        if (decodePipeline != null) {
+            decodePipeline.setDecodeConfig(decodeConfig);
+        }
     }
 
     public boolean isAnalyzeEnable() {
         return analyzeEnable;
     }
 
+    /**
+     * Disabling also abandons any decode in progress. May be called from any thread.
+     */
     public void setAnalyzeEnable(boolean analyzeEnable) {
         this.analyzeEnable = analyzeEnable;
+        if (!analyzeEnable) {
+            cancelDecodes();
+        }
+    }
+
+    /**
+     * Abandons the frames being decoded or waiting to be, without disabling analysis: frames
+     * arriving afterwards are decoded as usual. May be called from any thread.
+     */
+    public void cancelDecodes() {
+        cancelGeneration.incrementAndGet();
+        if (decodePipeline != null) {
+            decodePipeline.cancel();
+        }
+    }
+
+    /**
+     * Gives up on a frame which has not decoded within {@code budgetMillis}, 0 for no limit.
+     */
+    public void setDecodeBudget(long budgetMillis) {
+        this.decodeBudgetNanos = budgetMillis * 1000000L;
+        if (decodePipeline != null) {
+            decodePipeline.setDecodeBudget(budgetMillis);
+        }
+    }
+
+    /**
+     * Restricts decoding to the part of the image shown inside the viewfinder's framing rectangle.
+     * Pass {@code null} to decode the whole image.
+     */
+    public void setFramingRectMapper(FramingRectMapper framingRectMapper) {
+        this.framingRectMapper = framingRectMapper;
+    }
+
+    /**
+     * Decodes every code in a frame instead of the first one, and reports each distinct code once
+     * until {@code targetCount} codes have been found. Pass 0 to go back to single-code mode.
+     */
+    public void setMultiCodeTarget(int targetCount) {
+        multiCodeTracker = targetCount > 0 ? new MultiCodeTracker(targetCount) : null;
+        if (decodePipeline != null) {
+            decodePipeline.setMultipleCodes(targetCount > 0);
+        }
+    }
+
+    /**
+     * Continuous scanning: keeps decoding after a result and reports a code again only once it has
+     * not been seen for the cache's TTL. Pass {@code null} to report every result.
+     */
+    public void setResultCache(ResultCache resultCache) {
+        this.resultCache = resultCache;
+    }
+
+    /**
+     * Lets {@code scheduler} choose binarizer, inversion and effort frame by frame instead of always
+     * running the hybrid binarizer. Pass {@code null} to go back to the fixed sequence.
+     */
+    public void setStrategyScheduler(StrategyScheduler scheduler) {
+        this.strategyScheduler = scheduler;
+        if (decodePipeline != null) {
+            decodePipeline.setStrategyScheduler(scheduler);
+        }
+    }
+
+    /**
+     * Skips frames which {@code qualityFilter} judges too dark, flat or blurry to decode. Pass
+     * {@code null} to decode every frame.
+     */
+    public void setQualityFilter(FrameQualityFilter qualityFilter) {
+        this.qualityFilter = qualityFilter;
+    }
+
+    /**
+     * Decodes the area where a code was last seen before the whole framing rectangle. Pass
+     * {@code null} to always decode the whole of it.
+     */
+    public void setLocationTracker(CodeLocationTracker locationTracker) {
+        this.locationTracker = locationTracker;
+        if (decodePipeline != null) {
+            decodePipeline.setLocationTracker(locationTracker);
+        }
+    }
+
+    /**
+     * Records per-stage latency and frame counters into {@code metrics}. Pass {@code null} to stop.
+     */
+    public void setMetrics(ScanMetrics metrics) {
+        this.metrics = metrics;
+        if (decodePipeline != null) {
+            decodePipeline.setMetrics(metrics);
+        }
+    }
+
+    /**
+     * Reports the decode time and outcome of every frame to {@code tuner}. Pass {@code null} to
+     * stop.
+     */
+    public void setAnalysisTuner(AnalysisTuner tuner) {
+        this.analysisTuner = tuner;
+        if (decodePipeline != null) {
+            decodePipeline.setAnalysisTuner(tuner);
+        }
+    }
+
+    /**
+     * Skips camera frames arriving sooner than {@code intervalMillis} after the last analyzed one,
+     * by their sensor timestamps. 0 analyzes every frame.
+     */
+    public void setFrameInterval(long intervalMillis) {
+        this.frameIntervalNanos = intervalMillis * 1000000L;
+    }
+
+    /**
+     * @param onFirstFrame called once, on the analyzer thread, when the first camera frame is about
+     *                     to be decoded
+     */
+    public void setOnFirstFrame(Runnable onFirstFrame) {
+        this.onFirstFrame = onFirstFrame;
+    }
+
+    /**
+     * Publishes every reported code, with its timing, to {@code resultStream} as well as to the
+     * listener. Pass {@code null} to stop.
+     */
+    public void setResultStream(ResultStream resultStream) {
+        this.resultStream = resultStream;
+    }
+
+    /**
+     * Records every sighting of a code in {@code history}, independently of the result cache and
+     * the reporting de-duplication, or nothing if {@code null}. A code which stays in view is
+     * recorded once, not on every frame, and again only after two seconds out of view. Recording
+     * only queues, so it costs the decoding thread next to nothing.
+     */
+    public void setScanHistory(ScanHistory history) {
+        this.historySightings = history != null
+                ? new ResultCache(HISTORY_SIGHTINGS, HISTORY_SIGHTING_GAP_MILLIS) : null;
+        this.scanHistory = history;
+    }
+
+    /**
+     * Drops codes which the scan history already held, before the result cache, so that each code
+     * is reported once across sessions. They are still recorded again. Single-code mode only.
+     */
+    public void setSkipSeenCodes(boolean skip) {
+        this.skipSeenCodes = skip;
+    }
+
+    /**
+     * Forgets the codes found so far in multiple-code mode.
+     */
+    public void resetMultiCode() {
+        final MultiCodeTracker tracker = multiCodeTracker;
+        if (tracker != null) {
+            tracker.reset();
+        }
+    }
+
+    /**
+     * Starts writing every analyzed frame, uncropped, to {@code frameRecorder}. Pass {@code null} to
+     * stop; closing the recorder is up to the caller.
+     */
+    public void setFrameRecorder(FrameRecorder frameRecorder) {
+        this.frameRecorder = frameRecorder;
     }
 
     @Override
     public void analyze(@NonNull ImageProxy image) {
-        Log.d(TAG, "analyze: format = " + image.getFormat());
-        Log.d(TAG, "analyze: getWidth = " + image.getWidth());
-        Log.d(TAG, "analyze: getHeight = " + image.getHeight());
-        Log.d(TAG, "analyze: getRotationDegrees = " + image.getImageInfo().getRotationDegrees());
+        if (LOG_FRAMES) {
+            Log.d(TAG, "analyze: format = " + image.getFormat()
+                    + ", size = " + image.getWidth() + "x" + image.getHeight()
+                    + ", rotation = " + image.getImageInfo().getRotationDegrees());
+        }
+        final ScanMetrics metrics = this.metrics;
         if (!analyzeEnable) {
+            if (metrics != null) {
+                metrics.framePaused();
+            }
+            image.close();
+            return;
+        }
+        if (metrics != null) {
+            metrics.frameReceived();
+        }
+        final long timestamp = image.getImageInfo().getTimestamp();
+        if (timestamp - lastAnalyzedNanos < frameIntervalNanos) {
+            if (metrics != null) {
+                metrics.frameSkipped();
+            }
             image.close();
             return;
         }
+        lastAnalyzedNanos = timestamp;
+        final Runnable firstFrame = onFirstFrame;
+        if (firstFrame != null) {
+            onFirstFrame = null;
+            firstFrame.run();
+        }
 
-        Result rawResult = null;
+        Result[] rawResults;
         try {
-            final ImageProxy.PlaneProxy[] planes = image.getPlanes();
-            final ByteBuffer yBuf = planes[0].getBuffer();
-            final ByteBuffer uBuf = planes[1].getBuffer();
-            final ByteBuffer vBuf = planes[2].getBuffer();
-
-            final int ySize = yBuf.remaining();
-            final int uSize = uBuf.remaining();
-            final int vSize = vBuf.remaining();
-
-            // YCbCr_420_SP
-            final byte[] yuvData = new byte[ySize + uSize + vSize];
-            yBuf.get(yuvData, 0, ySize);
-            uBuf.get(yuvData, ySize, uSize);
-            vBuf.get(yuvData, ySize + uSize, vSize);
-
-            final PlanarYUVLuminanceSource source =
-                    new PlanarYUVLuminanceSource(yuvData, image.getWidth(), image.getHeight(), 0, 0, image.getWidth(), image.getHeight(), false);
-            BinaryBitmap bitmap = new BinaryBitmap(new HybridBinarizer(source));
-            rawResult = multiFormatReader.decodeWithState(bitmap);
-        } catch (ReaderException | ArrayIndexOutOfBoundsException e) {
-            // continue
+            rawResults = decodeFrame(toFrame(image));
         } finally {
-            multiFormatReader.reset();
             image.close();
         }
 
-        if (rawResult != null && analyzerListener != null) {
-            analyzerListener.analyzerResult(rawResult);
+        if (rawResults != null) {
+            dispatchResults(rawResults, decodeScale, frameTimestampNanos, decodeStartNanos, decodeEndNanos);
+        }
+    }
+
+    /**
+     * Analyzes a frame which did not come from the camera, such as one replayed from a
+     * {@link FrameSequence}. Must be called from the same thread as {@link #analyze(ImageProxy)}.
+     */
+    void analyze(@NonNull Frame frame) {
+        if (!analyzeEnable) {
+            return;
+        }
+        final Result[] rawResults = decodeFrame(frame);
+        if (rawResults != null) {
+            dispatchResults(rawResults, decodeScale, frameTimestampNanos, decodeStartNanos, decodeEndNanos);
+        }
+    }
+
+    /**
+     * @return the results when decoded on this thread, {@code null} if nothing was found or the
+     * frame was handed to the pipeline
+     */
+    private Result[] decodeFrame(Frame frame) {
+        imageWidth = frame.getWidth();
+        imageHeight = frame.getHeight();
+        imageRotation = frame.getRotationDegrees();
+        final FrameRecorder recorder = frameRecorder;
+        if (recorder != null) {
+            try {
+                recorder.record(frame);
+            } catch (IOException e) {
+                Log.w(TAG, "Recording stopped", e);
+                frameRecorder = null;
+            }
+        }
+
+        final Rect crop = cropRect;
+        final FramingRectMapper mapper = framingRectMapper;
+        if (mapper != null) {
+            mapper.mapToImage(frame.getWidth(), frame.getHeight(), frame.getRotationDegrees(), crop);
+            if (crop.isEmpty()) {
+                // Nothing of this image is inside the viewfinder
+                frameSkipped();
+                return null;
+            }
+        } else {
+            crop.set(0, 0, frame.getWidth(), frame.getHeight());
+        }
+
+        final Frame cropped = frame.withCrop(crop.left, crop.top, crop.width(), crop.height());
+        final FrameQualityFilter filter = qualityFilter;
+        if (filter != null && !filter.accept(cropped)) {
+            frameSkipped();
+            return null;
+        }
+        if (decodePipeline != null) {
+            decodePipeline.submit(cropped);
+            return null;
+        }
+
+        final DecodeConfig config = decodeConfig;
+        final StrategyScheduler scheduler = strategyScheduler;
+        if (frameDecoder.getConfig() != config || frameDecoder.getScheduler() != scheduler) {
+            frameDecoder = new FrameDecoder(config, scheduler);
+            frameDecoder.setDecodeToken(frameToken);
+            frameDecoder.setPointListener(pointListener);
+        }
+        final CodeLocationTracker tracker = locationTracker;
+        frameToken.arm();
+        final long decodeStart = System.nanoTime();
+        Result[] results;
+        if (multiCodeTracker != null) {
+            results = tracker != null
+                    ? frameDecoder.decodeMultiple(cropped, tracker, 0, 0)
+                    : frameDecoder.decodeMultiple(cropped);
+            if (results.length == 0) {
+                results = null;
+            }
+        } else {
+            final Result result = tracker != null
+                    ? frameDecoder.decode(cropped, tracker, 0, 0)
+                    : frameDecoder.decode(cropped);
+            results = result != null ? new Result[]{result} : null;
+        }
+        final long decodeEnd = System.nanoTime();
+        final long decodeNanos = decodeEnd - decodeStart;
+        final long binarizeNanos = frameDecoder.takeBinarizeNanos();
+        decodeScale = frameDecoder.getResultScale();
+        frameTimestampNanos = frame.getTimestampNanos();
+        decodeStartNanos = decodeStart;
+        decodeEndNanos = decodeEnd;
+        final ScanMetrics metrics = this.metrics;
+        if (frameToken.cancelled) {
+            if (metrics != null) {
+                metrics.frameCancelled();
+            }
+            return null;
+        }
+        if (frameToken.timedOut && metrics != null) {
+            metrics.frameTimedOut();
+        }
+        if (metrics != null) {
+            metrics.record(ScanStage.BINARIZE, binarizeNanos);
+            metrics.record(ScanStage.DECODE, decodeNanos - binarizeNanos);
+        }
+        final AnalysisTuner tuner = analysisTuner;
+        if (tuner != null) {
+            tuner.onFrame(decodeNanos, results != null);
+        }
+        return results;
+    }
+
+    /**
+     * Called on whichever thread is decoding. A point found just as the camera resolution changes
+     * may be mapped with the wrong geometry, which costs one misplaced dot.
+     */
+    private void onPoint(float x, float y) {
+        final FramingRectMapper mapper = framingRectMapper;
+        final AnalyzerListener listener = analyzerListener;
+        if (mapper == null || listener == null) {
+            return;
+        }
+        final int width = imageWidth;
+        final int height = imageHeight;
+        final int rotation = imageRotation;
+        listener.analyzerPoint(mapper.mapXToView(width, height, rotation, x, y),
+                mapper.mapYToView(width, height, rotation, x, y));
+    }
+
+    /**
+     * Moves the result points from the camera image into display coordinates, in place. Like
+     * {@link #onPoint}, uses the geometry of the latest image.
+     */
+    private void toDisplayPoints(Result result) {
+        final ResultPoint[] points = result.getResultPoints();
+        if (points == null) {
+            return;
+        }
+        final FramingRectMapper mapper = framingRectMapper;
+        final int width = imageWidth;
+        final int height = imageHeight;
+        final int rotation = imageRotation;
+        for (int i = 0; i < points.length; i++) {
+            final ResultPoint point = points[i];
+            if (point == null) {
+                continue;
+            }
+            final float x = point.getX();
+            final float y = point.getY();
+            points[i] = mapper != null
+                    ? new ResultPoint(mapper.mapXToView(width, height, rotation, x, y),
+                    mapper.mapYToView(width, height, rotation, x, y))
+                    : new ResultPoint(FramingRectMapper.uprightX(width, height, rotation, x, y),
+                    FramingRectMapper.uprightY(width, height, rotation, x, y));
+        }
+    }
+
+    private void frameSkipped() {
+        final ScanMetrics metrics = this.metrics;
+        if (metrics != null) {
+            metrics.frameSkipped();
+        }
+    }
+
+    private static Frame toFrame(ImageProxy image) {
+        final ImageProxy.PlaneProxy yPlane = image.getPlanes()[0];
+        return new Frame(yPlane.getBuffer(),
+                image.getWidth(),
+                image.getHeight(),
+                yPlane.getRowStride(),
+                yPlane.getPixelStride(),
+                image.getImageInfo().getRotationDegrees(),
+                image.getImageInfo().getTimestamp());
+    }
+
+    private void dispatchResults(Result[] results, int scale, long frameTimestamp, long decodeStart,
+                                 long decodeEnd) {
+        final ScanMetrics metrics = this.metrics;
+        if (metrics == null) {
+            notifyListener(results, scale, frameTimestamp, decodeStart, decodeEnd);
+            return;
+        }
+        metrics.frameDecoded();
+        final long start = System.nanoTime();
+        notifyListener(results, scale, frameTimestamp, decodeStart, decodeEnd);
+        metrics.record(ScanStage.DISPATCH, System.nanoTime() - start);
+    }
+
+    private void notifyListener(Result[] results, int scale, long frameTimestamp, long decodeStart,
+                                long decodeEnd) {
+        final FrameQualityFilter filter = qualityFilter;
+        if (filter != null) {
+            filter.reportDecoded();
+        }
+        final ScanHistory history = scanHistory;
+        final ResultCache sightings = historySightings;
+        final ResultStream stream = resultStream;
+        final boolean notify = analyzerListener != null || stream != null;
+        final MultiCodeTracker tracker = multiCodeTracker;
+        if (tracker == null) {
+            final ResultCache cache = resultCache;
+            final boolean skipSeen = skipSeenCodes;
+            for (Result result : results) {
+                boolean seen = false;
+                if (history != null) {
+                    // Asked before recording, which makes the code known right away.
+                    seen = skipSeen && history.contains(result.getText());
+                    recordSighting(history, sightings, result);
+                }
+                if (seen || !notify) {
+                    continue;
+                }
+                // Codes reported moments ago are dropped here, before any beep or UI work.
+                if (cache == null || cache.offer(result)) {
+                    report(result, stream, scale, frameTimestamp, decodeStart, decodeEnd);
+                }
+            }
+            return;
+        }
+
+        if (history != null) {
+            for (Result result : results) {
+                recordSighting(history, sightings, result);
+            }
+        }
+        if (!notify || tracker.isComplete()) {
+            return;
+        }
+        final List<Result> added = tracker.update(results);
+        for (Result result : added) {
+            report(result, stream, scale, frameTimestamp, decodeStart, decodeEnd);
+        }
+        if (analyzerListener != null && tracker.isCompletedBy(added)) {
+            analyzerListener.analyzerComplete(tracker.getCodes());
+        }
+    }
+
+    private void recordSighting(ScanHistory history, ResultCache sightings, Result result) {
+        if (sightings != null && !sightings.offer(result)) {
+            return;
+        }
+        history.record(result);
+        final IOException failure = history.getFailure();
+        if (failure != null) {
+            historyFailed(history, failure);
+        }
+    }
+
+    private void historyFailed(ScanHistory history, IOException failure) {
+        synchronized (this) {
+            // Reported once, by whichever thread gets here first.
+            if (scanHistory != history) {
+                return;
+            }
+            scanHistory = null;
+        }
+        Log.w(TAG, "Scan history stopped recording", failure);
+        final AnalyzerListener listener = analyzerListener;
+        if (listener != null) {
+            listener.analyzerHistoryFailed(failure);
+        }
+    }
+
+    private void report(Result result, ResultStream stream, int scale, long frameTimestamp, long decodeStart,
+                        long decodeEnd) {
+        toDisplayPoints(result);
+        if (stream != null) {
+            // Only hands the result over, subscribers never hold up decoding.
+            stream.publish(new ScanResult(result, scale, frameTimestamp, decodeStart, decodeEnd));
+        }
+        if (analyzerListener != null) {
+            analyzerListener.analyzerResult(result);
+        }
+    }
+
+    /**
+     * @return pipeline counters, or {@code null} when decoding on a single thread
+     */
+    DecodeStats getDecodeStats() {
+        return decodePipeline != null ? decodePipeline.getStats() : null;
+    }
+
+    @Override
+    public void close() {
+        if (decodePipeline != null) {
+            decodePipeline.close();
         }
     }
 }
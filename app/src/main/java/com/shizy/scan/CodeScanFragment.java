@@ -3,12 +3,18 @@ package com.shizy.scan;
 import android.Manifest;
 import android.content.Context;
 import android.content.pm.PackageManager;
+import android.content.res.Configuration;
+import android.graphics.Rect;
 import android.os.Build;
 import android.os.Bundle;
+import android.os.Process;
+import android.os.Trace;
 import android.util.Log;
+import android.util.Size;
 import android.view.LayoutInflater;
 import android.view.View;
 import android.view.ViewGroup;
+import android.widget.TextView;
 import android.widget.Toast;
 
 import androidx.annotation.NonNull;
@@ -25,9 +31,27 @@ import androidx.fragment.app.Fragment;
 import com.google.common.util.concurrent.ListenableFuture;
 import com.google.zxing.Result;
 import com.google.zxing.ResultPoint;
+import com.shizy.scan.core.AnalysisProfile;
+import com.shizy.scan.core.AnalysisTuner;
+import com.shizy.scan.core.CodeLocationTracker;
+import com.shizy.scan.core.DecodeConfig;
+import com.shizy.scan.core.DecodeStats;
+import com.shizy.scan.core.FrameDecoder;
+import com.shizy.scan.core.FrameQualityFilter;
+import com.shizy.scan.core.FrameRecorder;
+import com.shizy.scan.core.ResultCache;
+import com.shizy.scan.core.ResultStream;
+import com.shizy.scan.core.ScanHistory;
+import com.shizy.scan.core.ScanMetrics;
+import com.shizy.scan.core.StrategyScheduler;
+import com.shizy.scan.core.StrategyStats;
 import com.shizy.scan.view.ViewfinderView;
 
+import java.io.File;
+import java.io.IOException;
+import java.util.List;
 import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executor;
 import java.util.concurrent.ExecutorService;
 import java.util.concurrent.Executors;
 
@@ -38,11 +62,22 @@ public class CodeScanFragment extends Fragment {
     private static final int PERMISSIONS_REQUEST_CODE = 1;
     private static final String[] PERMISSIONS_REQUIRED = {Manifest.permission.CAMERA};
 
+    private static final int CONTINUOUS_SCAN_CACHE_SIZE = 64;
+    private static final long CONTINUOUS_SCAN_TTL_MS = 3000L;
+    private static final long DEBUG_OVERLAY_REFRESH_MS = 500L;
+    private static final long DEFAULT_TARGET_DECODE_LATENCY_MS = 50L;
+    private static final long DEFAULT_DECODE_BUDGET_MS = 250L;
+    private static final String HISTORY_DIRECTORY = "scan-history";
+
     private CodeAnalyzer.AnalyzerListener analyzerListener = new CodeAnalyzer.AnalyzerListener() {
         @Override
         public void analyzerResult(Result result) {
-            beepManager.playBeepSoundAndVibrate();
-            stopScan();
+            if (multiCodeTarget == 0) {
+                beepManager.playBeepSoundAndVibrate();
+                if (resultCache == null) {
+                    stopScan();
+                }
+            }
             Log.d(TAG, "analyze text: " + result.getText());
             ResultPoint[] points = result.getResultPoints();
             if (points != null) {
@@ -51,16 +86,78 @@ public class CodeScanFragment extends Fragment {
                 }
             }
         }
+
+        @Override
+        public void analyzerPoint(float x, float y) {
+            // From preview view to viewfinder view coordinates; both normally fill the same parent.
+            final ViewfinderView viewfinder = viewfinderView;
+            if (viewfinder != null) {
+                viewfinder.addPossibleResultPoint(x + previewView.getLeft() - viewfinder.getLeft(),
+                        y + previewView.getTop() - viewfinder.getTop());
+            }
+        }
+
+        @Override
+        public void analyzerComplete(List<Result> results) {
+            beepManager.playBeepSoundAndVibrate();
+            stopScan();
+            Log.d(TAG, "analyze complete: " + results.size() + " codes");
+        }
+
+        @Override
+        public void analyzerHistoryFailed(IOException e) {
+            Log.e(TAG, "Scan history stopped recording, new scans are not kept", e);
+        }
     };
 
     private ExecutorService cameraExecutor;
+    /**
+     * Runs the work which can happen while the camera starts, see {@link #onCreate}.
+     */
+    private ExecutorService startupExecutor;
+    private StartupTrace startupTrace;
 
     private ListenableFuture<ProcessCameraProvider> cameraProviderFuture;
 
     private PreviewView previewView;
     private ViewfinderView viewfinderView;
+    private TextView debugOverlay;
+    private boolean debugOverlayEnabled;
+    private final ScanMetrics scanMetrics = new ScanMetrics();
+    private final ResultStream resultStream = new ResultStream();
+    /**
+     * Set on the startup thread once open, {@code null} before or if it could not be opened.
+     */
+    private volatile ScanHistory scanHistory;
+    private boolean skipSeenCodes;
+    private ProcessCameraProvider cameraProvider;
+    private CameraSelector cameraSelector;
+    private ImageAnalysis imageAnalysis;
+    /**
+     * Whether {@link #imageAnalysis} is unbound while scanning is stopped. Main thread only.
+     */
+    private boolean analysisPaused;
+    private long pausedAtNanos;
+    private long framesWhilePausedAtPause;
+    private AnalysisProfileStore analysisProfileStore;
+    private volatile AnalysisProfile analysisProfile;
+    private AnalysisTuner analysisTuner;
+    private long targetDecodeLatencyMillis = DEFAULT_TARGET_DECODE_LATENCY_MS;
+    private long decodeBudgetMillis = DEFAULT_DECODE_BUDGET_MS;
     private BeepManager beepManager;
-    private CodeAnalyzer codeAnalyzer;
+    /**
+     * Set once the camera provider is ready, read from decoding threads too.
+     */
+    private volatile CodeAnalyzer codeAnalyzer;
+    private FramingRectMapper framingRectMapper;
+    private FrameRecorder frameRecorder;
+    private DecodeConfig decodeConfig = DecodeConfig.DEFAULT;
+    private int multiCodeTarget;
+    private ResultCache resultCache;
+    private StrategyScheduler strategyScheduler;
+    private FrameQualityFilter qualityFilter;
+    private CodeLocationTracker locationTracker = new CodeLocationTracker();
+    private int decodeWorkerCount = Math.max(1, Runtime.getRuntime().availableProcessors() - 1);
 
     @Override
     public void onRequestPermissionsResult(int requestCode, @NonNull String[] permissions, @NonNull int[] grantResults) {
@@ -88,6 +185,10 @@ public class CodeScanFragment extends Fragment {
         super.onViewCreated(view, savedInstanceState);
         previewView = view.findViewById(R.id.previewView);
         viewfinderView = view.findViewById(R.id.viewfinderView);
+        debugOverlay = view.findViewById(R.id.debugOverlay);
+        showDebugOverlay();
+        viewfinderView.addOnLayoutChangeListener(
+                (v, left, top, right, bottom, oldLeft, oldTop, oldRight, oldBottom) -> updateFramingRectMapper());
         if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.M) {
             if (!hasPermissions(requireContext())) {
                 requestPermissions(PERMISSIONS_REQUIRED, PERMISSIONS_REQUEST_CODE);
@@ -100,14 +201,55 @@ public class CodeScanFragment extends Fragment {
     @Override
     public void onDestroyView() {
         super.onDestroyView();
+        debugOverlay.removeCallbacks(debugOverlayUpdater);
         // Shut down our background executor
-        cameraExecutor.shutdown();
+        if (cameraExecutor != null) {
+            cameraExecutor.shutdown();
+        }
+        if (codeAnalyzer != null) {
+            codeAnalyzer.close();
+        }
+        stopRecording();
     }
 
     @Override
     public void onCreate(@Nullable Bundle savedInstanceState) {
         super.onCreate(savedInstanceState);
+        startupTrace = new StartupTrace();
+        // Three things take a while before the first frame can be decoded, none of which needs the
+        // others or the camera permission: they all start here, in parallel.
+        cameraProviderFuture = ProcessCameraProvider.getInstance(requireContext());
+        cameraProviderFuture.addListener(() -> startupTrace.mark(StartupTrace.Step.CAMERA_PROVIDER_READY),
+                ContextCompat.getMainExecutor(requireContext()));
+        startupExecutor = Executors.newSingleThreadExecutor();
+        final DecodeConfig config = decodeConfig;
+        startupExecutor.execute(() -> {
+            Process.setThreadPriority(Process.THREAD_PRIORITY_BACKGROUND);
+            Trace.beginSection("CodeScan warm up");
+            try {
+                FrameDecoder.warmUp(config);
+            } finally {
+                Trace.endSection();
+            }
+            startupTrace.mark(StartupTrace.Step.DECODER_WARM);
+        });
+        final File historyDirectory = new File(requireContext().getFilesDir(), HISTORY_DIRECTORY);
+        final Executor mainExecutor = ContextCompat.getMainExecutor(requireContext());
+        startupExecutor.execute(() -> openScanHistory(historyDirectory, mainExecutor));
         beepManager = new BeepManager(requireActivity());
+        beepManager.setOnReady(() -> startupTrace.mark(StartupTrace.Step.AUDIO_READY));
+
+        analysisProfileStore = new AnalysisProfileStore(requireContext());
+        analysisProfile = analysisProfileStore.load();
+    }
+
+    @Override
+    public void onDestroy() {
+        super.onDestroy();
+        resultStream.close();
+        // After the history has opened, on the same thread, and off the main thread.
+        startupExecutor.execute(this::closeScanHistory);
+        startupExecutor.shutdown();
     }
 
     @Override
@@ -119,11 +261,15 @@ public class CodeScanFragment extends Fragment {
     @Override
     public void onPause() {
         super.onPause();
+        if (codeAnalyzer != null) {
+            // The camera stops with the lifecycle, whatever it is still decoding is of no use.
+            codeAnalyzer.cancelDecodes();
+        }
         beepManager.close();
     }
 
     private void startCamera() {
-        cameraProviderFuture = ProcessCameraProvider.getInstance(requireContext());
+        // Usually long done by now, see onCreate
         cameraProviderFuture.addListener(() -> {
             try {
                 ProcessCameraProvider cameraProvider = cameraProviderFuture.get();
@@ -136,8 +282,19 @@ public class CodeScanFragment extends Fragment {
     }
 
     private void bindPreview(@NonNull ProcessCameraProvider cameraProvider) {
+        Trace.beginSection("CodeScan bind camera");
+        try {
+            bindUseCases(cameraProvider);
+        } finally {
+            Trace.endSection();
+        }
+        startupTrace.mark(StartupTrace.Step.CAMERA_BOUND);
+    }
+
+    private void bindUseCases(@NonNull ProcessCameraProvider cameraProvider) {
+        this.cameraProvider = cameraProvider;
         Preview preview = new Preview.Builder().build();
-        CameraSelector cameraSelector = new CameraSelector.Builder()
+        cameraSelector = new CameraSelector.Builder()
                 .requireLensFacing(CameraSelector.LENS_FACING_BACK)
                 .build();
 
@@ -145,31 +302,458 @@ public class CodeScanFragment extends Fragment {
 
         cameraExecutor = Executors.newSingleThreadExecutor();
 
-        ImageAnalysis analysis = new ImageAnalysis.Builder()
+        imageAnalysis = buildImageAnalysis(analysisProfile);
+
+        codeAnalyzer = new CodeAnalyzer(analyzerListener, decodeConfig, decodeWorkerCount);
+        codeAnalyzer.setFramingRectMapper(framingRectMapper);
+        codeAnalyzer.setFrameRecorder(frameRecorder);
+        codeAnalyzer.setMultiCodeTarget(multiCodeTarget);
+        codeAnalyzer.setResultCache(resultCache);
+        codeAnalyzer.setStrategyScheduler(strategyScheduler);
+        codeAnalyzer.setQualityFilter(qualityFilter);
+        codeAnalyzer.setLocationTracker(locationTracker);
+        codeAnalyzer.setMetrics(scanMetrics);
+        codeAnalyzer.setResultStream(resultStream);
+        codeAnalyzer.setScanHistory(scanHistory);
+        codeAnalyzer.setSkipSeenCodes(skipSeenCodes);
+        codeAnalyzer.setDecodeBudget(decodeBudgetMillis);
+        codeAnalyzer.setOnFirstFrame(() -> startupTrace.mark(StartupTrace.Step.FIRST_FRAME));
+        codeAnalyzer.setAnalyzeEnable(!analysisPaused);
+        updateAnalysisTuner();
+        scanMetrics.markStart();
+        imageAnalysis.setAnalyzer(cameraExecutor, codeAnalyzer);
+
+        cameraProvider.unbindAll();
+        // Scanning may have been stopped before the camera was ready.
+        Camera camera = analysisPaused
+                ? cameraProvider.bindToLifecycle(this, cameraSelector, preview)
+                : cameraProvider.bindToLifecycle(this, cameraSelector, preview, imageAnalysis);
+    }
+
+    @NonNull
+    private ImageAnalysis buildImageAnalysis(@NonNull AnalysisProfile profile) {
+        // The target resolution is given in display orientation, the profile in sensor orientation.
+        final boolean portrait = getResources().getConfiguration().orientation == Configuration.ORIENTATION_PORTRAIT;
+        final Size size = portrait
+                ? new Size(profile.getHeight(), profile.getWidth())
+                : new Size(profile.getWidth(), profile.getHeight());
+        return new ImageAnalysis.Builder()
                 .setBackpressureStrategy(ImageAnalysis.STRATEGY_KEEP_ONLY_LATEST)
+                .setTargetResolution(size)
                 .build();
+    }
 
-        codeAnalyzer = new CodeAnalyzer(analyzerListener);
-        analysis.setAnalyzer(cameraExecutor, codeAnalyzer);
+    private void updateAnalysisTuner() {
+        analysisTuner = targetDecodeLatencyMillis > 0
+                ? new AnalysisTuner(targetDecodeLatencyMillis, analysisProfile, this::onAnalysisProfileChanged)
+                : null;
+        if (codeAnalyzer != null) {
+            codeAnalyzer.setAnalysisTuner(analysisTuner);
+            codeAnalyzer.setFrameInterval(analysisProfile.getFrameIntervalMillis());
+        }
+    }
 
-        cameraProvider.unbindAll();
-        Camera camera = cameraProvider.bindToLifecycle(this, cameraSelector, preview, analysis);
+    /**
+     * Called on a decoding thread.
+     */
+    private void onAnalysisProfileChanged(@NonNull AnalysisProfile profile) {
+        final AnalysisProfile previous = analysisProfile;
+        analysisProfile = profile;
+        analysisProfileStore.save(profile);
+        codeAnalyzer.setFrameInterval(profile.getFrameIntervalMillis());
+        Log.i(TAG, "Analysis profile " + previous + " -> " + profile);
+        final Context context = getContext();
+        if (context != null
+                && (previous.getWidth() != profile.getWidth() || previous.getHeight() != profile.getHeight())) {
+            ContextCompat.getMainExecutor(context).execute(this::rebindImageAnalysis);
+        }
+    }
+
+    /**
+     * Swaps the analysis use case for one with the current profile's resolution, leaving the
+     * preview bound.
+     */
+    private void rebindImageAnalysis() {
+        if (cameraProvider == null || imageAnalysis == null || getView() == null) {
+            return;
+        }
+        final ImageAnalysis previous = imageAnalysis;
+        imageAnalysis = buildImageAnalysis(analysisProfile);
+        imageAnalysis.setAnalyzer(cameraExecutor, codeAnalyzer);
+        if (!analysisPaused) {
+            cameraProvider.unbind(previous);
+            cameraProvider.bindToLifecycle(this, cameraSelector, imageAnalysis);
+        }
+    }
+
+    /**
+     * Sets which formats to decode and how hard to try. Can be changed while scanning.
+     */
+    public void setDecodeConfig(@NonNull DecodeConfig decodeConfig) {
+        this.decodeConfig = decodeConfig;
+        if (codeAnalyzer != null) {
+            codeAnalyzer.setDecodeConfig(decodeConfig);
+        }
+    }
+
+    @NonNull
+    public DecodeConfig getDecodeConfig() {
+        return decodeConfig;
+    }
+
+    /**
+     * Switches to multiple-code mode: every code in view is decoded, each distinct code is reported
+     * once, and scanning stops when {@code targetCount} codes have been found. Pass 0 to stop at the
+     * first code again.
+     */
+    public void setMultiCodeTarget(int targetCount) {
+        this.multiCodeTarget = Math.max(0, targetCount);
+        if (codeAnalyzer != null) {
+            codeAnalyzer.setMultiCodeTarget(multiCodeTarget);
+        }
+    }
+
+    /**
+     * Continuous scanning: scanning no longer stops at the first result, and a code is reported
+     * again only after it has been out of view for {@code ttlMillis}.
+     */
+    public void setContinuousScan(boolean continuous, long ttlMillis) {
+        resultCache = continuous ? new ResultCache(CONTINUOUS_SCAN_CACHE_SIZE, ttlMillis) : null;
+        if (codeAnalyzer != null) {
+            codeAnalyzer.setResultCache(resultCache);
+        }
+    }
+
+    public void setContinuousScan(boolean continuous) {
+        setContinuousScan(continuous, CONTINUOUS_SCAN_TTL_MS);
+    }
+
+    /**
+     * @return the continuous scanning cache, with its hit and miss counters, or {@code null} when
+     * not scanning continuously
+     */
+    @Nullable
+    public ResultCache getResultCache() {
+        return resultCache;
+    }
+
+    /**
+     * Adaptive decoding: rotates binarizers, inversion and try-harder across frames and tries first
+     * whatever has worked recently, instead of running the hybrid binarizer on every frame.
+     */
+    public void setAdaptiveDecoding(boolean adaptive) {
+        strategyScheduler = adaptive ? new StrategyScheduler() : null;
+        if (codeAnalyzer != null) {
+            codeAnalyzer.setStrategyScheduler(strategyScheduler);
+        }
+    }
+
+    /**
+     * @return hit rate and time spent per decode strategy, best first, or {@code null} when not
+     * decoding adaptively
+     */
+    @Nullable
+    public List<StrategyStats> getStrategyStats() {
+        return strategyScheduler != null ? strategyScheduler.getStats() : null;
+    }
+
+    /**
+     * Skips frames too dark, flat or blurry to decode, such as those taken while the camera is
+     * focusing or moving, before they reach the decoder. Pass {@code null} to decode every frame.
+     * The filter's counters tell how many frames were skipped and decoded.
+     */
+    public void setFrameQualityFilter(@Nullable FrameQualityFilter qualityFilter) {
+        this.qualityFilter = qualityFilter;
+        if (codeAnalyzer != null) {
+            codeAnalyzer.setQualityFilter(qualityFilter);
+        }
+    }
+
+    @Nullable
+    public FrameQualityFilter getFrameQualityFilter() {
+        return qualityFilter;
+    }
+
+    /**
+     * Location tracking, on by default: decodes the area around the last sighting of a code before
+     * the whole framing rectangle, which saves most of the decode time while a code stays in view.
+     */
+    public void setLocationTracking(boolean tracking) {
+        locationTracker = tracking ? new CodeLocationTracker() : null;
+        if (codeAnalyzer != null) {
+            codeAnalyzer.setLocationTracker(locationTracker);
+        }
+    }
+
+    /**
+     * @return the location tracker, with its window hit and miss counters, or {@code null} when
+     * tracking is off
+     */
+    @Nullable
+    public CodeLocationTracker getLocationTracker() {
+        return locationTracker;
+    }
+
+    /**
+     * @return latency per stage and frame counters since the fragment was created, with the time
+     * from the last {@link #startScan()} to the first decoded frame
+     */
+    @NonNull
+    public ScanMetrics.Snapshot getScanMetrics() {
+        return scanMetrics.snapshot();
+    }
+
+    /**
+     * @return every code reported to the listener, with its decode timing, for consumers which
+     * subscribe with their own executor and overflow policy. Closed when the fragment is destroyed.
+     */
+    @NonNull
+    public ResultStream getResultStream() {
+        return resultStream;
+    }
+
+    /**
+     * @return every sighting of a code, across sessions, or {@code null} until the history has been
+     * opened in the background, or if it could not be. Should it stop recording, e.g. once full,
+     * {@link ScanHistory#getFailure()} tells why.
+     */
+    @Nullable
+    public ScanHistory getScanHistory() {
+        return scanHistory;
+    }
+
+    /**
+     * Does not report codes which are already in the scan history, so that a shift counts each item
+     * once however often it passes the camera. Applies from when the history is open.
+     */
+    public void setSkipSeenCodes(boolean skip) {
+        skipSeenCodes = skip;
+        final CodeAnalyzer analyzer = codeAnalyzer;
+        if (analyzer != null) {
+            analyzer.setSkipSeenCodes(skip);
+        }
+    }
+
+    private void applyScanHistory() {
+        final CodeAnalyzer analyzer = codeAnalyzer;
+        if (analyzer != null) {
+            analyzer.setScanHistory(scanHistory);
+        }
+    }
+
+    private void openScanHistory(File directory, Executor mainExecutor) {
+        final ScanHistory history;
+        try {
+            history = ScanHistory.open(directory);
+        } catch (IOException e) {
+            Log.w(TAG, "Scan history unavailable", e);
+            return;
+        }
+        scanHistory = history;
+        // Should the fragment be destroyed meanwhile, the close queued behind this task releases it.
+        mainExecutor.execute(this::applyScanHistory);
+    }
+
+    private void closeScanHistory() {
+        final ScanHistory history = scanHistory;
+        if (history == null) {
+            return;
+        }
+        scanHistory = null;
+        try {
+            history.close();
+        } catch (IOException e) {
+            Log.w(TAG, "Failed to write scan history", e);
+        }
+    }
+
+    /**
+     * Shows the scan metrics over the preview, refreshed twice a second. For debugging.
+     */
+    public void setDebugOverlay(boolean enabled) {
+        debugOverlayEnabled = enabled;
+        showDebugOverlay();
+    }
+
+    private void showDebugOverlay() {
+        if (debugOverlay == null) {
+            return;
+        }
+        debugOverlay.removeCallbacks(debugOverlayUpdater);
+        debugOverlay.setVisibility(debugOverlayEnabled ? View.VISIBLE : View.GONE);
+        if (debugOverlayEnabled) {
+            debugOverlayUpdater.run();
+        }
+    }
+
+    private final Runnable debugOverlayUpdater = new Runnable() {
+        @Override
+        public void run() {
+            debugOverlay.setText(scanMetrics.snapshot().toString());
+            debugOverlay.postDelayed(this, DEBUG_OVERLAY_REFRESH_MS);
+        }
+    };
+
+    /**
+     * Tunes the analysis resolution and frame rate so that decoding a frame stays under
+     * {@code millis} most of the time. The chosen profile is saved and used from the start next
+     * time. Defaults to 50 ms; 0 stops tuning and keeps the current profile.
+     */
+    public void setTargetDecodeLatency(long millis) {
+        targetDecodeLatencyMillis = Math.max(0, millis);
+        if (codeAnalyzer != null) {
+            updateAnalysisTuner();
+        }
+    }
+
+    /**
+     * Gives up on a frame which has not decoded within {@code millis}, so that one hard frame, e.g.
+     * with {@link DecodeConfig.Builder#setTryHarder}, cannot hold up the frames behind it.
+     * Defaults to 250 ms; 0 for no limit.
+     */
+    public void setDecodeBudget(long millis) {
+        decodeBudgetMillis = Math.max(0, millis);
+        if (codeAnalyzer != null) {
+            codeAnalyzer.setDecodeBudget(decodeBudgetMillis);
+        }
+    }
+
+    /**
+     * @return time from creating this fragment to the first camera frame being analyzed, or -1 if
+     * none has been yet. Each step of the startup is logged once the first frame arrives.
+     */
+    public long getTimeToFirstFrameMillis() {
+        final long nanos = startupTrace.getTimeToFirstFrameNanos();
+        return nanos >= 0 ? nanos / 1000000L : -1;
+    }
+
+    /**
+     * @return the analysis resolution, in sensor orientation, and frame interval in use
+     */
+    @NonNull
+    public AnalysisProfile getAnalysisProfile() {
+        return analysisProfile;
+    }
+
+    /**
+     * Sets how many threads decode frames in parallel. Takes effect the next time the camera is
+     * bound, so call this before the view is created.
+     */
+    public void setDecodeWorkerCount(int decodeWorkerCount) {
+        this.decodeWorkerCount = Math.max(1, decodeWorkerCount);
+    }
+
+    /**
+     * @return decode throughput and drop counters, or {@code null} when decoding on a single thread
+     */
+    @Nullable
+    public DecodeStats getDecodeStats() {
+        return codeAnalyzer != null ? codeAnalyzer.getDecodeStats() : null;
+    }
+
+    /**
+     * Records every analyzed frame to {@code file} until {@link #stopRecording()}, for replaying
+     * scans that failed in the field. Frames are written on the camera thread, so this slows
+     * analysis down and is meant for debugging only.
+     */
+    public void startRecording(@NonNull File file) throws IOException {
+        stopRecording();
+        frameRecorder = new FrameRecorder(file);
+        if (codeAnalyzer != null) {
+            codeAnalyzer.setFrameRecorder(frameRecorder);
+        }
+    }
+
+    public void stopRecording() {
+        if (frameRecorder == null) {
+            return;
+        }
+        if (codeAnalyzer != null) {
+            codeAnalyzer.setFrameRecorder(null);
+        }
+        try {
+            frameRecorder.close();
+        } catch (IOException e) {
+            Log.w(TAG, "Failed to finish recording", e);
+        }
+        frameRecorder = null;
     }
 
     public void startScan() {
         requireActivity().runOnUiThread(() -> {
-            codeAnalyzer.setAnalyzeEnable(true);
+            final CodeAnalyzer analyzer = codeAnalyzer;
+            if (analyzer != null) {
+                analyzer.resetMultiCode();
+                analyzer.setAnalyzeEnable(true);
+            }
+            scanMetrics.markStart();
+            resumeAnalysis();
             viewfinderView.startScan();
         });
     }
 
+    /**
+     * Stops decoding and the viewfinder animation. The preview keeps running, but the analysis use
+     * case is unbound, so the camera stops producing analysis frames altogether until
+     * {@link #startScan()}. Before the camera is ready, this only makes it start out stopped.
+     */
     public void stopScan() {
+        final CodeAnalyzer analyzer = codeAnalyzer;
+        if (analyzer != null) {
+            // Right away rather than on the UI thread, so that decodes in progress stop now.
+            analyzer.setAnalyzeEnable(false);
+        }
         requireActivity().runOnUiThread(() -> {
-            codeAnalyzer.setAnalyzeEnable(false);
+            pauseAnalysis();
             viewfinderView.stopScan();
         });
     }
 
+    private void pauseAnalysis() {
+        if (analysisPaused) {
+            return;
+        }
+        analysisPaused = true;
+        pausedAtNanos = System.nanoTime();
+        framesWhilePausedAtPause = scanMetrics.snapshot().getFramesWhilePaused();
+        if (cameraProvider != null && imageAnalysis != null) {
+            cameraProvider.unbind(imageAnalysis);
+        }
+    }
+
+    /**
+     * Binds the same use case again, its analyzer and decoders stay warm meanwhile; only the
+     * capture session is reconfigured.
+     */
+    private void resumeAnalysis() {
+        if (!analysisPaused) {
+            return;
+        }
+        analysisPaused = false;
+        // Should be 0, with the use case unbound the camera produces no analysis frames at all.
+        final long framesWhilePaused = scanMetrics.snapshot().getFramesWhilePaused() - framesWhilePausedAtPause;
+        Log.i(TAG, "Paused for " + (System.nanoTime() - pausedAtNanos) / 1000000L + " ms, "
+                + framesWhilePaused + " analysis frames still arrived");
+        if (cameraProvider != null && imageAnalysis != null && getView() != null) {
+            cameraProvider.bindToLifecycle(this, cameraSelector, imageAnalysis);
+        }
+    }
+
+    private void updateFramingRectMapper() {
+        if (previewView.getWidth() == 0 || previewView.getHeight() == 0) {
+            return;
+        }
+        // The framing rect is in the viewfinder's coordinates, move it into the preview view's.
+        Rect framingRect = viewfinderView.getFramingRect();
+        framingRect.offset(viewfinderView.getLeft() - previewView.getLeft(),
+                viewfinderView.getTop() - previewView.getTop());
+        framingRectMapper = new FramingRectMapper(previewView.getWidth(), previewView.getHeight(),
+                framingRect, previewView.getScaleType());
+        if (codeAnalyzer != null) {
+            codeAnalyzer.setFramingRectMapper(framingRectMapper);
+        }
+    }
+
     private boolean hasPermissions(@NonNull Context context) {
         for (String permission : PERMISSIONS_REQUIRED) {
             if (ContextCompat.checkSelfPermission(context, permission) != PackageManager.PERMISSION_GRANTED) {
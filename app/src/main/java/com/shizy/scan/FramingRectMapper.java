@@ -0,0 +1,187 @@
+package com.shizy.scan;
+
+import android.graphics.Rect;
+
+import androidx.annotation.NonNull;
+import androidx.camera.view.PreviewView;
+
+/**
+ * Maps the framing rectangle drawn by the viewfinder from view space into the coordinate space of
+ * the analysis image, so that only the pixels inside the box get binarized and decoded, and points
+ * found in the analysis image back to view space, to draw them.
+ * <p>
+ * The analysis image is assumed to cover the same field of view as the preview stream, which is
+ * the case when both use the same aspect ratio (CameraX defaults to 4:3 for both).
+ */
+final class FramingRectMapper {
+
+    private final int viewWidth;
+    private final int viewHeight;
+    private final Rect framingRect;
+    private final PreviewView.ScaleType scaleType;
+
+    /**
+     * @param viewWidth   width of the preview view
+     * @param viewHeight  height of the preview view
+     * @param framingRect framing rectangle, relative to the preview view
+     * @param scaleType   how the preview view scales the camera stream
+     */
+    FramingRectMapper(int viewWidth, int viewHeight, @NonNull Rect framingRect, @NonNull PreviewView.ScaleType scaleType) {
+        this.viewWidth = viewWidth;
+        this.viewHeight = viewHeight;
+        this.framingRect = new Rect(framingRect);
+        this.scaleType = scaleType;
+    }
+
+    /**
+     * Computes the part of the analysis image which is shown inside the framing rectangle.
+     *
+     * @param imageWidth      width of the analysis image, in sensor orientation
+     * @param imageHeight     height of the analysis image, in sensor orientation
+     * @param rotationDegrees clockwise rotation which makes the image upright on screen
+     * @param out             receives the crop rectangle in image coordinates; empty if the
+     *                        framing rectangle does not overlap the image at all
+     */
+    void mapToImage(int imageWidth, int imageHeight, int rotationDegrees, @NonNull Rect out) {
+        final boolean swap = rotationDegrees == 90 || rotationDegrees == 270;
+        final int uprightWidth = swap ? imageHeight : imageWidth;
+        final int uprightHeight = swap ? imageWidth : imageHeight;
+
+        final float scale = scale(uprightWidth, uprightHeight);
+        final float offsetX = align(viewWidth - uprightWidth * scale);
+        final float offsetY = align(viewHeight - uprightHeight * scale);
+
+        // Framing rect in the upright image, clamped to what the image actually covers.
+        final float u0 = clamp((framingRect.left - offsetX) / scale, uprightWidth);
+        final float u1 = clamp((framingRect.right - offsetX) / scale, uprightWidth);
+        final float v0 = clamp((framingRect.top - offsetY) / scale, uprightHeight);
+        final float v1 = clamp((framingRect.bottom - offsetY) / scale, uprightHeight);
+
+        // Undo the display rotation to get back to sensor orientation.
+        final float x0, y0, x1, y1;
+        switch (rotationDegrees) {
+            case 90:
+                x0 = v0;
+                x1 = v1;
+                y0 = imageHeight - u1;
+                y1 = imageHeight - u0;
+                break;
+            case 180:
+                x0 = imageWidth - u1;
+                x1 = imageWidth - u0;
+                y0 = imageHeight - v1;
+                y1 = imageHeight - v0;
+                break;
+            case 270:
+                x0 = imageWidth - v1;
+                x1 = imageWidth - v0;
+                y0 = u0;
+                y1 = u1;
+                break;
+            default:
+                x0 = u0;
+                x1 = u1;
+                y0 = v0;
+                y1 = v1;
+                break;
+        }
+
+        out.set(Math.round(x0), Math.round(y0), Math.round(x1), Math.round(y1));
+        if (!out.intersect(0, 0, imageWidth, imageHeight)) {
+            out.setEmpty();
+        }
+    }
+
+    /**
+     * @return the horizontal position in the preview view of the analysis image point
+     * ({@code x}, {@code y}), which may lie outside the view. The reverse of {@link #mapToImage}.
+     */
+    float mapXToView(int imageWidth, int imageHeight, int rotationDegrees, float x, float y) {
+        final float u = uprightX(imageWidth, imageHeight, rotationDegrees, x, y);
+        final boolean swap = rotationDegrees == 90 || rotationDegrees == 270;
+        final int uprightWidth = swap ? imageHeight : imageWidth;
+        final float scale = scale(uprightWidth, swap ? imageWidth : imageHeight);
+        return u * scale + align(viewWidth - uprightWidth * scale);
+    }
+
+    /**
+     * @return the vertical position in the preview view of the analysis image point
+     * ({@code x}, {@code y}), see {@link #mapXToView}
+     */
+    float mapYToView(int imageWidth, int imageHeight, int rotationDegrees, float x, float y) {
+        final float v = uprightY(imageWidth, imageHeight, rotationDegrees, x, y);
+        final boolean swap = rotationDegrees == 90 || rotationDegrees == 270;
+        final int uprightHeight = swap ? imageWidth : imageHeight;
+        final float scale = scale(swap ? imageHeight : imageWidth, uprightHeight);
+        return v * scale + align(viewHeight - uprightHeight * scale);
+    }
+
+    /**
+     * @return the horizontal position of the analysis image point ({@code x}, {@code y}) once the
+     * image is rotated upright
+     */
+    static float uprightX(int imageWidth, int imageHeight, int rotationDegrees, float x, float y) {
+        switch (rotationDegrees) {
+            case 90:
+                return imageHeight - y;
+            case 180:
+                return imageWidth - x;
+            case 270:
+                return y;
+            default:
+                return x;
+        }
+    }
+
+    /**
+     * @return the vertical position of the analysis image point ({@code x}, {@code y}) once the
+     * image is rotated upright
+     */
+    static float uprightY(int imageWidth, int imageHeight, int rotationDegrees, float x, float y) {
+        switch (rotationDegrees) {
+            case 90:
+                return x;
+            case 180:
+                return imageHeight - y;
+            case 270:
+                return imageWidth - x;
+            default:
+                return y;
+        }
+    }
+
+    private float scale(int uprightWidth, int uprightHeight) {
+        final float scaleX = viewWidth / (float) uprightWidth;
+        final float scaleY = viewHeight / (float) uprightHeight;
+        return isFill() ? Math.max(scaleX, scaleY) : Math.min(scaleX, scaleY);
+    }
+
+    private boolean isFill() {
+        switch (scaleType) {
+            case FIT_START:
+            case FIT_CENTER:
+            case FIT_END:
+                return false;
+            default:
+                return true;
+        }
+    }
+
+    private float align(float space) {
+        switch (scaleType) {
+            case FILL_START:
+            case FIT_START:
+                return 0f;
+            case FILL_END:
+            case FIT_END:
+                return space;
+            default:
+                return space / 2f;
+        }
+    }
+
+    private static float clamp(float value, int max) {
+        return value < 0f ? 0f : Math.min(value, max);
+    }
+
+}
@@ -0,0 +1,96 @@
+package com.shizy.scan;
+
+import android.os.Build;
+import android.os.SystemClock;
+import android.os.Trace;
+import android.util.Log;
+
+import androidx.annotation.NonNull;
+
+import java.util.Locale;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * Timestamps of the steps between creating the scanner and analyzing its first frame, for telling
+ * which of the steps running in parallel holds up the start.
+ * <p>
+ * The whole start shows up as one async section named {@value #SECTION} in a system trace, on
+ * Android 10 and up. Each step is recorded once, from whatever thread finishes it; once the first
+ * frame is in, all of them are logged.
+ */
+final class StartupTrace {
+
+    enum Step {
+        /**
+         * The fragment was created; the clock starts here.
+         */
+        CREATED,
+        CAMERA_PROVIDER_READY,
+        DECODER_WARM,
+        AUDIO_READY,
+        CAMERA_BOUND,
+        FIRST_FRAME
+    }
+
+    private static final String TAG = StartupTrace.class.getSimpleName();
+    private static final String SECTION = "CodeScan startup";
+
+    private final AtomicLongArray stepNanos = new AtomicLongArray(Step.values().length);
+    private final int cookie = System.identityHashCode(this);
+
+    StartupTrace() {
+        for (int i = 0; i < stepNanos.length(); i++) {
+            stepNanos.set(i, -1);
+        }
+        mark(Step.CREATED);
+        if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.Q) {
+            Trace.beginAsyncSection(SECTION, cookie);
+        }
+    }
+
+    /**
+     * Records that {@code step} has just finished. Later calls for the same step are ignored.
+     */
+    void mark(@NonNull Step step) {
+        if (!stepNanos.compareAndSet(step.ordinal(), -1, SystemClock.elapsedRealtimeNanos())) {
+            return;
+        }
+        if (step == Step.FIRST_FRAME) {
+            if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.Q) {
+                Trace.endAsyncSection(SECTION, cookie);
+            }
+            Log.i(TAG, toString());
+        }
+    }
+
+    /**
+     * @return time from {@link Step#CREATED} to {@code step}, or -1 if that step has not happened
+     */
+    long getNanos(@NonNull Step step) {
+        final long nanos = stepNanos.get(step.ordinal());
+        return nanos >= 0 ? nanos - stepNanos.get(Step.CREATED.ordinal()) : -1;
+    }
+
+    /**
+     * @return time from creating the fragment to the first analyzed frame, or -1 if no frame has
+     * arrived yet
+     */
+    long getTimeToFirstFrameNanos() {
+        return getNanos(Step.FIRST_FRAME);
+    }
+
+    @Override
+    public String toString() {
+        final StringBuilder builder = new StringBuilder("startup");
+        for (Step step : Step.values()) {
+            if (step == Step.CREATED) {
+                continue;
+            }
+            final long nanos = getNanos(step);
+            builder.append(' ').append(step.name().toLowerCase(Locale.ROOT)).append('=')
+                    .append(nanos >= 0 ? nanos / 1000000L + "ms" : "-");
+        }
+        return builder.toString();
+    }
+
+}
@@ -0,0 +1,73 @@
+package com.shizy.scan.view;
+
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * Fixed-size ring of points handed from decoding threads to the UI thread without locks or
+ * allocation.
+ * <p>
+ * Each point is stored as its two float coordinates packed into one long, so that a point is
+ * always written and taken whole. Any number of threads may {@link #add} points; when they come
+ * faster than they are drained, the oldest ones are overwritten. A single thread
+ * {@link #drain}s them.
+ */
+public final class ResultPointBuffer {
+
+    /**
+     * A NaN pattern which {@link Float#floatToIntBits} never produces for a coordinate.
+     */
+    private static final long EMPTY = -1L;
+
+    private final AtomicLongArray slots;
+    private final int mask;
+    private final AtomicLong next = new AtomicLong();
+
+    /**
+     * @param capacity rounded up to a power of two
+     */
+    public ResultPointBuffer(int capacity) {
+        final int size = Integer.highestOneBit(Math.max(2, capacity) * 2 - 1);
+        slots = new AtomicLongArray(size);
+        mask = size - 1;
+        for (int i = 0; i < size; i++) {
+            slots.set(i, EMPTY);
+        }
+    }
+
+    public int capacity() {
+        return slots.length();
+    }
+
+    /**
+     * May be called from any thread.
+     */
+    public void add(float x, float y) {
+        final long packed = ((long) Float.floatToIntBits(x) << 32) | (Float.floatToIntBits(y) & 0xffffffffL);
+        slots.lazySet((int) (next.getAndIncrement() & mask), packed);
+    }
+
+    /**
+     * Takes all points added since the last call. Must always be called from the same thread.
+     *
+     * @param out receives x and y of each point, in turn; needs room for twice the capacity
+     * @return the number of points taken
+     */
+    public int drain(float[] out) {
+        int count = 0;
+        for (int i = 0; i < slots.length(); i++) {
+            // Cheap read first, most slots are empty most of the time.
+            if (slots.get(i) == EMPTY) {
+                continue;
+            }
+            final long packed = slots.getAndSet(i, EMPTY);
+            if (packed != EMPTY) {
+                out[count * 2] = Float.intBitsToFloat((int) (packed >>> 32));
+                out[count * 2 + 1] = Float.intBitsToFloat((int) packed);
+                count++;
+            }
+        }
+        return count;
+    }
+
+}
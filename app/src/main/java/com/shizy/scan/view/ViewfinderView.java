@@ -1,36 +1,40 @@
 package com.shizy.scan.view;
 
 import android.animation.ValueAnimator;
-import android.annotation.SuppressLint;
 import android.content.Context;
 import android.content.res.Resources;
 import android.graphics.Bitmap;
 import android.graphics.Canvas;
 import android.graphics.Paint;
 import android.graphics.Rect;
+import android.os.SystemClock;
 import android.util.AttributeSet;
-import android.util.Log;
 import android.view.View;
 import android.view.animation.LinearInterpolator;
 
-import com.google.zxing.ResultPoint;
 import com.shizy.scan.R;
 
-import java.util.ArrayList;
-import java.util.List;
-
 /**
  * This view is overlaid on top of the camera preview. It adds the viewfinder rectangle and partial
  * transparency outside it, as well as the laser scanner animation and result points.
+ * <p>
+ * The laser is driven by an animator, and so by vsync, and only while scanning and attached. Points
+ * found by the decoder come in through a {@link ResultPointBuffer}, so that neither drawing nor
+ * decoding allocates or waits for the other.
  *
  * @author dswitkin@google.com (Daniel Switkin)
  */
 public final class ViewfinderView extends View {
 
-    private static final long ANIMATION_DELAY = 15L;
     private static final int CURRENT_POINT_OPACITY = 0xA0;
-    private static final int MAX_RESULT_POINTS = 20;
+    private static final int MAX_RESULT_POINTS = 32;
     private static final int POINT_SIZE = 6;
+    private static final int LASER_INSET = 10;
+    private static final int LASER_HEIGHT = 2;
+    /**
+     * How long points stay on screen when no new ones come.
+     */
+    private static final long POINT_HOLD_MS = 200L;
 
     private final Paint paint;
     private Bitmap resultBitmap;
@@ -44,11 +48,18 @@ public final class ViewfinderView extends View {
     private final int cornerSize;
     private final float cornerOffset;
     private final int cornerLength;
-    //    private int scannerAlpha;
-    private List<ResultPoint> possibleResultPoints;
-    private List<ResultPoint> lastPossibleResultPoints;
+
+    private final ResultPointBuffer pointBuffer = new ResultPointBuffer(MAX_RESULT_POINTS);
+    // Points on screen and the ones being taken from the buffer, swapped when new ones come.
+    private float[] points = new float[pointBuffer.capacity() * 2];
+    private float[] incomingPoints = new float[pointBuffer.capacity() * 2];
+    private int pointCount;
+    private long pointsShownAt;
+    private final Rect pointBounds = new Rect();
 
     private final Rect framingRect = new Rect();
+    private final Rect laserBounds = new Rect();
+    private final Rect dirty = new Rect();
     private final ValueAnimator laserAnimator;
     private boolean scanning = true;
 
@@ -69,14 +80,12 @@ public final class ViewfinderView extends View {
         cornerSize = resources.getDimensionPixelSize(R.dimen.viewfinder_corner_size);
         cornerLength = resources.getDimensionPixelSize(R.dimen.viewfinder_corner_length);
         cornerOffset = cornerSize / 2.0f;
-        possibleResultPoints = new ArrayList<>(5);
-        lastPossibleResultPoints = null;
 
         laserAnimator = ValueAnimator.ofFloat(0f, 1f);
         laserAnimator.setDuration(2000L);
         laserAnimator.setInterpolator(new LinearInterpolator());
         laserAnimator.setRepeatCount(ValueAnimator.INFINITE);
-        laserAnimator.start();
+        laserAnimator.addUpdateListener(animation -> onAnimationFrame());
     }
 
     @Override
@@ -85,14 +94,23 @@ public final class ViewfinderView extends View {
         calculateFramingRect();
     }
 
-    @SuppressLint("DrawAllocation")
+    @Override
+    protected void onAttachedToWindow() {
+        super.onAttachedToWindow();
+        if (scanning) {
+            laserAnimator.start();
+        }
+    }
+
+    @Override
+    protected void onDetachedFromWindow() {
+        laserAnimator.cancel();
+        super.onDetachedFromWindow();
+    }
+
     @Override
     public void onDraw(Canvas canvas) {
         Rect frame = framingRect;
-//        Rect previewFrame = cameraManager.getFramingRectInPreview();
-//        if (frame == null || previewFrame == null) {
-//            return;
-//        }
         drawMask(canvas);
         drawBorder(canvas);
         drawCorner(canvas);
@@ -105,49 +123,42 @@ public final class ViewfinderView extends View {
             if (scanning) {
                 drawLaser(canvas);
             }
-//            float scaleX = frame.width() / (float) previewFrame.width();
-//            float scaleY = frame.height() / (float) previewFrame.height();
-
-            List<ResultPoint> currentPossible = possibleResultPoints;
-            List<ResultPoint> currentLast = lastPossibleResultPoints;
-            int frameLeft = frame.left;
-            int frameTop = frame.top;
-            if (currentPossible.isEmpty()) {
-                lastPossibleResultPoints = null;
-            } else {
-                possibleResultPoints = new ArrayList<>(5);
-                lastPossibleResultPoints = currentPossible;
-                paint.setAlpha(CURRENT_POINT_OPACITY);
-                paint.setColor(resultPointColor);
-                synchronized (currentPossible) {
-//                    for (ResultPoint point : currentPossible) {
-//                        canvas.drawCircle(frameLeft + (int) (point.getX() * scaleX),
-//                                frameTop + (int) (point.getY() * scaleY),
-//                                POINT_SIZE, paint);
-//                    }
-                }
-            }
-            if (currentLast != null) {
-                paint.setAlpha(CURRENT_POINT_OPACITY / 2);
-                paint.setColor(resultPointColor);
-                synchronized (currentLast) {
-                    float radius = POINT_SIZE / 2.0f;
-//                    for (ResultPoint point : currentLast) {
-//                        canvas.drawCircle(frameLeft + (int) (point.getX() * scaleX),
-//                                frameTop + (int) (point.getY() * scaleY),
-//                                radius, paint);
-//                    }
-                }
-            }
+            drawPoints(canvas);
+        }
+    }
 
-            // Request another update at the animation interval, but only repaint the laser line,
-            // not the entire viewfinder mask.
-            postInvalidateDelayed(ANIMATION_DELAY,
-                    frame.left,
-                    frame.top,
-                    frame.right,
-                    frame.bottom);
+    /**
+     * Called by the laser animator on every vsync while scanning. Moves the laser, picks up new
+     * points, and repaints only what changed: the laser's old and new strips and the points which
+     * appeared or went away.
+     */
+    @SuppressWarnings("deprecation")
+    private void onAnimationFrame() {
+        final Rect dirty = this.dirty;
+        dirty.set(laserBounds);
+        updateLaserBounds();
+        dirty.union(laserBounds);
+
+        final long now = SystemClock.uptimeMillis();
+        final int taken = pointBuffer.drain(incomingPoints);
+        if (taken > 0) {
+            dirty.union(pointBounds);
+            final float[] shown = points;
+            points = incomingPoints;
+            incomingPoints = shown;
+            pointCount = taken;
+            pointsShownAt = now;
+            updatePointBounds();
+            dirty.union(pointBounds);
+        } else if (pointCount > 0 && now - pointsShownAt > POINT_HOLD_MS) {
+            dirty.union(pointBounds);
+            pointCount = 0;
+            pointBounds.setEmpty();
         }
+        // Dirty rectangles are ignored with hardware acceleration, which redraws the display list
+        // of the whole view instead; cheap here, as it holds a handful of shapes. That is why
+        // invalidate(Rect) is deprecated, but it still spares work on software layers.
+        invalidate(dirty);
     }
 
     private void drawMask(Canvas canvas) {
@@ -202,15 +213,49 @@ public final class ViewfinderView extends View {
         paint.setStyle(Paint.Style.FILL);
         paint.setColor(laserColor);
 
-        final Rect frame = framingRect;
-
         final float fraction = laserAnimator.getAnimatedFraction();
-        final int laserTop = frame.top + (int) ((frame.bottom - frame.top - 10) * fraction);
         paint.setAlpha((int) (Math.sin(fraction * Math.PI) * 255));
-        canvas.drawRect(frame.left + 10, laserTop, frame.right - 10, laserTop + 2, paint);
+        canvas.drawRect(laserBounds, paint);
         paint.setAlpha(255);
     }
 
+    private void updateLaserBounds() {
+        final Rect frame = framingRect;
+        final float fraction = laserAnimator.getAnimatedFraction();
+        final int laserTop = frame.top + (int) ((frame.bottom - frame.top - LASER_INSET) * fraction);
+        laserBounds.set(frame.left + LASER_INSET, laserTop, frame.right - LASER_INSET, laserTop + LASER_HEIGHT);
+    }
+
+    private void drawPoints(Canvas canvas) {
+        if (pointCount == 0) {
+            return;
+        }
+        paint.setStyle(Paint.Style.FILL);
+        paint.setColor(resultPointColor);
+        paint.setAlpha(CURRENT_POINT_OPACITY);
+        final float[] points = this.points;
+        for (int i = 0; i < pointCount; i++) {
+            canvas.drawCircle(points[i * 2], points[i * 2 + 1], POINT_SIZE, paint);
+        }
+        paint.setAlpha(255);
+    }
+
+    private void updatePointBounds() {
+        final float[] points = this.points;
+        float minX = Float.MAX_VALUE;
+        float minY = Float.MAX_VALUE;
+        float maxX = -Float.MAX_VALUE;
+        float maxY = -Float.MAX_VALUE;
+        for (int i = 0; i < pointCount; i++) {
+            minX = Math.min(minX, points[i * 2]);
+            minY = Math.min(minY, points[i * 2 + 1]);
+            maxX = Math.max(maxX, points[i * 2]);
+            maxY = Math.max(maxY, points[i * 2 + 1]);
+        }
+        pointBounds.set((int) minX - POINT_SIZE - 1, (int) minY - POINT_SIZE - 1,
+                (int) Math.ceil(maxX) + POINT_SIZE + 1, (int) Math.ceil(maxY) + POINT_SIZE + 1);
+    }
+
     private void calculateFramingRect() {
         final int rectWidth = getWidth() * 3 / 4;
         final int rectHeight = getHeight() * 3 / 4;
@@ -223,18 +268,32 @@ public final class ViewfinderView extends View {
         framingRect.bottom = top + size;
     }
 
+    /**
+     * @return a copy of the framing rectangle, in this view's own coordinates
+     */
+    public Rect getFramingRect() {
+        final Rect rect = new Rect(framingRect);
+        rect.offset(-getLeft(), -getTop());
+        return rect;
+    }
+
     public void startScan() {
+        if (scanning) {
+            return;
+        }
         scanning = true;
-        if (!laserAnimator.isStarted()) {
+        if (isAttachedToWindow() && !laserAnimator.isStarted()) {
             laserAnimator.start();
         }
     }
 
     public void stopScan() {
         scanning = false;
-        if (laserAnimator.isStarted()) {
-            laserAnimator.cancel();
-        }
+        laserAnimator.cancel();
+        pointCount = 0;
+        pointBounds.setEmpty();
+        // One last frame without the laser and points; nothing is redrawn after that.
+        invalidate();
     }
 
     public void drawViewfinder() {
@@ -256,16 +315,15 @@ public final class ViewfinderView extends View {
         invalidate();
     }
 
-    public void addPossibleResultPoint(ResultPoint point) {
-        List<ResultPoint> points = possibleResultPoints;
-        synchronized (points) {
-            points.add(point);
-            int size = points.size();
-            if (size > MAX_RESULT_POINTS) {
-                // trim it
-                points.subList(0, size - MAX_RESULT_POINTS / 2).clear();
-            }
-        }
+    /**
+     * Shows a point where the decoder detected part of a code. Never blocks or allocates, and may be
+     * called from any thread; the point appears with the next animation frame.
+     *
+     * @param x in this view's coordinates
+     * @param y in this view's coordinates
+     */
+    public void addPossibleResultPoint(float x, float y) {
+        pointBuffer.add(x, y);
     }
 
 }
\ No newline at end of file
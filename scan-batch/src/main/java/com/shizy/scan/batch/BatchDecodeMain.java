@@ -0,0 +1,96 @@
+package com.shizy.scan.batch;
+
+import com.google.zxing.BarcodeFormat;
+import com.shizy.scan.core.DecodeConfig;
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.InputStreamReader;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Command line entry point.
+ * <pre>
+ * scan-batch [--threads N] [--formats QR_CODE,EAN_13] [--try-harder] [--also-inverted] [--pyramid] PATH...
+ * </pre>
+ * Each PATH is a file or a directory, which is searched recursively. A PATH of {@code -} reads
+ * file names from stdin, one per line, so files are decoded while the list is still being written.
+ */
+public final class BatchDecodeMain {
+
+    private BatchDecodeMain() {
+    }
+
+    public static void main(String[] args) throws Exception {
+        int threads = Runtime.getRuntime().availableProcessors();
+        final DecodeConfig.Builder config = new DecodeConfig.Builder();
+        final List<String> paths = new ArrayList<>();
+        for (int i = 0; i < args.length; i++) {
+            switch (args[i]) {
+                case "--threads":
+                    threads = Integer.parseInt(args[++i]);
+                    break;
+                case "--formats":
+                    final List<BarcodeFormat> formats = new ArrayList<>();
+                    for (String format : args[++i].split(",")) {
+                        formats.add(BarcodeFormat.valueOf(format.trim()));
+                    }
+                    config.setFormats(formats);
+                    break;
+                case "--try-harder":
+                    config.setTryHarder(true);
+                    break;
+                case "--also-inverted":
+                    config.setAlsoInverted(true);
+                    break;
+                case "--pyramid":
+                    config.setPyramid(true);
+                    break;
+                default:
+                    paths.add(args[i]);
+                    break;
+            }
+        }
+        if (paths.isEmpty()) {
+            System.err.println("Usage: scan-batch [--threads N] [--formats F1,F2] [--try-harder] [--also-inverted] [--pyramid] PATH...");
+            System.exit(2);
+        }
+
+        final BatchDecoder decoder = new BatchDecoder(config.build(), threads);
+        final JsonLinesWriter writer = new JsonLinesWriter(System.out);
+        for (String path : paths) {
+            if ("-".equals(path)) {
+                final BufferedReader reader = new BufferedReader(new InputStreamReader(System.in, StandardCharsets.UTF_8));
+                String line;
+                while ((line = reader.readLine()) != null) {
+                    if (!line.isEmpty()) {
+                        submit(decoder, new File(line), writer);
+                    }
+                }
+            } else {
+                submit(decoder, new File(path), writer);
+            }
+        }
+        decoder.finish();
+    }
+
+    private static void submit(BatchDecoder decoder, File file, JsonLinesWriter writer) throws InterruptedException {
+        if (file.isDirectory()) {
+            final File[] children = file.listFiles();
+            if (children != null) {
+                Arrays.sort(children);
+                for (File child : children) {
+                    if (child.isDirectory() || ImageFrames.isSupported(child)) {
+                        submit(decoder, child, writer);
+                    }
+                }
+            }
+        } else {
+            decoder.submit(file, writer);
+        }
+    }
+
+}
@@ -0,0 +1,94 @@
+package com.shizy.scan.batch;
+
+import com.google.zxing.Result;
+import com.shizy.scan.core.DecodeConfig;
+import com.shizy.scan.core.Frame;
+import com.shizy.scan.core.FrameDecoder;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.List;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Decodes many files in parallel on a work-stealing pool. Every worker thread owns a
+ * {@link FrameDecoder}, the same engine the app uses for live frames, so batch and live results
+ * always agree.
+ */
+final class BatchDecoder {
+
+    interface Listener {
+
+        /**
+         * Called on a worker thread, possibly several at once.
+         */
+        void onResult(BatchResult result);
+
+    }
+
+    private final ForkJoinPool pool;
+    private final ThreadLocal<FrameDecoder> decoders;
+    private final Semaphore inFlight;
+
+    BatchDecoder(DecodeConfig config, int parallelism) {
+        pool = new ForkJoinPool(parallelism);
+        decoders = ThreadLocal.withInitial(() -> new FrameDecoder(config));
+        // Bounds memory when fed from an endless stream of file names.
+        inFlight = new Semaphore(parallelism * 4);
+    }
+
+    /**
+     * Queues {@code file} for decoding, blocking while too many files are already queued.
+     */
+    void submit(File file, Listener listener) throws InterruptedException {
+        inFlight.acquire();
+        pool.execute(() -> {
+            try {
+                decodeFile(file, listener);
+            } finally {
+                inFlight.release();
+            }
+        });
+    }
+
+    /**
+     * Waits for every submitted file to be decoded and shuts the pool down.
+     */
+    void finish() throws InterruptedException {
+        pool.shutdown();
+        pool.awaitTermination(Long.MAX_VALUE, TimeUnit.NANOSECONDS);
+    }
+
+    private void decodeFile(File file, Listener listener) {
+        final long loadStart = System.nanoTime();
+        final List<Frame> frames;
+        try {
+            frames = ImageFrames.load(file);
+        } catch (IOException | RuntimeException e) {
+            listener.onResult(new BatchResult(file, -1, null, 1, String.valueOf(e.getMessage()),
+                    System.nanoTime() - loadStart, 0L));
+            return;
+        }
+        final long loadNanos = System.nanoTime() - loadStart;
+
+        final FrameDecoder decoder = decoders.get();
+        for (int i = 0; i < frames.size(); i++) {
+            final long decodeStart = System.nanoTime();
+            final Result result;
+            try {
+                result = decoder.decode(frames.get(i));
+            } catch (RuntimeException e) {
+                // Every input gets its line, a frame the decoder cannot take included.
+                listener.onResult(new BatchResult(file, i, null, 1, String.valueOf(e.getMessage()),
+                        i == 0 ? loadNanos : 0L, System.nanoTime() - decodeStart));
+                continue;
+            }
+            final long decodeNanos = System.nanoTime() - decodeStart;
+            listener.onResult(new BatchResult(file, i, result, decoder.getResultScale(), null,
+                    i == 0 ? loadNanos : 0L, decodeNanos));
+        }
+    }
+
+}
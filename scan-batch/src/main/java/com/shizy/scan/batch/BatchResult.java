@@ -0,0 +1,31 @@
+package com.shizy.scan.batch;
+
+import com.google.zxing.Result;
+
+import java.io.File;
+
+/**
+ * Outcome of decoding one frame of one input file.
+ */
+final class BatchResult {
+
+    final File file;
+    final int frameIndex;
+    final Result result;
+    final int scale;
+    final String error;
+    final long loadNanos;
+    final long decodeNanos;
+
+    BatchResult(File file, int frameIndex, Result result, int scale, String error, long loadNanos,
+                long decodeNanos) {
+        this.file = file;
+        this.frameIndex = frameIndex;
+        this.result = result;
+        this.scale = scale;
+        this.error = error;
+        this.loadNanos = loadNanos;
+        this.decodeNanos = decodeNanos;
+    }
+
+}
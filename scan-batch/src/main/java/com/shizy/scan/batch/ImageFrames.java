@@ -0,0 +1,109 @@
+package com.shizy.scan.batch;
+
+import com.shizy.scan.core.Frame;
+import com.shizy.scan.core.FrameSequence;
+
+import java.awt.image.BufferedImage;
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+import javax.imageio.ImageIO;
+
+/**
+ * Turns input files into {@link Frame}s: images ImageIO can read (PNG, JPEG, ...), frame sequences
+ * recorded by the app, and raw luminance dumps.
+ */
+final class ImageFrames {
+
+    private static final Pattern RAW_FRAME_NAME = Pattern.compile(".*_(\\d+)x(\\d+)(?:_r(\\d+))?\\.(?:y|yuv)");
+
+    private ImageFrames() {
+    }
+
+    static boolean isSupported(File file) {
+        final String name = file.getName().toLowerCase(Locale.ROOT);
+        return name.endsWith(".png")
+                || name.endsWith(".jpg")
+                || name.endsWith(".jpeg")
+                || name.endsWith(".bmp")
+                || name.endsWith(".gif")
+                || name.endsWith(".csfr")
+                || RAW_FRAME_NAME.matcher(name).matches();
+    }
+
+    static List<Frame> load(File file) throws IOException {
+        final String name = file.getName().toLowerCase(Locale.ROOT);
+        final List<Frame> frames = new ArrayList<>();
+        if (name.endsWith(".csfr")) {
+            // The mapping outlives the file handle, so the frames stay readable after closing.
+            try (FrameSequence sequence = new FrameSequence(file)) {
+                for (int i = 0; i < sequence.size(); i++) {
+                    frames.add(sequence.get(i));
+                }
+            }
+            return frames;
+        }
+
+        final Matcher matcher = RAW_FRAME_NAME.matcher(name);
+        if (matcher.matches()) {
+            final int width = Integer.parseInt(matcher.group(1));
+            final int height = Integer.parseInt(matcher.group(2));
+            final int rotation = matcher.group(3) != null ? Integer.parseInt(matcher.group(3)) : 0;
+            if (rotation % 90 != 0 || rotation >= 360) {
+                throw new IOException("Rotation must be 0, 90, 180 or 270: " + rotation);
+            }
+            final byte[] data = Files.readAllBytes(file.toPath());
+            if (data.length < width * height) {
+                throw new IOException("Too short for " + width + "x" + height);
+            }
+            frames.add(new Frame(ByteBuffer.wrap(data), width, height, width, 1, rotation, 0L));
+            return frames;
+        }
+
+        final BufferedImage image = ImageIO.read(file);
+        if (image == null) {
+            throw new IOException("Unsupported image format");
+        }
+        frames.add(toFrame(image));
+        return frames;
+    }
+
+    /**
+     * Converts to luminance the same way ZXing's BufferedImageLuminanceSource does, treating fully
+     * transparent pixels as white.
+     */
+    static Frame toFrame(BufferedImage image) {
+        final int width = image.getWidth();
+        final int height = image.getHeight();
+        final int[] row = new int[width];
+        final byte[] luminances = new byte[width * height];
+        for (int y = 0; y < height; y++) {
+            image.getRGB(0, y, width, 1, row, 0, width);
+            for (int x = 0; x < width; x++) {
+                final int argb = row[x];
+                final int luminance;
+                if ((argb >>> 24) == 0) {
+                    luminance = 0xFF;
+                } else {
+                    // .299R + 0.587G + 0.114B (YUV/YIQ for PAL and NTSC),
+                    // (306*R) >> 10 is approximately equal to R*0.299, and so on.
+                    // 0x200 >> 10 is 0.5, it implements rounding.
+                    luminance = (306 * ((argb >> 16) & 0xFF)
+                            + 601 * ((argb >> 8) & 0xFF)
+                            + 117 * (argb & 0xFF)
+                            + 0x200) >> 10;
+                }
+                luminances[y * width + x] = (byte) luminance;
+            }
+        }
+        return new Frame(luminances, width, height);
+    }
+
+}
@@ -0,0 +1,81 @@
+package com.shizy.scan.batch;
+
+import com.google.zxing.Result;
+
+import java.io.PrintStream;
+
+/**
+ * Writes one JSON object per line, e.g.
+ * <pre>
+ * {"file":"a.png","frame":0,"decoded":true,"format":"QR_CODE","text":"...","scale":1,"loadMicros":812,"decodeMicros":2301}
+ * </pre>
+ * Lines from concurrent workers never interleave.
+ */
+final class JsonLinesWriter implements BatchDecoder.Listener {
+
+    private final PrintStream out;
+    private final StringBuilder line = new StringBuilder(256);
+
+    JsonLinesWriter(PrintStream out) {
+        this.out = out;
+    }
+
+    @Override
+    public synchronized void onResult(BatchResult result) {
+        line.setLength(0);
+        line.append("{\"file\":");
+        appendString(result.file.getPath());
+        line.append(",\"frame\":").append(result.frameIndex);
+        if (result.error != null) {
+            line.append(",\"error\":");
+            appendString(result.error);
+        } else {
+            final Result decoded = result.result;
+            line.append(",\"decoded\":").append(decoded != null);
+            if (decoded != null) {
+                line.append(",\"format\":\"").append(decoded.getBarcodeFormat()).append('"');
+                line.append(",\"text\":");
+                appendString(decoded.getText());
+                line.append(",\"scale\":").append(result.scale);
+            }
+        }
+        line.append(",\"loadMicros\":").append(result.loadNanos / 1000L);
+        line.append(",\"decodeMicros\":").append(result.decodeNanos / 1000L);
+        line.append('}');
+        out.println(line);
+        out.flush();
+    }
+
+    private void appendString(String value) {
+        line.append('"');
+        for (int i = 0; i < value.length(); i++) {
+            final char c = value.charAt(i);
+            switch (c) {
+                case '"':
+                    line.append("\\\"");
+                    break;
+                case '\\':
+                    line.append("\\\\");
+                    break;
+                case '\n':
+                    line.append("\\n");
+                    break;
+                case '\r':
+                    line.append("\\r");
+                    break;
+                case '\t':
+                    line.append("\\t");
+                    break;
+                default:
+                    if (c < 0x20) {
+                        line.append(String.format("\\u%04x", (int) c));
+                    } else {
+                        line.append(c);
+                    }
+                    break;
+            }
+        }
+        line.append('"');
+    }
+
+}
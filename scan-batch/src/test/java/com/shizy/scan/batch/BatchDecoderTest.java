@@ -0,0 +1,96 @@
+package com.shizy.scan.batch;
+
+import com.google.zxing.BarcodeFormat;
+import com.google.zxing.WriterException;
+import com.google.zxing.common.BitMatrix;
+import com.google.zxing.qrcode.QRCodeWriter;
+import com.shizy.scan.core.DecodeConfig;
+import com.shizy.scan.core.Frame;
+import com.shizy.scan.core.FrameRecorder;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+
+public class BatchDecoderTest {
+
+    private static final int WIDTH = 320;
+    private static final int HEIGHT = 240;
+
+    @Rule
+    public final TemporaryFolder folder = new TemporaryFolder();
+
+    private static byte[] qrCode(String text) throws WriterException {
+        final BitMatrix code = new QRCodeWriter().encode(text, BarcodeFormat.QR_CODE, 160, 160);
+        final byte[] luminances = new byte[WIDTH * HEIGHT];
+        Arrays.fill(luminances, (byte) 220);
+        for (int y = 0; y < code.getHeight(); y++) {
+            for (int x = 0; x < code.getWidth(); x++) {
+                if (code.get(x, y)) {
+                    luminances[(y + 40) * WIDTH + x + 80] = 30;
+                }
+            }
+        }
+        return luminances;
+    }
+
+    private static List<BatchResult> decode(File... files) throws InterruptedException {
+        final List<BatchResult> results = Collections.synchronizedList(new ArrayList<BatchResult>());
+        final BatchDecoder decoder = new BatchDecoder(DecodeConfig.DEFAULT, 2);
+        for (File file : files) {
+            decoder.submit(file, results::add);
+        }
+        decoder.finish();
+        final List<BatchResult> sorted = new ArrayList<>(results);
+        Collections.sort(sorted, Comparator.comparing((BatchResult result) -> result.file.getName())
+                .thenComparingInt(result -> result.frameIndex));
+        return sorted;
+    }
+
+    @Test
+    public void reportsAFrameTheDecoderRejectsAndGoesOn() throws Exception {
+        final File file = folder.newFile("session.csfr");
+        try (FrameRecorder recorder = new FrameRecorder(file)) {
+            final byte[] code = qrCode("batch");
+            // Recordings keep whatever rotation they were given.
+            recorder.record(new Frame(ByteBuffer.wrap(code), WIDTH, HEIGHT, WIDTH, 1, 45, 0));
+            recorder.record(new Frame(code, WIDTH, HEIGHT));
+        }
+
+        final List<BatchResult> results = decode(file);
+        assertEquals(2, results.size());
+        assertEquals(0, results.get(0).frameIndex);
+        assertNotNull(results.get(0).error);
+        assertNull(results.get(1).error);
+        assertEquals("batch", results.get(1).result.getText());
+    }
+
+    @Test
+    public void everyInputGetsALine() throws Exception {
+        final File good = folder.newFile("good_320x240.y");
+        Files.write(good.toPath(), qrCode("raw"));
+        final File rotated = folder.newFile("odd_40x30_r45.y");
+        Files.write(rotated.toPath(), new byte[40 * 30]);
+
+        final List<BatchResult> results = decode(good, rotated);
+        assertEquals(2, results.size());
+        assertEquals("raw", results.get(0).result.getText());
+        assertEquals(-1, results.get(1).frameIndex);
+        assertNotNull(results.get(1).error);
+    }
+
+}
@@ -0,0 +1,71 @@
+package com.shizy.scan.batch;
+
+import com.shizy.scan.core.Frame;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.util.List;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+public class ImageFramesTest {
+
+    @Rule
+    public final TemporaryFolder folder = new TemporaryFolder();
+
+    private File raw(String name, int length) throws IOException {
+        final File file = folder.newFile(name);
+        Files.write(file.toPath(), new byte[length]);
+        return file;
+    }
+
+    @Test
+    public void recognizesInputsByName() {
+        assertTrue(ImageFrames.isSupported(new File("a.PNG")));
+        assertTrue(ImageFrames.isSupported(new File("session.csfr")));
+        assertTrue(ImageFrames.isSupported(new File("dump_640x480.y")));
+        assertTrue(ImageFrames.isSupported(new File("dump_640x480_r90.yuv")));
+        assertFalse(ImageFrames.isSupported(new File("dump_640x480_r.y")));
+        assertFalse(ImageFrames.isSupported(new File("dump.y")));
+        assertFalse(ImageFrames.isSupported(new File("notes.txt")));
+    }
+
+    @Test
+    public void readsSizeAndRotationFromRawNames() throws IOException {
+        final List<Frame> frames = ImageFrames.load(raw("dump_40x30_r270.y", 40 * 30));
+        assertEquals(1, frames.size());
+        final Frame frame = frames.get(0);
+        assertEquals(40, frame.getWidth());
+        assertEquals(30, frame.getHeight());
+        assertEquals(40, frame.getRowStride());
+        assertEquals(270, frame.getRotationDegrees());
+
+        assertEquals(0, ImageFrames.load(raw("dump_40x30.y", 40 * 30)).get(0).getRotationDegrees());
+    }
+
+    @Test
+    public void rejectsRawRotationsTheDecoderCannotRead() throws IOException {
+        for (String name : new String[]{"a_40x30_r45.y", "a_40x30_r360.y"}) {
+            try {
+                ImageFrames.load(raw(name, 40 * 30));
+                fail(name);
+            } catch (IOException expected) {
+                // The batch reports it as the file's error.
+            }
+        }
+    }
+
+    @Test(expected = IOException.class)
+    public void rejectsShortRawFiles() throws IOException {
+        ImageFrames.load(raw("a_40x30.y", 40 * 30 - 1));
+    }
+
+}
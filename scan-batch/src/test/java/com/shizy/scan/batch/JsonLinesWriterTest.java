@@ -0,0 +1,44 @@
+package com.shizy.scan.batch;
+
+import com.google.zxing.BarcodeFormat;
+import com.google.zxing.Result;
+
+import org.junit.Test;
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.PrintStream;
+import java.io.UnsupportedEncodingException;
+
+import static org.junit.Assert.assertEquals;
+
+public class JsonLinesWriterTest {
+
+    private static String write(BatchResult result) throws UnsupportedEncodingException {
+        final ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        new JsonLinesWriter(new PrintStream(bytes, true, "UTF-8")).onResult(result);
+        return bytes.toString("UTF-8").trim();
+    }
+
+    @Test
+    public void escapesText() throws UnsupportedEncodingException {
+        final Result result = new Result("a\"b\\c\nd\re\tf\u0001gé", null, null, BarcodeFormat.QR_CODE);
+        assertEquals("{\"file\":\"x.png\",\"frame\":0,\"decoded\":true,\"format\":\"QR_CODE\","
+                        + "\"text\":\"a\\\"b\\\\c\\nd\\re\\tf\\u0001gé\",\"scale\":2,"
+                        + "\"loadMicros\":3,\"decodeMicros\":4}",
+                write(new BatchResult(new File("x.png"), 0, result, 2, null, 3000, 4999)));
+    }
+
+    @Test
+    public void writesUndecodedFrames() throws UnsupportedEncodingException {
+        assertEquals("{\"file\":\"y.csfr\",\"frame\":7,\"decoded\":false,\"loadMicros\":0,\"decodeMicros\":12}",
+                write(new BatchResult(new File("y.csfr"), 7, null, 1, null, 0, 12000)));
+    }
+
+    @Test
+    public void writesErrors() throws UnsupportedEncodingException {
+        assertEquals("{\"file\":\"z.y\",\"frame\":-1,\"error\":\"Too \\\"short\\\"\",\"loadMicros\":1,\"decodeMicros\":0}",
+                write(new BatchResult(new File("z.y"), -1, null, 1, "Too \"short\"", 1000, 0)));
+    }
+
+}
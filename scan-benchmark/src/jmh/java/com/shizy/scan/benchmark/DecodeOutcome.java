@@ -0,0 +1,36 @@
+package com.shizy.scan.benchmark;
+
+import com.google.zxing.Result;
+
+import org.openjdk.jmh.annotations.AuxCounters;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+/**
+ * Counts decoded and missed frames, reported next to the timing of each benchmark.
+ */
+@State(Scope.Thread)
+@AuxCounters(AuxCounters.Type.EVENTS)
+public class DecodeOutcome {
+
+    public long decoded;
+    public long missed;
+
+    @Setup(Level.Iteration)
+    public void reset() {
+        decoded = 0;
+        missed = 0;
+    }
+
+    Result record(Result result) {
+        if (result != null) {
+            decoded++;
+        } else {
+            missed++;
+        }
+        return result;
+    }
+
+}
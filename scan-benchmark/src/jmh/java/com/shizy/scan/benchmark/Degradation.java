@@ -0,0 +1,20 @@
+package com.shizy.scan.benchmark;
+
+/**
+ * What makes a synthetic frame harder to decode.
+ */
+public enum Degradation {
+
+    NONE,
+
+    /**
+     * Box blur with a radius of two pixels, like a slightly defocused lens.
+     */
+    BLUR,
+
+    /**
+     * Dark and light modules only 40 levels apart.
+     */
+    LOW_CONTRAST
+
+}
@@ -0,0 +1,234 @@
+package com.shizy.scan.benchmark;
+
+import com.google.zxing.BarcodeFormat;
+import com.google.zxing.MultiFormatWriter;
+import com.google.zxing.WriterException;
+import com.google.zxing.common.BitMatrix;
+import com.shizy.scan.core.Frame;
+import com.shizy.scan.core.FrameRecorder;
+import com.shizy.scan.core.FrameSequence;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * Frames to feed through the decoder: synthetic ones rendered with the ZXing writers, and frames
+ * recorded on devices.
+ */
+final class FrameCorpus {
+
+    /**
+     * System property naming a directory of recorded frames.
+     */
+    static final String CORPUS_PROPERTY = "scan.corpus";
+
+    /**
+     * Devices usually pad rows, so synthetic frames are padded too.
+     */
+    private static final int ROW_PADDING = 32;
+
+    private static final Pattern RAW_FRAME_NAME = Pattern.compile(".*_(\\d+)x(\\d+)(?:_r(\\d+))?\\.(?:y|yuv)");
+
+    private FrameCorpus() {
+    }
+
+    /**
+     * Renders {@code count} frames, each holding a different code at a slightly different place.
+     *
+     * @param size     "WIDTHxHEIGHT" of the frame in sensor orientation
+     * @param rotation clockwise rotation which makes the frame upright; the code is drawn upright
+     */
+    static Frame[] synthetic(BarcodeFormat format, String size, int rotation, Degradation degradation, int count) {
+        final String[] dimensions = size.split("x");
+        final int width = Integer.parseInt(dimensions[0]);
+        final int height = Integer.parseInt(dimensions[1]);
+        final Frame[] frames = new Frame[count];
+        for (int i = 0; i < count; i++) {
+            frames[i] = render(encode(format, i), width, height, rotation, degradation, i);
+        }
+        return frames;
+    }
+
+    /**
+     * Loads the recorded frames in the {@value #CORPUS_PROPERTY} directory: every frame of each
+     * {@code .csfr} sequence file written by {@link FrameRecorder}, plus raw dumps named
+     * {@code <name>_<width>x<height>[_r<rotation>].yuv}. Raw dumps start with the Y plane, which is
+     * all that is read, so both NV21 and I420 work.
+     */
+    static List<Frame> recorded() throws IOException {
+        final List<Frame> frames = new ArrayList<>();
+        final String directory = System.getProperty(CORPUS_PROPERTY);
+        if (directory == null) {
+            return frames;
+        }
+        final File[] files = new File(directory).listFiles();
+        if (files == null) {
+            throw new IOException("Not a directory: " + directory);
+        }
+        Arrays.sort(files);
+        for (File file : files) {
+            if (file.getName().endsWith(".csfr")) {
+                // The mapping outlives the file handle, so the frames stay readable after closing.
+                try (FrameSequence sequence = new FrameSequence(file)) {
+                    for (int i = 0; i < sequence.size(); i++) {
+                        frames.add(sequence.get(i));
+                    }
+                }
+                continue;
+            }
+            final Matcher matcher = RAW_FRAME_NAME.matcher(file.getName());
+            if (!matcher.matches()) {
+                continue;
+            }
+            final int width = Integer.parseInt(matcher.group(1));
+            final int height = Integer.parseInt(matcher.group(2));
+            final int rotation = matcher.group(3) != null ? Integer.parseInt(matcher.group(3)) : 0;
+            final byte[] data = Files.readAllBytes(file.toPath());
+            if (data.length < width * height) {
+                throw new IOException("Too short for " + width + "x" + height + ": " + file);
+            }
+            frames.add(new Frame(ByteBuffer.wrap(data), width, height, width, 1, rotation, 0L));
+        }
+        return frames;
+    }
+
+    private static BitMatrix encode(BarcodeFormat format, int index) {
+        final String contents;
+        switch (format) {
+            case QR_CODE:
+                contents = "https://example.com/item/" + (100000 + index * 7919);
+                break;
+            case EAN_13:
+                contents = withEanChecksum(String.valueOf(590123412300L + index * 37L));
+                break;
+            default:
+                contents = "PALLET-" + (10000 + index * 131);
+                break;
+        }
+        try {
+            return new MultiFormatWriter().encode(contents, format, 0, 0);
+        } catch (WriterException e) {
+            throw new IllegalArgumentException(e);
+        }
+    }
+
+    private static String withEanChecksum(String digits) {
+        int sum = 0;
+        for (int i = 0; i < digits.length(); i++) {
+            final int digit = digits.charAt(i) - '0';
+            sum += (i % 2 == 0) ? digit : digit * 3;
+        }
+        return digits + (10 - sum % 10) % 10;
+    }
+
+    private static Frame render(BitMatrix code,
+                                int width,
+                                int height,
+                                int rotation,
+                                Degradation degradation,
+                                int index) {
+        final boolean swap = rotation == 90 || rotation == 270;
+        final int uprightWidth = swap ? height : width;
+        final int uprightHeight = swap ? width : height;
+        final boolean linear = code.getHeight() == 1;
+
+        // 2D codes fill half of the short side, 1D codes most of the width and a third as much height.
+        final int box = linear ? uprightWidth * 4 / 5 : Math.min(uprightWidth, uprightHeight) / 2;
+        final int module = Math.max(1, box / code.getWidth());
+        final int codeWidth = module * code.getWidth();
+        final int codeHeight = linear ? codeWidth / 3 : module * code.getHeight();
+        final int shift = (index * 7) % 21 - 10;
+        final int codeLeft = (uprightWidth - codeWidth) / 2 + shift;
+        final int codeTop = (uprightHeight - codeHeight) / 2 - shift;
+
+        final int dark = degradation == Degradation.LOW_CONTRAST ? 110 : 30;
+        final int light = degradation == Degradation.LOW_CONTRAST ? 150 : 215;
+
+        final byte[] upright = new byte[uprightWidth * uprightHeight];
+        for (int v = 0; v < uprightHeight; v++) {
+            // A soft vertical gradient, like uneven lighting
+            final int background = light - 20 * v / uprightHeight;
+            for (int u = 0; u < uprightWidth; u++) {
+                int value = background;
+                final int cu = u - codeLeft;
+                final int cv = v - codeTop;
+                if (cu >= 0 && cv >= 0 && cu < codeWidth && cv < codeHeight) {
+                    final int mx = cu / module;
+                    final int my = linear ? 0 : cv / module;
+                    value = code.get(mx, my) ? dark : light;
+                }
+                upright[v * uprightWidth + u] = (byte) value;
+            }
+        }
+        if (degradation == Degradation.BLUR) {
+            boxBlur(upright, uprightWidth, uprightHeight, 2);
+        }
+
+        // Store in sensor orientation, i.e. rotated back by the display rotation.
+        final int rowStride = width + ROW_PADDING;
+        final ByteBuffer buffer = ByteBuffer.allocateDirect(rowStride * height);
+        for (int y = 0; y < height; y++) {
+            for (int x = 0; x < width; x++) {
+                final int u;
+                final int v;
+                switch (rotation) {
+                    case 90:
+                        u = height - 1 - y;
+                        v = x;
+                        break;
+                    case 180:
+                        u = width - 1 - x;
+                        v = height - 1 - y;
+                        break;
+                    case 270:
+                        u = y;
+                        v = width - 1 - x;
+                        break;
+                    default:
+                        u = x;
+                        v = y;
+                        break;
+                }
+                buffer.put(y * rowStride + x, upright[v * uprightWidth + u]);
+            }
+        }
+        return new Frame(buffer, width, height, rowStride, 1, rotation, index);
+    }
+
+    private static void boxBlur(byte[] pixels, int width, int height, int radius) {
+        final int[] line = new int[Math.max(width, height)];
+        final int span = radius * 2 + 1;
+        for (int y = 0; y < height; y++) {
+            for (int x = 0; x < width; x++) {
+                line[x] = pixels[y * width + x] & 0xff;
+            }
+            for (int x = 0; x < width; x++) {
+                int sum = 0;
+                for (int k = -radius; k <= radius; k++) {
+                    sum += line[Math.min(width - 1, Math.max(0, x + k))];
+                }
+                pixels[y * width + x] = (byte) (sum / span);
+            }
+        }
+        for (int x = 0; x < width; x++) {
+            for (int y = 0; y < height; y++) {
+                line[y] = pixels[y * width + x] & 0xff;
+            }
+            for (int y = 0; y < height; y++) {
+                int sum = 0;
+                for (int k = -radius; k <= radius; k++) {
+                    sum += line[Math.min(height - 1, Math.max(0, y + k))];
+                }
+                pixels[y * width + x] = (byte) (sum / span);
+            }
+        }
+    }
+
+}
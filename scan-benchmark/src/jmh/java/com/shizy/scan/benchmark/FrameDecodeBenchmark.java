@@ -0,0 +1,81 @@
+package com.shizy.scan.benchmark;
+
+import com.google.zxing.BarcodeFormat;
+import com.google.zxing.Result;
+import com.shizy.scan.core.DecodeConfig;
+import com.shizy.scan.core.Frame;
+import com.shizy.scan.core.FrameDecoder;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Time to decode one synthetic frame, for every combination of frame size, symbology, rotation and
+ * image degradation. {@code formats} compares decoding with every reader against decoding with
+ * only the reader for the symbology in the frame.
+ * <p>
+ * Run with {@code -prof gc} (the default in build.gradle) for the allocation rate; the success
+ * rate is {@code decoded / (decoded + missed)} from {@link DecodeOutcome}.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Thread)
+public class FrameDecodeBenchmark {
+
+    private static final int FRAMES_PER_CONFIGURATION = 8;
+
+    @Param({"640x480", "1280x720", "1920x1080"})
+    public String size;
+
+    @Param({"QR_CODE", "EAN_13", "CODE_128"})
+    public BarcodeFormat format;
+
+    @Param({"0", "90"})
+    public int rotation;
+
+    @Param({"NONE", "BLUR", "LOW_CONTRAST"})
+    public Degradation degradation;
+
+    @Param({"ALL", "SINGLE"})
+    public String formats;
+
+    @Param({"false", "true"})
+    public boolean pyramid;
+
+    private Frame[] frames;
+    private FrameDecoder decoder;
+    private int next;
+
+    @Setup
+    public void setUp() {
+        frames = FrameCorpus.synthetic(format, size, rotation, degradation, FRAMES_PER_CONFIGURATION);
+        final DecodeConfig.Builder config = new DecodeConfig.Builder();
+        if ("SINGLE".equals(formats)) {
+            config.setFormats(format);
+        }
+        config.setPyramid(pyramid);
+        decoder = new FrameDecoder(config.build());
+    }
+
+    @Benchmark
+    public Result decode(DecodeOutcome outcome) {
+        final Frame frame = frames[next];
+        next = (next + 1) % frames.length;
+        return outcome.record(decoder.decode(frame));
+    }
+
+}
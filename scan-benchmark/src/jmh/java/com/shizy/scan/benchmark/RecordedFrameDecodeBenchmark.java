@@ -0,0 +1,60 @@
+package com.shizy.scan.benchmark;
+
+import com.google.zxing.Result;
+import com.shizy.scan.core.DecodeConfig;
+import com.shizy.scan.core.Frame;
+import com.shizy.scan.core.FrameDecoder;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.io.IOException;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Time to decode one recorded frame, cycling through the corpus named by the
+ * {@value FrameCorpus#CORPUS_PROPERTY} system property.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Thread)
+public class RecordedFrameDecodeBenchmark {
+
+    @Param({"false", "true"})
+    public boolean tryHarder;
+
+    private Frame[] frames;
+    private FrameDecoder decoder;
+    private int next;
+
+    @Setup
+    public void setUp() throws IOException {
+        final List<Frame> recorded = FrameCorpus.recorded();
+        if (recorded.isEmpty()) {
+            throw new IllegalStateException("No recorded frames, set -D" + FrameCorpus.CORPUS_PROPERTY);
+        }
+        frames = recorded.toArray(new Frame[0]);
+        decoder = new FrameDecoder(new DecodeConfig.Builder().setTryHarder(tryHarder).build());
+    }
+
+    @Benchmark
+    public Result decode(DecodeOutcome outcome) {
+        final Frame frame = frames[next];
+        next = (next + 1) % frames.length;
+        return outcome.record(decoder.decode(frame));
+    }
+
+}
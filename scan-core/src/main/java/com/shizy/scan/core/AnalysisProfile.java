@@ -0,0 +1,57 @@
+package com.shizy.scan.core;
+
+/**
+ * Camera analysis settings chosen by {@link AnalysisTuner}: the analysis image size, in sensor
+ * orientation, and the shortest time between two analyzed frames.
+ */
+public final class AnalysisProfile {
+
+    private final int width;
+    private final int height;
+    private final long frameIntervalMillis;
+
+    public AnalysisProfile(int width, int height, long frameIntervalMillis) {
+        this.width = width;
+        this.height = height;
+        this.frameIntervalMillis = frameIntervalMillis;
+    }
+
+    public int getWidth() {
+        return width;
+    }
+
+    public int getHeight() {
+        return height;
+    }
+
+    /**
+     * @return frames arriving sooner than this after the last analyzed one are skipped; 0 analyzes
+     * every frame
+     */
+    public long getFrameIntervalMillis() {
+        return frameIntervalMillis;
+    }
+
+    @Override
+    public boolean equals(Object o) {
+        if (this == o) {
+            return true;
+        }
+        if (!(o instanceof AnalysisProfile)) {
+            return false;
+        }
+        final AnalysisProfile other = (AnalysisProfile) o;
+        return width == other.width && height == other.height && frameIntervalMillis == other.frameIntervalMillis;
+    }
+
+    @Override
+    public int hashCode() {
+        return (width * 31 + height) * 31 + (int) frameIntervalMillis;
+    }
+
+    @Override
+    public String toString() {
+        return width + "x" + height + "@" + frameIntervalMillis + "ms";
+    }
+
+}
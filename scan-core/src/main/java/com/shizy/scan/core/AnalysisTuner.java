@@ -0,0 +1,181 @@
+package com.shizy.scan.core;
+
+import java.util.Arrays;
+
+/**
+ * Picks the analysis resolution and frame rate which keep decoding within a latency target,
+ * from the decode time and outcome of every analyzed frame.
+ * <p>
+ * Frames are judged in windows of {@value #WINDOW} by their 90th percentile decode time:
+ * <ul>
+ * <li>above the target, the resolution goes one step down the ladder; once at the bottom, frames
+ * are spaced out to twice the decode time, which at least keeps the CPU and battery in check;</li>
+ * <li>well under the target, a throttled interval is halved first; then, if few frames decode,
+ * the resolution goes one step up, since small or distant codes need the pixels.</li>
+ * </ul>
+ * The window right after a change is ignored, as it still holds frames of the old profile. A
+ * resolution which turned out too slow is not tried again for a while, so that the tuner does not
+ * keep bouncing between two steps.
+ * <p>
+ * The tuner only sees numbers, so it can be driven by a fake frame source as well as the camera.
+ * {@link #onFrame} may be called from any thread; the listener is called on that thread.
+ */
+public final class AnalysisTuner {
+
+    public interface Listener {
+
+        void onProfileChanged(AnalysisProfile profile);
+
+    }
+
+    /**
+     * 4:3 analysis sizes, in sensor orientation, cheapest first. 4:3 is what CameraX gives the
+     * preview by default, so the analysis image keeps showing the same field of view.
+     */
+    private static final int[][] RESOLUTIONS = {{640, 480}, {960, 720}, {1280, 960}, {1600, 1200}};
+
+    static final int WINDOW = 30;
+
+    private static final long MAX_FRAME_INTERVAL_MILLIS = 1000L;
+
+    /**
+     * Windows during which a resolution found too slow is not stepped up to again. The period
+     * doubles each time the same resolution proves too slow again, up to {@link #MAX_BLOCKED_WINDOWS}.
+     */
+    private static final int BLOCKED_WINDOWS = 20;
+    private static final int MAX_BLOCKED_WINDOWS = BLOCKED_WINDOWS * 16;
+
+    private static final float STEP_UP_SUCCESS_RATE = 0.5f;
+
+    private final long targetNanos;
+    private final Listener listener;
+
+    private final long[] latencies = new long[WINDOW];
+    private final long[] sorted = new long[WINDOW];
+    private int samples;
+    private int found;
+    private boolean settling;
+
+    private int level;
+    private long frameIntervalMillis;
+    private int blockedLevel = Integer.MAX_VALUE;
+    private int blockedWindows;
+    private int blockPeriod = BLOCKED_WINDOWS;
+    private int lastBlockedLevel = -1;
+
+    /**
+     * @param targetLatencyMillis decode time per frame to stay within, at the 90th percentile
+     * @param start               profile to start from, e.g. the one saved from an earlier run; its
+     *                            size is rounded to the nearest step of the ladder
+     */
+    public AnalysisTuner(long targetLatencyMillis, AnalysisProfile start, Listener listener) {
+        this.targetNanos = targetLatencyMillis * 1000000L;
+        this.listener = listener;
+        this.level = nearestLevel(start.getWidth() * start.getHeight());
+        this.frameIntervalMillis = Math.max(0, Math.min(MAX_FRAME_INTERVAL_MILLIS, start.getFrameIntervalMillis()));
+    }
+
+    /**
+     * The lowest step, every frame: the CameraX default, for a device seen for the first time.
+     */
+    public static AnalysisProfile defaultProfile() {
+        return new AnalysisProfile(RESOLUTIONS[0][0], RESOLUTIONS[0][1], 0);
+    }
+
+    private static int nearestLevel(int pixels) {
+        int best = 0;
+        for (int i = 1; i < RESOLUTIONS.length; i++) {
+            final int candidate = RESOLUTIONS[i][0] * RESOLUTIONS[i][1];
+            final int current = RESOLUTIONS[best][0] * RESOLUTIONS[best][1];
+            if (Math.abs(candidate - pixels) < Math.abs(current - pixels)) {
+                best = i;
+            }
+        }
+        return best;
+    }
+
+    public synchronized AnalysisProfile getProfile() {
+        return new AnalysisProfile(RESOLUTIONS[level][0], RESOLUTIONS[level][1], frameIntervalMillis);
+    }
+
+    /**
+     * @param decodeNanos time the frame took to decode, binarizing included
+     * @param decoded     whether a code was found
+     */
+    public void onFrame(long decodeNanos, boolean decoded) {
+        final AnalysisProfile changed;
+        synchronized (this) {
+            latencies[samples++] = decodeNanos;
+            if (decoded) {
+                found++;
+            }
+            if (samples < WINDOW) {
+                return;
+            }
+            changed = endWindow();
+            samples = 0;
+            found = 0;
+        }
+        if (changed != null && listener != null) {
+            listener.onProfileChanged(changed);
+        }
+    }
+
+    /**
+     * @return the new profile, or {@code null} if it stays the same
+     */
+    private AnalysisProfile endWindow() {
+        if (blockedWindows > 0 && --blockedWindows == 0) {
+            blockedLevel = Integer.MAX_VALUE;
+        }
+        if (settling) {
+            settling = false;
+            return null;
+        }
+
+        System.arraycopy(latencies, 0, sorted, 0, WINDOW);
+        Arrays.sort(sorted);
+        final long p90 = sorted[WINDOW * 9 / 10];
+        final float successRate = found / (float) WINDOW;
+
+        if (p90 > targetNanos) {
+            if (level > 0) {
+                if (level == lastBlockedLevel) {
+                    blockPeriod = Math.min(MAX_BLOCKED_WINDOWS, blockPeriod * 2);
+                } else {
+                    blockPeriod = BLOCKED_WINDOWS;
+                }
+                lastBlockedLevel = level;
+                blockedLevel = level;
+                blockedWindows = blockPeriod;
+                level--;
+            } else {
+                // Leave the CPU idle at least half the time.
+                final long interval = Math.min(MAX_FRAME_INTERVAL_MILLIS, p90 * 2 / 1000000L);
+                if (interval <= frameIntervalMillis) {
+                    return null;
+                }
+                frameIntervalMillis = interval;
+            }
+        } else if (p90 < targetNanos / 2) {
+            if (frameIntervalMillis > 0) {
+                frameIntervalMillis = frameIntervalMillis / 2 < 10 ? 0 : frameIntervalMillis / 2;
+            } else if (successRate < STEP_UP_SUCCESS_RATE && level + 1 < RESOLUTIONS.length
+                    && level + 1 < blockedLevel) {
+                level++;
+            } else {
+                return null;
+            }
+        } else {
+            return null;
+        }
+        settling = true;
+        return getProfile();
+    }
+
+    @Override
+    public synchronized String toString() {
+        return "AnalysisTuner{profile=" + getProfile() + ", targetMs=" + targetNanos / 1000000L + '}';
+    }
+
+}
@@ -0,0 +1,153 @@
+package com.shizy.scan.core;
+
+/**
+ * Remembers where codes were last seen, from the result points of decoded codes and the finder
+ * points of codes that were detected but not decoded, and predicts where to look in the next frame.
+ * <p>
+ * The predicted window is the bounding box of the last sighting, moved along by the recent motion
+ * and grown by a margin. {@link FrameDecoder#decode(Frame, CodeLocationTracker, int, int)} decodes
+ * that window first and only falls back to the whole frame when nothing is found in it. Every
+ * {@code fullFrameInterval}th prediction is withheld, so that codes appearing elsewhere are still
+ * picked up while a tracked code stays in view.
+ * <p>
+ * Coordinates are those of the full camera image. One tracker may be shared by all decoding threads.
+ */
+public final class CodeLocationTracker {
+
+    private final int maxMisses;
+    private final float marginRatio;
+    private final int minMargin;
+    private final int fullFrameInterval;
+
+    private boolean tracking;
+    private float left;
+    private float top;
+    private float right;
+    private float bottom;
+    private float velocityX;
+    private float velocityY;
+    private int misses;
+    private int predictions;
+
+    private long windowHits;
+    private long windowMisses;
+    private long fullFrameDecodes;
+
+    /**
+     * Forgets a location after 5 frames without a sighting, grows the window by half the code's
+     * size and decodes the full frame at least every 8th frame.
+     */
+    public CodeLocationTracker() {
+        this(5, 0.5f, 24, 8);
+    }
+
+    /**
+     * @param maxMisses         consecutive frames without any sighting after which the location is
+     *                          forgotten
+     * @param marginRatio       margin added on each side of the window, relative to its larger side
+     * @param minMargin         smallest margin, in pixels
+     * @param fullFrameInterval every this many predictions the full frame is decoded instead
+     */
+    public CodeLocationTracker(int maxMisses, float marginRatio, int minMargin, int fullFrameInterval) {
+        this.maxMisses = maxMisses;
+        this.marginRatio = marginRatio;
+        this.minMargin = minMargin;
+        this.fullFrameInterval = fullFrameInterval;
+    }
+
+    /**
+     * @param window receives left, top, right and bottom of the predicted search window
+     * @return whether there is a window to try first
+     */
+    synchronized boolean predict(int[] window) {
+        if (!tracking || ++predictions % fullFrameInterval == 0) {
+            return false;
+        }
+        final float margin = Math.max(minMargin, Math.max(right - left, bottom - top) * marginRatio);
+        window[0] = (int) (left + velocityX - margin);
+        window[1] = (int) (top + velocityY - margin);
+        window[2] = (int) Math.ceil(right + velocityX + margin);
+        window[3] = (int) Math.ceil(bottom + velocityY + margin);
+        return true;
+    }
+
+    /**
+     * Records a sighting with the given bounds.
+     */
+    synchronized void found(float left, float top, float right, float bottom) {
+        if (tracking) {
+            // Smooth the motion of the centre, finder points and result points jitter a little.
+            final float dx = (left + right - this.left - this.right) / 2;
+            final float dy = (top + bottom - this.top - this.bottom) / 2;
+            velocityX = (velocityX + dx) / 2;
+            velocityY = (velocityY + dy) / 2;
+        } else {
+            velocityX = 0;
+            velocityY = 0;
+        }
+        this.left = left;
+        this.top = top;
+        this.right = right;
+        this.bottom = bottom;
+        tracking = true;
+        misses = 0;
+    }
+
+    synchronized void missed() {
+        if (tracking && ++misses >= maxMisses) {
+            tracking = false;
+        }
+    }
+
+    synchronized void countDecode(boolean inWindow, boolean found) {
+        if (!inWindow) {
+            fullFrameDecodes++;
+        } else if (found) {
+            windowHits++;
+        } else {
+            windowMisses++;
+        }
+    }
+
+    public synchronized boolean isTracking() {
+        return tracking;
+    }
+
+    /**
+     * Forgets the location, but not the counters.
+     */
+    public synchronized void reset() {
+        tracking = false;
+        misses = 0;
+    }
+
+    /**
+     * @return frames decoded from the predicted window alone
+     */
+    public synchronized long getWindowHits() {
+        return windowHits;
+    }
+
+    /**
+     * @return frames where the window decoded nothing and the full frame was tried too
+     */
+    public synchronized long getWindowMisses() {
+        return windowMisses;
+    }
+
+    /**
+     * @return frames decoded in full without trying a window first
+     */
+    public synchronized long getFullFrameDecodes() {
+        return fullFrameDecodes;
+    }
+
+    @Override
+    public synchronized String toString() {
+        return "CodeLocationTracker{tracking=" + tracking
+                + ", windowHits=" + windowHits
+                + ", windowMisses=" + windowMisses
+                + ", fullFrameDecodes=" + fullFrameDecodes + '}';
+    }
+
+}
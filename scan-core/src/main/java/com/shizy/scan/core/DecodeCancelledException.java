@@ -0,0 +1,22 @@
+package com.shizy.scan.core;
+
+/**
+ * Unwinds a decode through ZXing once its {@link DecodeToken} is cancelled. Readers only catch
+ * {@code ReaderException}, so this passes straight through them back to {@link FrameDecoder}.
+ * Like ZXing's own exceptions it is a singleton without a stack trace, as throwing it is routine.
+ */
+final class DecodeCancelledException extends RuntimeException {
+
+    private static final long serialVersionUID = 1L;
+
+    static final DecodeCancelledException INSTANCE = new DecodeCancelledException();
+
+    private DecodeCancelledException() {
+    }
+
+    @Override
+    public synchronized Throwable fillInStackTrace() {
+        return this;
+    }
+
+}
@@ -0,0 +1,166 @@
+package com.shizy.scan.core;
+
+import com.google.zxing.BarcodeFormat;
+import com.google.zxing.DecodeHintType;
+
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.EnumMap;
+import java.util.EnumSet;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Which barcodes to look for and how hard to try. Immutable, build one with {@link Builder}.
+ */
+public final class DecodeConfig {
+
+    /**
+     * All formats, default effort.
+     */
+    public static final DecodeConfig DEFAULT = new Builder().build();
+
+    private final Set<BarcodeFormat> formats;
+    private final boolean tryHarder;
+    private final String characterSet;
+    private final boolean alsoInverted;
+    private final boolean pyramid;
+
+    private DecodeConfig(Builder builder) {
+        this.formats = Collections.unmodifiableSet(builder.formats.isEmpty()
+                ? EnumSet.noneOf(BarcodeFormat.class) : EnumSet.copyOf(builder.formats));
+        this.tryHarder = builder.tryHarder;
+        this.characterSet = builder.characterSet;
+        this.alsoInverted = builder.alsoInverted;
+        this.pyramid = builder.pyramid;
+    }
+
+    /**
+     * @return the formats to decode; empty means every format ZXing supports
+     */
+    public Set<BarcodeFormat> getFormats() {
+        return formats;
+    }
+
+    public boolean isTryHarder() {
+        return tryHarder;
+    }
+
+    public String getCharacterSet() {
+        return characterSet;
+    }
+
+    /**
+     * @return whether a frame that does not decode is tried again with its luminance inverted,
+     * for light codes printed on a dark background
+     */
+    public boolean isAlsoInverted() {
+        return alsoInverted;
+    }
+
+    /**
+     * @return whether frames are first decoded at a quarter and half resolution, and at full
+     * resolution only when that fails
+     */
+    public boolean isPyramid() {
+        return pyramid;
+    }
+
+    /**
+     * @return the ZXing hints for this configuration, or {@code null} if there are none
+     */
+    Map<DecodeHintType, Object> toHints() {
+        Map<DecodeHintType, Object> hints = new EnumMap<>(DecodeHintType.class);
+        if (!formats.isEmpty()) {
+            hints.put(DecodeHintType.POSSIBLE_FORMATS, formats);
+        }
+        if (tryHarder) {
+            hints.put(DecodeHintType.TRY_HARDER, Boolean.TRUE);
+        }
+        if (characterSet != null) {
+            hints.put(DecodeHintType.CHARACTER_SET, characterSet);
+        }
+        return hints.isEmpty() ? null : hints;
+    }
+
+    @Override
+    public String toString() {
+        return "DecodeConfig{formats=" + (formats.isEmpty() ? "ALL" : formats)
+                + ", tryHarder=" + tryHarder
+                + ", characterSet=" + characterSet
+                + ", alsoInverted=" + alsoInverted
+                + ", pyramid=" + pyramid + '}';
+    }
+
+    public static final class Builder {
+
+        private final Set<BarcodeFormat> formats = EnumSet.noneOf(BarcodeFormat.class);
+        private boolean tryHarder;
+        private String characterSet;
+        private boolean alsoInverted;
+        private boolean pyramid;
+
+        public Builder() {
+        }
+
+        public Builder(DecodeConfig config) {
+            formats.addAll(config.formats);
+            tryHarder = config.tryHarder;
+            characterSet = config.characterSet;
+            alsoInverted = config.alsoInverted;
+            pyramid = config.pyramid;
+        }
+
+        /**
+         * Restricts decoding to the given formats. With no formats, everything is decoded.
+         */
+        public Builder setFormats(BarcodeFormat... formats) {
+            return setFormats(Arrays.asList(formats));
+        }
+
+        public Builder setFormats(Collection<BarcodeFormat> formats) {
+            this.formats.clear();
+            this.formats.addAll(formats);
+            return this;
+        }
+
+        /**
+         * Spend more time looking for a barcode, see {@link DecodeHintType#TRY_HARDER}.
+         */
+        public Builder setTryHarder(boolean tryHarder) {
+            this.tryHarder = tryHarder;
+            return this;
+        }
+
+        /**
+         * Character set to use for byte segments when the code does not say, see
+         * {@link DecodeHintType#CHARACTER_SET}.
+         */
+        public Builder setCharacterSet(String characterSet) {
+            this.characterSet = characterSet;
+            return this;
+        }
+
+        public Builder setAlsoInverted(boolean alsoInverted) {
+            this.alsoInverted = alsoInverted;
+            return this;
+        }
+
+        /**
+         * Decode downsampled copies of the frame before the frame itself. Codes which fill much of
+         * the frame decode several times faster, small ones take a little longer. Applies to
+         * single-code decoding.
+         */
+        public Builder setPyramid(boolean pyramid) {
+            this.pyramid = pyramid;
+            return this;
+        }
+
+        public DecodeConfig build() {
+            return new DecodeConfig(this);
+        }
+
+    }
+
+}
@@ -0,0 +1,165 @@
+package com.shizy.scan.core;
+
+import com.google.zxing.BinaryBitmap;
+import com.google.zxing.LuminanceSource;
+import com.google.zxing.common.BitMatrix;
+
+import java.nio.ByteBuffer;
+
+/**
+ * Scratch buffers which are recycled from one frame to the next, so that binarizing a frame does
+ * not allocate as long as the frame size stays the same.
+ * <p>
+ * A context must only ever be used by one thread, and a {@link BinaryBitmap} created from it is
+ * only valid until the next one is created.
+ */
+final class DecodeContext {
+
+    static final int LUMINANCE_BUCKETS = 32;
+
+    private byte[] luminances = new byte[0];
+    private byte[] rowLuminances = new byte[0];
+    private final int[] buckets = new int[LUMINANCE_BUCKETS];
+    private int[][] blackPoints = new int[0][0];
+    private BitMatrix matrix;
+    private ByteBuffer downsampled = ByteBuffer.allocate(0);
+    private int[] rowSums = new int[0];
+
+    /**
+     * Time spent in the binarizers created from this context, see {@link FrameDecoder#takeBinarizeNanos()}.
+     */
+    long binarizeNanos;
+
+    /**
+     * Polled by the binarizers, see {@link FrameDecoder#setDecodeToken}.
+     */
+    DecodeToken token;
+
+    /**
+     * @throws DecodeCancelledException if the current decode should stop
+     */
+    void checkCancelled() {
+        final DecodeToken token = this.token;
+        if (token != null && token.isCancelled()) {
+            throw DecodeCancelledException.INSTANCE;
+        }
+    }
+
+    BinaryBitmap newBinaryBitmap(LuminanceSource source) {
+        return new BinaryBitmap(new PooledHybridBinarizer(source, this));
+    }
+
+    BinaryBitmap newGlobalHistogramBitmap(LuminanceSource source) {
+        return new BinaryBitmap(new PooledGlobalHistogramBinarizer(source, this));
+    }
+
+    /**
+     * Shrinks the crop region of {@code frame} by averaging {@code scale} x {@code scale} blocks,
+     * into a recycled buffer. Edge pixels which do not fill a whole block are left out. The source
+     * keeps the frame's rotation.
+     */
+    YPlaneLuminanceSource downsample(Frame frame, int scale) {
+        final int width = frame.getCropWidth() / scale;
+        final int height = frame.getCropHeight() / scale;
+        if (downsampled.capacity() < width * height) {
+            downsampled = ByteBuffer.allocate(width * height);
+        }
+        if (rowSums.length < width) {
+            rowSums = new int[width];
+        }
+        final byte[] out = downsampled.array();
+        final int[] sums = rowSums;
+        final ByteBuffer buffer = frame.getBuffer().duplicate();
+        final int rowStride = frame.getRowStride();
+        final int pixelStride = frame.getPixelStride();
+        final int rowWidth = width * scale;
+        final byte[] row = rowLuminances(rowWidth);
+        final int shift = Integer.numberOfTrailingZeros(scale) * 2;
+        for (int y = 0; y < height; y++) {
+            for (int x = 0; x < width; x++) {
+                sums[x] = 0;
+            }
+            for (int dy = 0; dy < scale; dy++) {
+                final int offset = (frame.getCropTop() + y * scale + dy) * rowStride + frame.getCropLeft() * pixelStride;
+                if (pixelStride == 1) {
+                    buffer.position(offset);
+                    buffer.get(row, 0, rowWidth);
+                } else {
+                    for (int x = 0; x < rowWidth; x++) {
+                        row[x] = buffer.get(offset + x * pixelStride);
+                    }
+                }
+                for (int x = 0, i = 0; x < width; x++) {
+                    int sum = 0;
+                    for (int dx = 0; dx < scale; dx++) {
+                        sum += row[i++] & 0xff;
+                    }
+                    sums[x] += sum;
+                }
+            }
+            final int outputOffset = y * width;
+            for (int x = 0; x < width; x++) {
+                out[outputOffset + x] = (byte) (sums[x] >> shift);
+            }
+        }
+        return new YPlaneLuminanceSource(downsampled, width, height, width, 1, 0, 0, width, height,
+                frame.getRotationDegrees());
+    }
+
+    /**
+     * @return the luminance matrix of {@code source}: its own array if already tightly packed,
+     * otherwise copied into a recycled array when possible
+     */
+    byte[] luminances(LuminanceSource source) {
+        if (source instanceof YPlaneLuminanceSource) {
+            final byte[] tight = ((YPlaneLuminanceSource) source).tightArray();
+            if (tight != null) {
+                return tight;
+            }
+            final int size = source.getWidth() * source.getHeight();
+            if (luminances.length < size) {
+                luminances = new byte[size];
+            }
+            ((YPlaneLuminanceSource) source).copyMatrix(luminances);
+            return luminances;
+        }
+        return source.getMatrix();
+    }
+
+    byte[] rowLuminances(int width) {
+        if (rowLuminances.length < width) {
+            rowLuminances = new byte[width];
+        }
+        return rowLuminances;
+    }
+
+    /**
+     * @return the histogram buckets, all reset to zero
+     */
+    int[] buckets() {
+        for (int i = 0; i < LUMINANCE_BUCKETS; i++) {
+            buckets[i] = 0;
+        }
+        return buckets;
+    }
+
+    int[][] blackPoints(int subWidth, int subHeight) {
+        if (blackPoints.length < subHeight || blackPoints[0].length < subWidth) {
+            blackPoints = new int[subHeight][subWidth];
+        }
+        return blackPoints;
+    }
+
+    /**
+     * @return a cleared matrix of exactly the requested size
+     */
+    BitMatrix matrix(int width, int height) {
+        if (matrix == null || matrix.getWidth() != width || matrix.getHeight() != height) {
+            matrix = new BitMatrix(width, height);
+        } else {
+            matrix.clear();
+        }
+        return matrix;
+    }
+
+}
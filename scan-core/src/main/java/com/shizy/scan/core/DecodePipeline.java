@@ -0,0 +1,469 @@
+package com.shizy.scan.core;
+
+import com.google.zxing.Result;
+
+import java.io.Closeable;
+import java.nio.ByteBuffer;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingDeque;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.LinkedBlockingDeque;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * Decodes frames on several worker threads.
+ * <p>
+ * {@link #submit} copies the luminance of a frame into a recycled buffer and returns straight
+ * away, so the camera can have its image back before any decoding happens. Each worker owns its own
+ * {@link FrameDecoder}. Results are delivered newest first: once a frame has been decoded, results
+ * of older frames are discarded and older frames still waiting in the queue are skipped.
+ * <p>
+ * In multiple-code mode every code of every frame is delivered instead, as older frames may hold
+ * codes newer ones do not; de-duplication is then up to the caller, see {@link MultiCodeTracker}.
+ * <p>
+ * Frames still being decoded are abandoned too, through a {@link DecodeToken}, when a newer frame
+ * decodes first, when {@link #cancel} is called or when they run out of their time budget.
+ * <p>
+ * A frame whose decode throws is logged and counted in {@link DecodeStats#getFramesFailed()}, and
+ * the worker goes on with the next one; so is a callback which throws, in
+ * {@link DecodeStats#getCallbackFailures()}.
+ */
+public final class DecodePipeline implements Closeable {
+
+    public interface Callback {
+
+        /**
+         * Called on a worker thread, outside of any pipeline lock, so possibly from several workers
+         * at once. In single-code mode a frame is only delivered if no newer frame was before it,
+         * although two deliveries may still overlap.
+         *
+         * @param results             the codes of one frame, a single one unless in multiple-code
+         *                            mode. Result points are in full frame coordinates.
+         * @param scale               {@link FrameDecoder#getResultScale()} for the frame
+         * @param frameTimestampNanos {@link Frame#getTimestampNanos()} of the frame
+         * @param decodeStartNanos    {@link System#nanoTime()} when a worker started on the frame
+         * @param decodeEndNanos      {@link System#nanoTime()} when it finished
+         */
+        void onDecoded(Result[] results, int scale, long frameTimestampNanos, long decodeStartNanos,
+                       long decodeEndNanos);
+
+    }
+
+    private static final Logger LOG = Logger.getLogger(DecodePipeline.class.getName());
+
+    private static final class PendingFrame {
+        byte[] data = new byte[0];
+        int width;
+        int height;
+        int offsetX;
+        int offsetY;
+        long sequence;
+        int epoch;
+        long timestamp;
+        int rotationDegrees;
+    }
+
+    /**
+     * Moves the points of a worker's current frame back into the coordinates of the submitted
+     * frames.
+     */
+    private final class WorkerPointListener implements FrameDecoder.PointListener {
+
+        private int offsetX;
+        private int offsetY;
+
+        @Override
+        public void onPoint(float x, float y) {
+            final FrameDecoder.PointListener listener = pointListener;
+            if (listener != null) {
+                listener.onPoint(x + offsetX, y + offsetY);
+            }
+        }
+
+    }
+
+    /**
+     * One per worker, re-armed for every frame it decodes.
+     */
+    private final class WorkerToken implements DecodeToken {
+
+        private PendingFrame frame;
+        private long deadlineNanos;
+        private boolean cancelled;
+        private boolean timedOut;
+
+        void arm(PendingFrame frame, long budgetNanos) {
+            this.frame = frame;
+            this.deadlineNanos = budgetNanos > 0 ? System.nanoTime() + budgetNanos : Long.MAX_VALUE;
+            this.cancelled = false;
+            this.timedOut = false;
+        }
+
+        @Override
+        public boolean isCancelled() {
+            if (isStale(frame)) {
+                cancelled = true;
+            } else if (System.nanoTime() > deadlineNanos) {
+                timedOut = true;
+            }
+            return cancelled || timedOut;
+        }
+
+    }
+
+    private final int workerCount;
+    private final Callback callback;
+    private final BlockingQueue<PendingFrame> freeFrames;
+    private final BlockingDeque<PendingFrame> queuedFrames;
+    private final Thread[] workers;
+
+    private final AtomicLong framesReceived = new AtomicLong();
+    private final AtomicLong framesDropped = new AtomicLong();
+    private final AtomicLong framesCancelled = new AtomicLong();
+    private final AtomicLong framesDecoded = new AtomicLong();
+    private final AtomicLong resultsDelivered = new AtomicLong();
+    private final AtomicLong framesFailed = new AtomicLong();
+    private final AtomicLong callbackFailures = new AtomicLong();
+    private final long startNanos = System.nanoTime();
+
+    private long nextSequence;
+    private long lastDeliveredSequence = -1;
+    private volatile long cancelBeforeSequence = -1;
+    private final AtomicInteger cancelEpoch = new AtomicInteger();
+    private volatile long decodeBudgetNanos;
+    private volatile boolean closed;
+    private volatile DecodeConfig decodeConfig;
+    private volatile StrategyScheduler strategyScheduler;
+    private volatile CodeLocationTracker locationTracker;
+    private volatile ScanMetrics metrics;
+    private volatile AnalysisTuner tuner;
+    private volatile FrameDecoder.PointListener pointListener;
+    private volatile boolean multipleCodes;
+
+    public DecodePipeline(int workerCount, DecodeConfig decodeConfig, Callback callback) {
+        if (workerCount < 1) {
+            throw new IllegalArgumentException("workerCount must be at least 1");
+        }
+        this.workerCount = workerCount;
+        this.callback = callback;
+        this.decodeConfig = decodeConfig;
+
+        // One frame per worker in flight, one per worker waiting and one being copied.
+        final int frameCount = workerCount * 2 + 1;
+        freeFrames = new ArrayBlockingQueue<>(frameCount);
+        for (int i = 0; i < frameCount; i++) {
+            freeFrames.add(new PendingFrame());
+        }
+        queuedFrames = new LinkedBlockingDeque<>(workerCount);
+
+        workers = new Thread[workerCount];
+        for (int i = 0; i < workerCount; i++) {
+            workers[i] = new Thread(this::runWorker, "decode-worker-" + i);
+            workers[i].start();
+        }
+    }
+
+    /**
+     * Each worker picks up the new configuration before its next frame.
+     */
+    public void setDecodeConfig(DecodeConfig decodeConfig) {
+        this.decodeConfig = decodeConfig;
+    }
+
+    /**
+     * Lets {@code scheduler} pick the decode strategies of each frame, shared by all workers. Pass
+     * {@code null} for the fixed sequence. Each worker picks it up before its next frame.
+     */
+    public void setStrategyScheduler(StrategyScheduler scheduler) {
+        this.strategyScheduler = scheduler;
+    }
+
+    /**
+     * Lets {@code tracker} direct each frame's decode to where codes were last seen, in the
+     * coordinates of the frames passed to {@link #submit}. Pass {@code null} to always decode the
+     * whole crop region.
+     */
+    public void setLocationTracker(CodeLocationTracker tracker) {
+        this.locationTracker = tracker;
+    }
+
+    /**
+     * Records copy, binarize and decode latency and dropped frames into {@code metrics}, or nothing
+     * if {@code null}.
+     */
+    public void setMetrics(ScanMetrics metrics) {
+        this.metrics = metrics;
+    }
+
+    /**
+     * Reports the decode time and outcome of every frame to {@code tuner}, or to nobody if
+     * {@code null}.
+     */
+    public void setAnalysisTuner(AnalysisTuner tuner) {
+        this.tuner = tuner;
+    }
+
+    /**
+     * Gives up on any frame which has not decoded within {@code budgetMillis}, 0 for no limit.
+     * Bounds the time a single hard frame can keep a worker busy, e.g. with {@code TRY_HARDER}.
+     */
+    public void setDecodeBudget(long budgetMillis) {
+        this.decodeBudgetNanos = budgetMillis * 1000000L;
+    }
+
+    /**
+     * Abandons every frame submitted so far, whether still queued or being decoded, e.g. when
+     * scanning stops. Frames submitted afterwards are decoded as usual. May be called from any
+     * thread.
+     */
+    public void cancel() {
+        cancelEpoch.incrementAndGet();
+    }
+
+    /**
+     * @return whether {@code frame} was submitted before the last {@link #cancel}, or is older
+     * than a frame which already decoded
+     */
+    private boolean isStale(PendingFrame frame) {
+        return frame.sequence < cancelBeforeSequence || frame.epoch != cancelEpoch.get() || closed;
+    }
+
+    /**
+     * Reports the points detected in each frame to {@code listener}, in the coordinates of the
+     * frames passed to {@link #submit}, on the worker threads. Pass {@code null} to stop.
+     */
+    public void setPointListener(FrameDecoder.PointListener listener) {
+        this.pointListener = listener;
+    }
+
+    /**
+     * Switches between decoding the first code of each frame and decoding all of them.
+     */
+    public void setMultipleCodes(boolean multipleCodes) {
+        this.multipleCodes = multipleCodes;
+    }
+
+    /**
+     * Copies the crop region of {@code source} and queues it for decoding. The source frame is not
+     * referenced after this returns. Must be called from a single thread.
+     */
+    public void submit(Frame source) {
+        final ScanMetrics metrics = this.metrics;
+        framesReceived.incrementAndGet();
+        final PendingFrame frame = freeFrames.poll();
+        if (frame == null || closed) {
+            framesDropped.incrementAndGet();
+            if (metrics != null) {
+                metrics.frameDropped();
+            }
+            return;
+        }
+
+        final long copyStart = System.nanoTime();
+        copyLuminance(source, frame);
+        if (metrics != null) {
+            metrics.record(ScanStage.COPY, System.nanoTime() - copyStart);
+        }
+        frame.sequence = nextSequence++;
+        frame.epoch = cancelEpoch.get();
+        frame.timestamp = source.getTimestampNanos();
+        frame.rotationDegrees = source.getRotationDegrees();
+
+        // Prefer fresh frames: if every worker is busy, make room by dropping the oldest waiting one.
+        while (!queuedFrames.offerLast(frame)) {
+            final PendingFrame oldest = queuedFrames.pollFirst();
+            if (oldest != null) {
+                framesDropped.incrementAndGet();
+                if (metrics != null) {
+                    metrics.frameDropped();
+                }
+                freeFrames.offer(oldest);
+            }
+        }
+    }
+
+    private static void copyLuminance(Frame source, PendingFrame frame) {
+        final int width = source.getCropWidth();
+        final int height = source.getCropHeight();
+        if (frame.data.length < width * height) {
+            frame.data = new byte[width * height];
+        }
+        frame.width = width;
+        frame.height = height;
+        frame.offsetX = source.getCropLeft();
+        frame.offsetY = source.getCropTop();
+
+        final ByteBuffer buffer = source.getBuffer().duplicate();
+        final int rowStride = source.getRowStride();
+        final int pixelStride = source.getPixelStride();
+        final byte[] data = frame.data;
+        for (int y = 0, outputOffset = 0; y < height; y++, outputOffset += width) {
+            int offset = (y + frame.offsetY) * rowStride + frame.offsetX * pixelStride;
+            if (pixelStride == 1) {
+                buffer.position(offset);
+                buffer.get(data, outputOffset, width);
+            } else {
+                for (int x = 0; x < width; x++, offset += pixelStride) {
+                    data[outputOffset + x] = buffer.get(offset);
+                }
+            }
+        }
+    }
+
+    private void runWorker() {
+        final WorkerToken token = new WorkerToken();
+        final WorkerPointListener points = new WorkerPointListener();
+        FrameDecoder decoder = new FrameDecoder(decodeConfig, strategyScheduler);
+        decoder.setDecodeToken(token);
+        decoder.setPointListener(points);
+        while (!closed) {
+            final PendingFrame frame;
+            try {
+                frame = queuedFrames.takeFirst();
+            } catch (InterruptedException e) {
+                return;
+            }
+            try {
+                final ScanMetrics metrics = this.metrics;
+                if (isStale(frame)) {
+                    framesCancelled.incrementAndGet();
+                    if (metrics != null) {
+                        metrics.frameSkipped();
+                    }
+                    continue;
+                }
+                final DecodeConfig config = decodeConfig;
+                final StrategyScheduler scheduler = strategyScheduler;
+                if (decoder.getConfig() != config || decoder.getScheduler() != scheduler) {
+                    decoder = new FrameDecoder(config, scheduler);
+                    decoder.setDecodeToken(token);
+                    decoder.setPointListener(points);
+                }
+                token.arm(frame, decodeBudgetNanos);
+                points.offsetX = frame.offsetX;
+                points.offsetY = frame.offsetY;
+                // Copied in plane orientation; the decoder reads it upright.
+                final Frame decodeFrame = new Frame(ByteBuffer.wrap(frame.data), frame.width, frame.height,
+                        frame.width, 1, frame.rotationDegrees, frame.timestamp);
+                final CodeLocationTracker tracker = locationTracker;
+                final boolean multiple = multipleCodes;
+                final long decodeStart = System.nanoTime();
+                Result[] results;
+                if (multiple) {
+                    results = tracker != null
+                            ? decoder.decodeMultiple(decodeFrame, tracker, frame.offsetX, frame.offsetY)
+                            : decoder.decodeMultiple(decodeFrame);
+                } else {
+                    final Result result = tracker != null
+                            ? decoder.decode(decodeFrame, tracker, frame.offsetX, frame.offsetY)
+                            : decoder.decode(decodeFrame);
+                    results = result != null ? new Result[]{result} : null;
+                }
+                final long decodeEnd = System.nanoTime();
+                final long decodeNanos = decodeEnd - decodeStart;
+                final long binarizeNanos = decoder.takeBinarizeNanos();
+                final int scale = decoder.getResultScale();
+                if (token.cancelled) {
+                    // Says nothing about how long the frame would have taken, keep it out of the
+                    // latencies and the tuner.
+                    framesCancelled.incrementAndGet();
+                    if (metrics != null) {
+                        metrics.frameCancelled();
+                    }
+                    continue;
+                }
+                if (token.timedOut && metrics != null) {
+                    metrics.frameTimedOut();
+                }
+                if (metrics != null) {
+                    metrics.record(ScanStage.BINARIZE, binarizeNanos);
+                    metrics.record(ScanStage.DECODE, decodeNanos - binarizeNanos);
+                }
+                final AnalysisTuner tuner = this.tuner;
+                if (tuner != null) {
+                    tuner.onFrame(decodeNanos, results != null && results.length > 0);
+                }
+                framesDecoded.incrementAndGet();
+                if (results != null && results.length > 0) {
+                    offsetResultPoints(results, frame);
+                    if (multiple) {
+                        deliverAll(results, scale, frame.timestamp, decodeStart, decodeEnd);
+                    } else {
+                        deliver(results, scale, frame.sequence, frame.timestamp, decodeStart, decodeEnd);
+                    }
+                }
+            } catch (RuntimeException e) {
+                // One bad frame must not cost a worker, the frames behind it would never decode.
+                framesFailed.incrementAndGet();
+                LOG.log(Level.WARNING, "Decoding a " + frame.width + "x" + frame.height + " frame failed", e);
+            } finally {
+                freeFrames.offer(frame);
+            }
+        }
+    }
+
+    private static void offsetResultPoints(Result[] results, PendingFrame frame) {
+        for (Result result : results) {
+            FrameDecoder.offsetResultPoints(result, frame.offsetX, frame.offsetY);
+        }
+    }
+
+    private void deliver(Result[] results, int scale, long sequence, long timestamp, long decodeStart,
+                         long decodeEnd) {
+        synchronized (this) {
+            if (sequence <= lastDeliveredSequence || closed) {
+                // A newer frame got there first
+                return;
+            }
+            lastDeliveredSequence = sequence;
+            cancelBeforeSequence = sequence;
+        }
+        resultsDelivered.incrementAndGet();
+        // Outside the lock, a slow callback must not hold up the other workers.
+        notifyCallback(results, scale, timestamp, decodeStart, decodeEnd);
+    }
+
+    private void deliverAll(Result[] results, int scale, long timestamp, long decodeStart, long decodeEnd) {
+        if (closed) {
+            return;
+        }
+        resultsDelivered.addAndGet(results.length);
+        notifyCallback(results, scale, timestamp, decodeStart, decodeEnd);
+    }
+
+    /**
+     * A throwing callback is the caller's failure, not the frame's, and is counted apart.
+     */
+    private void notifyCallback(Result[] results, int scale, long timestamp, long decodeStart, long decodeEnd) {
+        try {
+            callback.onDecoded(results, scale, timestamp, decodeStart, decodeEnd);
+        } catch (RuntimeException e) {
+            callbackFailures.incrementAndGet();
+            LOG.log(Level.WARNING, "Decode callback failed", e);
+        }
+    }
+
+    public DecodeStats getStats() {
+        return new DecodeStats(workerCount,
+                framesReceived.get(),
+                framesDropped.get(),
+                framesCancelled.get(),
+                framesDecoded.get(),
+                resultsDelivered.get(),
+                framesFailed.get(),
+                callbackFailures.get(),
+                System.nanoTime() - startNanos);
+    }
+
+    @Override
+    public void close() {
+        closed = true;
+        for (Thread worker : workers) {
+            worker.interrupt();
+        }
+    }
+
+}
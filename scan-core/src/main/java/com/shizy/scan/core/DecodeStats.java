@@ -0,0 +1,108 @@
+package com.shizy.scan.core;
+
+/**
+ * Snapshot of the decode pipeline counters, used to pick a worker count per device class.
+ */
+public final class DecodeStats {
+
+    private final int workerCount;
+    private final long framesReceived;
+    private final long framesDropped;
+    private final long framesCancelled;
+    private final long framesDecoded;
+    private final long resultsDelivered;
+    private final long framesFailed;
+    private final long callbackFailures;
+    private final long elapsedNanos;
+
+    DecodeStats(int workerCount,
+                long framesReceived,
+                long framesDropped,
+                long framesCancelled,
+                long framesDecoded,
+                long resultsDelivered,
+                long framesFailed,
+                long callbackFailures,
+                long elapsedNanos) {
+        this.workerCount = workerCount;
+        this.framesReceived = framesReceived;
+        this.framesDropped = framesDropped;
+        this.framesCancelled = framesCancelled;
+        this.framesDecoded = framesDecoded;
+        this.resultsDelivered = resultsDelivered;
+        this.framesFailed = framesFailed;
+        this.callbackFailures = callbackFailures;
+        this.elapsedNanos = elapsedNanos;
+    }
+
+    public int getWorkerCount() {
+        return workerCount;
+    }
+
+    /**
+     * @return frames handed to the pipeline by the camera
+     */
+    public long getFramesReceived() {
+        return framesReceived;
+    }
+
+    /**
+     * @return frames thrown away because every worker was busy and the queue was full
+     */
+    public long getFramesDropped() {
+        return framesDropped;
+    }
+
+    /**
+     * @return queued frames skipped because a newer frame had already been decoded
+     */
+    public long getFramesCancelled() {
+        return framesCancelled;
+    }
+
+    /**
+     * @return frames which went through a full decode attempt, successful or not
+     */
+    public long getFramesDecoded() {
+        return framesDecoded;
+    }
+
+    public long getResultsDelivered() {
+        return resultsDelivered;
+    }
+
+    /**
+     * @return frames whose decode threw, and were given up on
+     */
+    public long getFramesFailed() {
+        return framesFailed;
+    }
+
+    /**
+     * @return deliveries on which the callback threw
+     */
+    public long getCallbackFailures() {
+        return callbackFailures;
+    }
+
+    /**
+     * @return decode attempts per second since the pipeline was started
+     */
+    public double getThroughput() {
+        return elapsedNanos > 0 ? framesDecoded * 1e9 / elapsedNanos : 0;
+    }
+
+    @Override
+    public String toString() {
+        return "DecodeStats{workers=" + workerCount
+                + ", received=" + framesReceived
+                + ", dropped=" + framesDropped
+                + ", cancelled=" + framesCancelled
+                + ", decoded=" + framesDecoded
+                + ", delivered=" + resultsDelivered
+                + ", failed=" + framesFailed
+                + ", callbackFailures=" + callbackFailures
+                + ", throughput=" + getThroughput() + "/s}";
+    }
+
+}
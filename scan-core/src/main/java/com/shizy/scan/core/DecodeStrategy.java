@@ -0,0 +1,44 @@
+package com.shizy.scan.core;
+
+/**
+ * One way of turning a frame into a bit matrix and reading it, scheduled by
+ * {@link StrategyScheduler}.
+ */
+public enum DecodeStrategy {
+
+    /**
+     * Hybrid binarizer with the configured hints: the default, good for unevenly lit camera frames.
+     */
+    HYBRID(false),
+
+    /**
+     * Global histogram binarizer: one threshold for the whole frame. Cheaper, and works on evenly
+     * lit, well exposed frames.
+     */
+    GLOBAL_HISTOGRAM(false),
+
+    /**
+     * Hybrid binarizer on the inverted luminance, for light codes on a dark background.
+     */
+    INVERTED(true),
+
+    /**
+     * Hybrid binarizer with {@code TRY_HARDER}, which scans many more rows and takes several times
+     * as long.
+     */
+    TRY_HARDER(true);
+
+    private final boolean expensive;
+
+    DecodeStrategy(boolean expensive) {
+        this.expensive = expensive;
+    }
+
+    /**
+     * @return whether this strategy is skipped once a frame has used up its time budget
+     */
+    public boolean isExpensive() {
+        return expensive;
+    }
+
+}
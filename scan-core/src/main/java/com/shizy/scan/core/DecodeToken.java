@@ -0,0 +1,16 @@
+package com.shizy.scan.core;
+
+/**
+ * Tells a {@link FrameDecoder} to give up on the frame it is decoding, because scanning stopped, a
+ * newer frame already decoded or the frame ran out of time.
+ * <p>
+ * ZXing cannot be interrupted, so the decoder polls the token wherever it gets control back: before
+ * binarizing, for every row a 1D reader asks for and for every finder point a 2D detector reports.
+ * That is often enough to give the CPU back within a millisecond or so. The token is polled on the
+ * decoding thread, many times per frame, and must be cheap.
+ */
+public interface DecodeToken {
+
+    boolean isCancelled();
+
+}
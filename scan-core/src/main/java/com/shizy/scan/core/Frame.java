@@ -0,0 +1,133 @@
+package com.shizy.scan.core;
+
+import java.nio.ByteBuffer;
+
+/**
+ * One camera frame as seen by the decoder: an 8-bit luminance plane plus the metadata needed to
+ * read it. The buffer is not copied, so a frame is only valid as long as its buffer is.
+ * <p>
+ * A frame may carry a crop rectangle, in which case only that region gets decoded.
+ */
+public final class Frame {
+
+    private final ByteBuffer buffer;
+    private final int width;
+    private final int height;
+    private final int rowStride;
+    private final int pixelStride;
+    private final int rotationDegrees;
+    private final long timestampNanos;
+    private final int cropLeft;
+    private final int cropTop;
+    private final int cropWidth;
+    private final int cropHeight;
+
+    /**
+     * A tightly packed luminance array with no rotation.
+     */
+    public Frame(byte[] luminances, int width, int height) {
+        this(ByteBuffer.wrap(luminances), width, height, width, 1, 0, 0L);
+    }
+
+    /**
+     * @param buffer          luminance plane, pixel (x, y) is at {@code y * rowStride + x * pixelStride}
+     * @param rotationDegrees clockwise rotation which makes the frame upright
+     * @param timestampNanos  capture time, only used for bookkeeping
+     */
+    public Frame(ByteBuffer buffer,
+                 int width,
+                 int height,
+                 int rowStride,
+                 int pixelStride,
+                 int rotationDegrees,
+                 long timestampNanos) {
+        this(buffer, width, height, rowStride, pixelStride, rotationDegrees, timestampNanos, 0, 0, width, height);
+    }
+
+    private Frame(ByteBuffer buffer,
+                  int width,
+                  int height,
+                  int rowStride,
+                  int pixelStride,
+                  int rotationDegrees,
+                  long timestampNanos,
+                  int cropLeft,
+                  int cropTop,
+                  int cropWidth,
+                  int cropHeight) {
+        if (cropLeft < 0 || cropTop < 0 || cropLeft + cropWidth > width || cropTop + cropHeight > height) {
+            throw new IllegalArgumentException("Crop rectangle does not fit within the frame.");
+        }
+        this.buffer = buffer;
+        this.width = width;
+        this.height = height;
+        this.rowStride = rowStride;
+        this.pixelStride = pixelStride;
+        this.rotationDegrees = rotationDegrees;
+        this.timestampNanos = timestampNanos;
+        this.cropLeft = cropLeft;
+        this.cropTop = cropTop;
+        this.cropWidth = cropWidth;
+        this.cropHeight = cropHeight;
+    }
+
+    /**
+     * @return the same frame, restricted to the given region (in full frame coordinates)
+     */
+    public Frame withCrop(int left, int top, int width, int height) {
+        return new Frame(buffer, this.width, this.height, rowStride, pixelStride, rotationDegrees, timestampNanos,
+                left, top, width, height);
+    }
+
+    public ByteBuffer getBuffer() {
+        return buffer;
+    }
+
+    public int getWidth() {
+        return width;
+    }
+
+    public int getHeight() {
+        return height;
+    }
+
+    public int getRowStride() {
+        return rowStride;
+    }
+
+    public int getPixelStride() {
+        return pixelStride;
+    }
+
+    public int getRotationDegrees() {
+        return rotationDegrees;
+    }
+
+    public long getTimestampNanos() {
+        return timestampNanos;
+    }
+
+    public int getCropLeft() {
+        return cropLeft;
+    }
+
+    public int getCropTop() {
+        return cropTop;
+    }
+
+    public int getCropWidth() {
+        return cropWidth;
+    }
+
+    public int getCropHeight() {
+        return cropHeight;
+    }
+
+    /**
+     * @return the luminance at (x, y) in full frame coordinates
+     */
+    public int getLuminance(int x, int y) {
+        return buffer.get(y * rowStride + x * pixelStride) & 0xff;
+    }
+
+}
@@ -0,0 +1,848 @@
+package com.shizy.scan.core;
+
+import com.google.zxing.BarcodeFormat;
+import com.google.zxing.BinaryBitmap;
+import com.google.zxing.DecodeHintType;
+import com.google.zxing.InvertedLuminanceSource;
+import com.google.zxing.LuminanceSource;
+import com.google.zxing.MultiFormatReader;
+import com.google.zxing.Reader;
+import com.google.zxing.ReaderException;
+import com.google.zxing.Result;
+import com.google.zxing.ResultPoint;
+import com.google.zxing.ResultPointCallback;
+import com.google.zxing.WriterException;
+import com.google.zxing.aztec.AztecReader;
+import com.google.zxing.common.BitMatrix;
+import com.google.zxing.datamatrix.DataMatrixReader;
+import com.google.zxing.maxicode.MaxiCodeReader;
+import com.google.zxing.multi.GenericMultipleBarcodeReader;
+import com.google.zxing.multi.MultipleBarcodeReader;
+import com.google.zxing.multi.qrcode.QRCodeMultiReader;
+import com.google.zxing.oned.CodaBarReader;
+import com.google.zxing.oned.Code128Reader;
+import com.google.zxing.oned.Code39Reader;
+import com.google.zxing.oned.Code93Reader;
+import com.google.zxing.oned.EAN13Reader;
+import com.google.zxing.oned.EAN8Reader;
+import com.google.zxing.oned.ITFReader;
+import com.google.zxing.oned.UPCAReader;
+import com.google.zxing.oned.UPCEReader;
+import com.google.zxing.oned.rss.RSS14Reader;
+import com.google.zxing.oned.rss.expanded.RSSExpandedReader;
+import com.google.zxing.pdf417.PDF417Reader;
+import com.google.zxing.qrcode.QRCodeReader;
+import com.google.zxing.qrcode.QRCodeWriter;
+
+import java.util.Arrays;
+import java.util.EnumMap;
+import java.util.Map;
+
+/**
+ * Decodes one luminance source at a time. Holds a reader and recycled binarizer buffers, neither of
+ * which is thread-safe, so every decoding thread needs a decoder of its own.
+ * <p>
+ * When the configuration asks for a single format, that format's reader is called directly instead
+ * of going through {@link MultiFormatReader}.
+ * <p>
+ * {@link #decodeMultiple} finds every code in a frame rather than stopping at the first one.
+ * <p>
+ * With a {@link StrategyScheduler}, {@link #decode} tries the strategies it plans for each frame
+ * instead of the hybrid binarizer followed by the optional inverted pass.
+ * <p>
+ * With a {@link CodeLocationTracker}, the window where a code was last seen is decoded before the
+ * whole frame.
+ * <p>
+ * With {@link DecodeConfig#isPyramid()}, {@link #decode(Frame)} first decodes the frame shrunk 4x
+ * and 2x, then the area around any code detected at those sizes, and only then the full frame.
+ * {@link #getResultScale} tells at which scale the result was found.
+ * <p>
+ * With a {@link DecodeToken}, a decode stops as soon as the token is cancelled and returns as if
+ * nothing had been found.
+ * <p>
+ * Frames are decoded upright, according to {@link Frame#getRotationDegrees()}, so that 1D codes
+ * held level on screen are scanned along their bars. Result and detection points still come back
+ * in frame coordinates.
+ */
+public final class FrameDecoder {
+
+    /**
+     * Receives the points readers report while detecting codes, such as QR finder patterns, whether
+     * or not the code then decodes.
+     */
+    public interface PointListener {
+
+        /**
+         * Called on the decoding thread, in the middle of a decode; must be quick.
+         *
+         * @param x in frame coordinates
+         * @param y in frame coordinates
+         */
+        void onPoint(float x, float y);
+
+    }
+
+    private final DecodeConfig config;
+    private final Map<DecodeHintType, Object> hints;
+    private final MultiFormatReader multiFormatReader;
+    private final Reader singleFormatReader;
+    private final DecodeContext decodeContext = new DecodeContext();
+    private MultipleBarcodeReader multipleReader;
+    private final StrategyScheduler scheduler;
+    private final DecodeStrategy[] plan;
+    /**
+     * The current frame's plan and what became of it, per strategy ordinal: one frame may be
+     * decoded from several sources (pyramid levels, a tracker window and the full crop), but the
+     * scheduler plans it, and learns from it, once.
+     */
+    private int planCount;
+    private long frameStart;
+    private final long[] planNanos;
+    private final boolean[] planAttempted;
+    private final boolean[] planSkipped;
+    private final boolean[] planHit;
+    private Map<DecodeHintType, Object> tryHarderHints;
+    private MultiFormatReader tryHarderReader;
+    private final PointCollector pointCollector = new PointCollector(decodeContext);
+    private final int[] trackWindow = new int[4];
+    private final float[] trackBounds = new float[4];
+    private int resultScale = 1;
+
+    /**
+     * Fewest finder points which count as a sighting of a code that could not be decoded.
+     */
+    private static final int MIN_PARTIAL_POINTS = 3;
+
+    /**
+     * Smallest search window worth decoding on its own, in pixels.
+     */
+    private static final int MIN_WINDOW_SIZE = 48;
+
+    private static final int PYRAMID_MAX_SCALE = 4;
+
+    /**
+     * Smallest side of a downsampled level; below this, modules of typical codes get too thin.
+     */
+    private static final int PYRAMID_MIN_SIZE = 160;
+
+    private static final Result[] NO_RESULTS = new Result[0];
+
+    private static final int WARM_UP_WIDTH = 640;
+    private static final int WARM_UP_HEIGHT = 480;
+    private static final int WARM_UP_CODE_SIZE = 240;
+    private static final int WARM_UP_PASSES = 3;
+
+    public FrameDecoder(DecodeConfig config) {
+        this(config, null);
+    }
+
+    /**
+     * @param scheduler picks the decode strategies of each frame, or {@code null} for the fixed
+     *                  hybrid then inverted sequence
+     */
+    public FrameDecoder(DecodeConfig config, StrategyScheduler scheduler) {
+        this.config = config;
+        this.scheduler = scheduler;
+        final int strategyCount = DecodeStrategy.values().length;
+        this.plan = scheduler != null ? new DecodeStrategy[strategyCount] : null;
+        this.planNanos = scheduler != null ? new long[strategyCount] : null;
+        this.planAttempted = scheduler != null ? new boolean[strategyCount] : null;
+        this.planSkipped = scheduler != null ? new boolean[strategyCount] : null;
+        this.planHit = scheduler != null ? new boolean[strategyCount] : null;
+        final Map<DecodeHintType, Object> configHints = config.toHints();
+        this.hints = configHints != null ? configHints : new EnumMap<>(DecodeHintType.class);
+        // Finder points of codes which fail to decode still tell a tracker where to look next.
+        hints.put(DecodeHintType.NEED_RESULT_POINT_CALLBACK, pointCollector);
+        singleFormatReader = config.getFormats().size() == 1
+                ? readerFor(config.getFormats().iterator().next()) : null;
+        if (singleFormatReader == null) {
+            multiFormatReader = new MultiFormatReader();
+            multiFormatReader.setHints(hints);
+        } else {
+            multiFormatReader = null;
+        }
+    }
+
+    /**
+     * Decodes a generated frame holding a QR code a few times, so that the reader classes are loaded
+     * and the hot paths are compiled before the first camera frame arrives. Worth doing in the
+     * background while the camera starts up; takes tens of milliseconds on a cold process.
+     *
+     * @return whether the generated code decoded, i.e. {@code false} if QR codes are not among the
+     * configured formats
+     */
+    public static boolean warmUp(DecodeConfig config) {
+        final byte[] luminances = new byte[WARM_UP_WIDTH * WARM_UP_HEIGHT];
+        Arrays.fill(luminances, (byte) 0xff);
+        try {
+            final BitMatrix code = new QRCodeWriter().encode("warm up", BarcodeFormat.QR_CODE,
+                    WARM_UP_CODE_SIZE, WARM_UP_CODE_SIZE);
+            final int left = (WARM_UP_WIDTH - code.getWidth()) / 2;
+            final int top = (WARM_UP_HEIGHT - code.getHeight()) / 2;
+            for (int y = 0; y < code.getHeight(); y++) {
+                for (int x = 0; x < code.getWidth(); x++) {
+                    if (code.get(x, y)) {
+                        luminances[(top + y) * WARM_UP_WIDTH + left + x] = 0;
+                    }
+                }
+            }
+        } catch (WriterException e) {
+            // A blank frame still runs the binarizer and the 1D readers.
+        }
+        final Frame frame = new Frame(luminances, WARM_UP_WIDTH, WARM_UP_HEIGHT);
+        final FrameDecoder decoder = new FrameDecoder(config);
+        boolean decoded = false;
+        for (int i = 0; i < WARM_UP_PASSES; i++) {
+            decoded = decoder.decode(frame) != null;
+        }
+        return decoded;
+    }
+
+    public DecodeConfig getConfig() {
+        return config;
+    }
+
+    public StrategyScheduler getScheduler() {
+        return scheduler;
+    }
+
+    /**
+     * @return time spent binarizing since the last call, which callers subtract from the time of a
+     * whole decode to tell binarizing and decoding apart
+     */
+    public long takeBinarizeNanos() {
+        final long nanos = decodeContext.binarizeNanos;
+        decodeContext.binarizeNanos = 0;
+        return nanos;
+    }
+
+    /**
+     * @return the factor by which the frame was shrunk when the last decode found its result: 1 for
+     * full resolution, 2 or 4 for the downsampled levels of a pyramid decode
+     */
+    public int getResultScale() {
+        return resultScale;
+    }
+
+    /**
+     * Makes the following decodes stop early once {@code token} is cancelled. The token stays in
+     * place until replaced; pass {@code null} to always decode to the end.
+     */
+    public void setDecodeToken(DecodeToken token) {
+        decodeContext.token = token;
+    }
+
+    /**
+     * Reports detected points to {@code listener}, or to nobody if {@code null}.
+     */
+    public void setPointListener(PointListener listener) {
+        pointCollector.listener = listener;
+    }
+
+    /**
+     * Decodes the crop region of {@code frame}.
+     *
+     * @return the decoded result with its points in full frame coordinates, or {@code null} if
+     * nothing was found
+     */
+    public Result decode(Frame frame) {
+        startPlan();
+        try {
+            final Result result = decodeFrame(frame);
+            recordPlan();
+            return result;
+        } catch (DecodeCancelledException e) {
+            return cancelled();
+        }
+    }
+
+    private Result decodeFrame(Frame frame) {
+        resultScale = 1;
+        if (config.isPyramid()) {
+            return decodePyramid(frame);
+        }
+        return decodeCrop(frame);
+    }
+
+    private Result decodeCrop(Frame frame) {
+        final YPlaneLuminanceSource source = new YPlaneLuminanceSource(frame);
+        pointCollector.transform(source, 1, frame.getCropLeft(), frame.getCropTop());
+        final Result result = decodeSource(source);
+        if (result != null) {
+            toFramePoints(result, source, 1, frame.getCropLeft(), frame.getCropTop());
+        }
+        return result;
+    }
+
+    /**
+     * Cleans up after a decode was abandoned half way.
+     */
+    private Result cancelled() {
+        pointCollector.stop();
+        return null;
+    }
+
+    private Result decodePyramid(Frame frame) {
+        final PointCollector points = pointCollector;
+        final boolean collect = !points.collecting;
+        if (collect) {
+            points.start();
+        }
+        try {
+            final int left = frame.getCropLeft();
+            final int top = frame.getCropTop();
+            for (int scale = PYRAMID_MAX_SCALE; scale > 1; scale >>= 1) {
+                if (frame.getCropWidth() / scale < PYRAMID_MIN_SIZE || frame.getCropHeight() / scale < PYRAMID_MIN_SIZE) {
+                    continue;
+                }
+                final YPlaneLuminanceSource source = decodeContext.downsample(frame, scale);
+                points.transform(source, scale, left, top);
+                final Result result = decodeSource(source);
+                if (result != null) {
+                    toFramePoints(result, source, scale, left, top);
+                    resultScale = scale;
+                    return result;
+                }
+            }
+
+            // Something was detected at a coarse level but did not decode: look closer at that area
+            // before paying for the whole frame.
+            final Frame region = partialRegion(frame);
+            if (region != null) {
+                final Result result = decodeCrop(region);
+                if (result != null) {
+                    return result;
+                }
+            }
+
+            return decodeCrop(frame);
+        } finally {
+            if (collect) {
+                points.stop();
+            }
+        }
+    }
+
+    /**
+     * @return the area around the points collected so far, grown by the size of the area, or
+     * {@code null} if they do not look like a single code
+     */
+    private Frame partialRegion(Frame frame) {
+        final PointCollector points = pointCollector;
+        if (!looksLikeCode(frame)) {
+            return null;
+        }
+        final float margin = Math.max(MIN_WINDOW_SIZE, Math.max(points.maxX - points.minX, points.maxY - points.minY));
+        final int left = Math.max(frame.getCropLeft(), (int) (points.minX - margin));
+        final int top = Math.max(frame.getCropTop(), (int) (points.minY - margin));
+        final int right = Math.min(frame.getCropLeft() + frame.getCropWidth(), (int) Math.ceil(points.maxX + margin));
+        final int bottom = Math.min(frame.getCropTop() + frame.getCropHeight(), (int) Math.ceil(points.maxY + margin));
+        if (right - left < MIN_WINDOW_SIZE || bottom - top < MIN_WINDOW_SIZE
+                || (right - left) * (bottom - top) >= frame.getCropWidth() * frame.getCropHeight() / 2) {
+            return null;
+        }
+        return frame.withCrop(left, top, right - left, bottom - top);
+    }
+
+    /**
+     * A handful of points inside a small area is a code; points all over the frame are texture that
+     * happened to look like finder patterns.
+     */
+    private boolean looksLikeCode(Frame frame) {
+        final PointCollector points = pointCollector;
+        return points.count >= MIN_PARTIAL_POINTS
+                && (points.maxX - points.minX) * (points.maxY - points.minY)
+                < frame.getCropWidth() * frame.getCropHeight() / 4f;
+    }
+
+    /**
+     * @return the decoded result, or {@code null} if nothing was found
+     */
+    public Result decode(LuminanceSource source) {
+        // Points are reported as the source has them.
+        pointCollector.transform(null, 1, 0, 0);
+        resultScale = 1;
+        startPlan();
+        try {
+            final Result result = decodeSource(source);
+            recordPlan();
+            return result;
+        } catch (DecodeCancelledException e) {
+            return cancelled();
+        }
+    }
+
+    private Result decodeSource(LuminanceSource source) {
+        if (scheduler != null) {
+            return decodeScheduled(source);
+        }
+        Result result = decodeOnce(decodeContext.newBinaryBitmap(source));
+        if (result == null && config.isAlsoInverted()) {
+            result = decodeOnce(decodeContext.newBinaryBitmap(new InvertedLuminanceSource(source)));
+        }
+        return result;
+    }
+
+    /**
+     * Decodes the window where {@code tracker} expects a code first, then, if nothing was found
+     * there, the whole crop region, and tells the tracker where a code was seen.
+     *
+     * @param originX position of this frame's left edge in the tracker's coordinates, for frames
+     *                which are themselves a copied part of the camera image
+     * @param originY position of this frame's top edge in the tracker's coordinates
+     * @return the decoded result with its points in frame coordinates, or {@code null} if nothing
+     * was found
+     */
+    public Result decode(Frame frame, CodeLocationTracker tracker, int originX, int originY) {
+        startPlan();
+        try {
+            final Result result = decodeTracked(frame, tracker, originX, originY);
+            recordPlan();
+            return result;
+        } catch (DecodeCancelledException e) {
+            // The tracker is left as it was, a cancelled frame says nothing about where codes are.
+            return cancelled();
+        }
+    }
+
+    private Result decodeTracked(Frame frame, CodeLocationTracker tracker, int originX, int originY) {
+        final Frame window = trackedWindow(frame, tracker, originX, originY);
+        if (window != null) {
+            final Result result = decodeFrame(window);
+            tracker.countDecode(true, result != null);
+            if (result != null) {
+                resetBounds();
+                addBounds(result);
+                trackBounds(tracker, originX, originY);
+                return result;
+            }
+        } else {
+            tracker.countDecode(false, false);
+        }
+
+        pointCollector.start();
+        final Result result = decodeFrame(frame);
+        pointCollector.stop();
+        resetBounds();
+        if (result != null) {
+            addBounds(result);
+        }
+        track(frame, tracker, originX, originY);
+        return result;
+    }
+
+    /**
+     * Same as {@link #decode(Frame, CodeLocationTracker, int, int)}, but returns every code found.
+     * The window covers all the codes of the last frame which decoded.
+     */
+    public Result[] decodeMultiple(Frame frame, CodeLocationTracker tracker, int originX, int originY) {
+        try {
+            return decodeMultipleTracked(frame, tracker, originX, originY);
+        } catch (DecodeCancelledException e) {
+            cancelled();
+            return NO_RESULTS;
+        }
+    }
+
+    private Result[] decodeMultipleTracked(Frame frame, CodeLocationTracker tracker, int originX, int originY) {
+        final Frame window = trackedWindow(frame, tracker, originX, originY);
+        if (window != null) {
+            final Result[] results = decodeMultipleFrame(window);
+            tracker.countDecode(true, results.length > 0);
+            if (results.length > 0) {
+                resetBounds();
+                for (Result result : results) {
+                    addBounds(result);
+                }
+                trackBounds(tracker, originX, originY);
+                return results;
+            }
+        } else {
+            tracker.countDecode(false, false);
+        }
+
+        pointCollector.start();
+        final Result[] results = decodeMultipleFrame(frame);
+        pointCollector.stop();
+        resetBounds();
+        for (Result result : results) {
+            addBounds(result);
+        }
+        track(frame, tracker, originX, originY);
+        return results;
+    }
+
+    /**
+     * @return the crop of {@code frame} to decode first, or {@code null} to go straight to the full
+     * crop region
+     */
+    private Frame trackedWindow(Frame frame, CodeLocationTracker tracker, int originX, int originY) {
+        final int[] window = trackWindow;
+        if (!tracker.predict(window)) {
+            return null;
+        }
+        final int left = Math.max(frame.getCropLeft(), window[0] - originX);
+        final int top = Math.max(frame.getCropTop(), window[1] - originY);
+        final int right = Math.min(frame.getCropLeft() + frame.getCropWidth(), window[2] - originX);
+        final int bottom = Math.min(frame.getCropTop() + frame.getCropHeight(), window[3] - originY);
+        final int width = right - left;
+        final int height = bottom - top;
+        if (width < MIN_WINDOW_SIZE || height < MIN_WINDOW_SIZE
+                || (width == frame.getCropWidth() && height == frame.getCropHeight())) {
+            return null;
+        }
+        return frame.withCrop(left, top, width, height);
+    }
+
+    /**
+     * Updates {@code tracker} after a full frame decode, from the bounds of the decoded results or
+     * else from the finder points seen on the way.
+     */
+    private void track(Frame frame, CodeLocationTracker tracker, int originX, int originY) {
+        final float[] bounds = trackBounds;
+        if (bounds[0] <= bounds[2]) {
+            trackBounds(tracker, originX, originY);
+            return;
+        }
+        final PointCollector points = pointCollector;
+        if (looksLikeCode(frame)) {
+            tracker.found(points.minX + originX, points.minY + originY,
+                    points.maxX + originX, points.maxY + originY);
+        } else {
+            tracker.missed();
+        }
+    }
+
+    private void trackBounds(CodeLocationTracker tracker, int originX, int originY) {
+        final float[] bounds = trackBounds;
+        if (bounds[0] > bounds[2]) {
+            // Decoded, but without result points to locate it by.
+            tracker.missed();
+            return;
+        }
+        tracker.found(bounds[0] + originX, bounds[1] + originY, bounds[2] + originX, bounds[3] + originY);
+    }
+
+    private void resetBounds() {
+        trackBounds[0] = Float.MAX_VALUE;
+        trackBounds[1] = Float.MAX_VALUE;
+        trackBounds[2] = -Float.MAX_VALUE;
+        trackBounds[3] = -Float.MAX_VALUE;
+    }
+
+    private void addBounds(Result result) {
+        final ResultPoint[] points = result.getResultPoints();
+        if (points == null) {
+            return;
+        }
+        final float[] bounds = trackBounds;
+        for (ResultPoint point : points) {
+            if (point != null) {
+                bounds[0] = Math.min(bounds[0], point.getX());
+                bounds[1] = Math.min(bounds[1], point.getY());
+                bounds[2] = Math.max(bounds[2], point.getX());
+                bounds[3] = Math.max(bounds[3], point.getY());
+            }
+        }
+    }
+
+    /**
+     * Asks the scheduler for the strategies of a new frame.
+     */
+    private void startPlan() {
+        if (scheduler == null) {
+            return;
+        }
+        planCount = scheduler.plan(plan);
+        frameStart = System.nanoTime();
+        Arrays.fill(planNanos, 0L);
+        Arrays.fill(planAttempted, false);
+        Arrays.fill(planSkipped, false);
+        Arrays.fill(planHit, false);
+    }
+
+    /**
+     * Tells the scheduler how each strategy of the frame did, once per strategy however many sources
+     * it was tried on. Not called for cancelled frames, which say nothing about the strategies.
+     */
+    private void recordPlan() {
+        if (scheduler == null) {
+            return;
+        }
+        for (int i = 0; i < planCount; i++) {
+            final DecodeStrategy strategy = plan[i];
+            final int ordinal = strategy.ordinal();
+            if (planAttempted[ordinal]) {
+                scheduler.record(strategy, planHit[ordinal], planNanos[ordinal]);
+            } else if (planSkipped[ordinal]) {
+                scheduler.recordSkipped(strategy);
+            }
+        }
+    }
+
+    private Result decodeScheduled(LuminanceSource source) {
+        for (int i = 0; i < planCount; i++) {
+            final DecodeStrategy strategy = plan[i];
+            final int ordinal = strategy.ordinal();
+            final long start = System.nanoTime();
+            if (i > 0 && strategy.isExpensive() && start - frameStart >= scheduler.getFrameBudgetNanos()) {
+                planSkipped[ordinal] = true;
+                continue;
+            }
+            final Result result = decodeWith(strategy, source);
+            planNanos[ordinal] += System.nanoTime() - start;
+            planAttempted[ordinal] = true;
+            if (result != null) {
+                planHit[ordinal] = true;
+                return result;
+            }
+        }
+        return null;
+    }
+
+    private Result decodeWith(DecodeStrategy strategy, LuminanceSource source) {
+        switch (strategy) {
+            case GLOBAL_HISTOGRAM:
+                return decodeOnce(decodeContext.newGlobalHistogramBitmap(source));
+            case INVERTED:
+                return decodeOnce(decodeContext.newBinaryBitmap(new InvertedLuminanceSource(source)));
+            case TRY_HARDER:
+                return decodeTryHarder(decodeContext.newBinaryBitmap(source));
+            default:
+                return decodeOnce(decodeContext.newBinaryBitmap(source));
+        }
+    }
+
+    /**
+     * Decodes every code in the crop region of {@code frame}.
+     *
+     * @return the results with their points in full frame coordinates, empty if nothing was found
+     */
+    public Result[] decodeMultiple(Frame frame) {
+        try {
+            return decodeMultipleFrame(frame);
+        } catch (DecodeCancelledException e) {
+            cancelled();
+            return NO_RESULTS;
+        }
+    }
+
+    private Result[] decodeMultipleFrame(Frame frame) {
+        resultScale = 1;
+        final YPlaneLuminanceSource source = new YPlaneLuminanceSource(frame);
+        pointCollector.transform(source, 1, frame.getCropLeft(), frame.getCropTop());
+        Result[] results = decodeMultipleOnce(decodeContext.newBinaryBitmap(source));
+        if (results.length == 0 && config.isAlsoInverted()) {
+            results = decodeMultipleOnce(decodeContext.newBinaryBitmap(new InvertedLuminanceSource(source)));
+        }
+        for (Result result : results) {
+            toFramePoints(result, source, 1, frame.getCropLeft(), frame.getCropTop());
+        }
+        return results;
+    }
+
+    private Result[] decodeMultipleOnce(BinaryBitmap bitmap) {
+        if (multipleReader == null) {
+            // The QR multi reader finds several finder pattern triples in one pass, the generic one
+            // has to decode, blank out and retry each quadrant.
+            multipleReader = config.getFormats().size() == 1 && config.getFormats().contains(BarcodeFormat.QR_CODE)
+                    ? new QRCodeMultiReader()
+                    : new GenericMultipleBarcodeReader(singleFormatReader != null ? singleFormatReader : multiFormatReader);
+        }
+        try {
+            return multipleReader.decodeMultiple(bitmap, hints);
+        } catch (ReaderException | ArrayIndexOutOfBoundsException e) {
+            // continue
+            return NO_RESULTS;
+        }
+    }
+
+    private Result decodeOnce(BinaryBitmap bitmap) {
+        final Reader reader = singleFormatReader != null ? singleFormatReader : multiFormatReader;
+        try {
+            if (singleFormatReader != null) {
+                return singleFormatReader.decode(bitmap, hints);
+            }
+            return multiFormatReader.decodeWithState(bitmap);
+        } catch (ReaderException | ArrayIndexOutOfBoundsException e) {
+            // continue
+            return null;
+        } finally {
+            reader.reset();
+        }
+    }
+
+    private Result decodeTryHarder(BinaryBitmap bitmap) {
+        if (tryHarderHints == null) {
+            tryHarderHints = new EnumMap<>(hints);
+            tryHarderHints.put(DecodeHintType.TRY_HARDER, Boolean.TRUE);
+            if (singleFormatReader == null) {
+                tryHarderReader = new MultiFormatReader();
+                tryHarderReader.setHints(tryHarderHints);
+            }
+        }
+        final Reader reader = singleFormatReader != null ? singleFormatReader : tryHarderReader;
+        try {
+            if (singleFormatReader != null) {
+                return singleFormatReader.decode(bitmap, tryHarderHints);
+            }
+            return tryHarderReader.decodeWithState(bitmap);
+        } catch (ReaderException | ArrayIndexOutOfBoundsException e) {
+            // continue
+            return null;
+        } finally {
+            reader.reset();
+        }
+    }
+
+    /**
+     * Result points come back upright and relative to {@code source}, which may be a downsampled
+     * level; moves them into full resolution frame coordinates, in place.
+     */
+    private static void toFramePoints(Result result, YPlaneLuminanceSource source, int scale, int dx, int dy) {
+        final ResultPoint[] points = result.getResultPoints();
+        if (points == null) {
+            return;
+        }
+        for (int i = 0; i < points.length; i++) {
+            if (points[i] != null) {
+                final float x = source.toPlaneX(points[i].getX(), points[i].getY());
+                final float y = source.toPlaneY(points[i].getX(), points[i].getY());
+                points[i] = new ResultPoint((x + 0.5f) * scale - 0.5f + dx, (y + 0.5f) * scale - 0.5f + dy);
+            }
+        }
+    }
+
+    /**
+     * Result points come back relative to the crop, move them into full image coordinates.
+     */
+    static void offsetResultPoints(Result result, int dx, int dy) {
+        final ResultPoint[] points = result.getResultPoints();
+        if (points == null || (dx == 0 && dy == 0)) {
+            return;
+        }
+        for (int i = 0; i < points.length; i++) {
+            if (points[i] != null) {
+                points[i] = new ResultPoint(points[i].getX() + dx, points[i].getY() + dy);
+            }
+        }
+    }
+
+    /**
+     * Bounding box of the points readers report while detecting, in frame coordinates.
+     */
+    private static final class PointCollector implements ResultPointCallback {
+
+        private final DecodeContext context;
+        PointListener listener;
+        boolean collecting;
+        int count;
+        YPlaneLuminanceSource source;
+        int scale = 1;
+        int offsetX;
+        int offsetY;
+        float minX;
+        float minY;
+        float maxX;
+        float maxY;
+
+        PointCollector(DecodeContext context) {
+            this.context = context;
+        }
+
+        void start() {
+            collecting = true;
+            count = 0;
+            minX = Float.MAX_VALUE;
+            minY = Float.MAX_VALUE;
+            maxX = -Float.MAX_VALUE;
+            maxY = -Float.MAX_VALUE;
+        }
+
+        void stop() {
+            collecting = false;
+        }
+
+        /**
+         * Sets how points of the luminance source about to be decoded map to frame coordinates.
+         *
+         * @param source the source, to undo its rotation, or {@code null} to take points as they are
+         */
+        void transform(YPlaneLuminanceSource source, int scale, int offsetX, int offsetY) {
+            this.source = source;
+            this.scale = scale;
+            this.offsetX = offsetX;
+            this.offsetY = offsetY;
+        }
+
+        @Override
+        public void foundPossibleResultPoint(ResultPoint point) {
+            // 2D detectors binarize once and then search for a long time, this is where they can
+            // be stopped.
+            context.checkCancelled();
+            if (point == null || (!collecting && listener == null)) {
+                return;
+            }
+            final YPlaneLuminanceSource source = this.source;
+            final float u = point.getX();
+            final float v = point.getY();
+            final float x = (source != null ? source.toPlaneX(u, v) : u) * scale + offsetX;
+            final float y = (source != null ? source.toPlaneY(u, v) : v) * scale + offsetY;
+            if (listener != null) {
+                listener.onPoint(x, y);
+            }
+            if (!collecting) {
+                return;
+            }
+            count++;
+            minX = Math.min(minX, x);
+            minY = Math.min(minY, y);
+            maxX = Math.max(maxX, x);
+            maxY = Math.max(maxY, y);
+        }
+
+    }
+
+    /**
+     * @return the reader for exactly this format, or {@code null} to use {@link MultiFormatReader}
+     */
+    private static Reader readerFor(BarcodeFormat format) {
+        switch (format) {
+            case QR_CODE:
+                return new QRCodeReader();
+            case DATA_MATRIX:
+                return new DataMatrixReader();
+            case AZTEC:
+                return new AztecReader();
+            case PDF_417:
+                return new PDF417Reader();
+            case MAXICODE:
+                return new MaxiCodeReader();
+            case EAN_13:
+                return new EAN13Reader();
+            case EAN_8:
+                return new EAN8Reader();
+            case UPC_A:
+                return new UPCAReader();
+            case UPC_E:
+                return new UPCEReader();
+            case CODE_39:
+                return new Code39Reader();
+            case CODE_93:
+                return new Code93Reader();
+            case CODE_128:
+                return new Code128Reader();
+            case ITF:
+                return new ITFReader();
+            case CODABAR:
+                return new CodaBarReader();
+            case RSS_14:
+                return new RSS14Reader();
+            case RSS_EXPANDED:
+                return new RSSExpandedReader();
+            default:
+                return null;
+        }
+    }
+
+}
@@ -0,0 +1,281 @@
+package com.shizy.scan.core;
+
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Rejects frames which are too dark, too bright, too flat or too blurry to be worth binarizing,
+ * such as the ones captured while autofocus is hunting or the phone is moving.
+ * <p>
+ * Only a grid of at most {@value #GRID} x {@value #GRID} points of the crop region is looked at,
+ * which takes a few tens of microseconds whatever the frame size. For each point the filter reads
+ * the pixel and its right and lower neighbours, and derives:
+ * <ul>
+ * <li>exposure, the mean luminance,</li>
+ * <li>contrast, the spread between the 5th and 95th luminance percentiles,</li>
+ * <li>sharpness, the mean absolute gradient between neighbouring pixels.</li>
+ * </ul>
+ * The sharpness threshold calibrates itself: once a few frames have decoded, frames much blurrier
+ * than the blurriest recently decoded frame are skipped too. Every {@code probeInterval}th frame is let through
+ * whatever its score, so that a threshold which turns out to be too strict cannot lock scanning out.
+ * <p>
+ * {@link #accept} must be called from a single thread; {@link #reportDecoded} and the counters may
+ * be used from any thread.
+ */
+public final class FrameQualityFilter {
+
+    static final int GRID = 48;
+
+    private static final int BUCKETS = 32;
+    private static final int BUCKET_SHIFT = 3;
+
+    /**
+     * How fast the sharpness floor rises when only sharper frames decode.
+     */
+    private static final float FLOOR_RISE = 1f / 32;
+
+    /**
+     * Decoded frames needed before the calibrated threshold is used.
+     */
+    private static final int CALIBRATION_FRAMES = 8;
+
+    private final int minExposure;
+    private final int maxExposure;
+    private final int minContrast;
+    private final float minSharpness;
+    private final float calibrationRatio;
+    private final int probeInterval;
+
+    private final int[] buckets = new int[BUCKETS];
+    private int framesSinceProbe;
+
+    private volatile float lastSharpness;
+    private volatile float decodedFloor;
+    private volatile int calibrationFrames;
+
+    private final AtomicLong framesChecked = new AtomicLong();
+    private final AtomicLong skippedExposure = new AtomicLong();
+    private final AtomicLong skippedContrast = new AtomicLong();
+    private final AtomicLong skippedSharpness = new AtomicLong();
+    private final AtomicLong framesDecoded = new AtomicLong();
+
+    private FrameQualityFilter(Builder builder) {
+        this.minExposure = builder.minExposure;
+        this.maxExposure = builder.maxExposure;
+        this.minContrast = builder.minContrast;
+        this.minSharpness = builder.minSharpness;
+        this.calibrationRatio = builder.calibrationRatio;
+        this.probeInterval = builder.probeInterval;
+    }
+
+    /**
+     * Scores the crop region of {@code frame}.
+     *
+     * @return whether the frame is worth decoding
+     */
+    public boolean accept(Frame frame) {
+        framesChecked.incrementAndGet();
+
+        final int width = frame.getCropWidth();
+        final int height = frame.getCropHeight();
+        if (width < 2 || height < 2) {
+            return true;
+        }
+        final int stepX = Math.max(1, (width - 1) / GRID);
+        final int stepY = Math.max(1, (height - 1) / GRID);
+        final int left = frame.getCropLeft();
+        final int top = frame.getCropTop();
+        final int right = left + width - 1;
+        final int bottom = top + height - 1;
+
+        final int[] histogram = buckets;
+        for (int i = 0; i < BUCKETS; i++) {
+            histogram[i] = 0;
+        }
+        long sum = 0;
+        long gradient = 0;
+        int samples = 0;
+        for (int y = top; y < bottom; y += stepY) {
+            for (int x = left; x < right; x += stepX) {
+                final int luminance = frame.getLuminance(x, y);
+                final int dx = frame.getLuminance(x + 1, y) - luminance;
+                final int dy = frame.getLuminance(x, y + 1) - luminance;
+                sum += luminance;
+                gradient += Math.abs(dx) + Math.abs(dy);
+                histogram[luminance >> BUCKET_SHIFT]++;
+                samples++;
+            }
+        }
+
+        final int exposure = (int) (sum / samples);
+        final int contrast = percentile(histogram, samples, 95) - percentile(histogram, samples, 5);
+        final float sharpness = gradient / (float) samples;
+
+        if (++framesSinceProbe >= probeInterval) {
+            framesSinceProbe = 0;
+            lastSharpness = sharpness;
+            return true;
+        }
+        if (exposure < minExposure || exposure > maxExposure) {
+            skippedExposure.incrementAndGet();
+            return false;
+        }
+        if (contrast < minContrast) {
+            skippedContrast.incrementAndGet();
+            return false;
+        }
+        if (sharpness < getSharpnessThreshold()) {
+            skippedSharpness.incrementAndGet();
+            return false;
+        }
+        lastSharpness = sharpness;
+        return true;
+    }
+
+    /**
+     * Percentiles are resolved to the middle of a histogram bucket, which is plenty for a threshold.
+     */
+    private static int percentile(int[] histogram, int samples, int percent) {
+        final int target = samples * percent / 100;
+        int count = 0;
+        for (int i = 0; i < BUCKETS; i++) {
+            count += histogram[i];
+            if (count > target) {
+                return (i << BUCKET_SHIFT) + (1 << (BUCKET_SHIFT - 1));
+            }
+        }
+        return 255;
+    }
+
+    /**
+     * Tells the filter that the last frame it accepted decoded, which calibrates the sharpness
+     * threshold. With several decoding threads the frame that decoded may be a little older, which
+     * makes no practical difference to the floor.
+     * <p>
+     * The floor follows the blurriest decoded frames: it drops straight to any frame blurrier than it
+     * and only creeps up while every decoded frame is sharper. Judging by the average instead would
+     * feed on itself, since only frames above the threshold get a chance to decode.
+     */
+    public synchronized void reportDecoded() {
+        framesDecoded.incrementAndGet();
+        final float sharpness = lastSharpness;
+        if (calibrationFrames == 0 || sharpness < decodedFloor) {
+            decodedFloor = sharpness;
+        } else {
+            decodedFloor += (sharpness - decodedFloor) * FLOOR_RISE;
+        }
+        if (calibrationFrames < CALIBRATION_FRAMES) {
+            calibrationFrames++;
+        }
+    }
+
+    /**
+     * @return the sharpness below which frames are currently skipped
+     */
+    public float getSharpnessThreshold() {
+        if (calibrationFrames < CALIBRATION_FRAMES) {
+            return minSharpness;
+        }
+        return Math.max(minSharpness, decodedFloor * calibrationRatio);
+    }
+
+    public long getFramesChecked() {
+        return framesChecked.get();
+    }
+
+    public long getFramesSkipped() {
+        return skippedExposure.get() + skippedContrast.get() + skippedSharpness.get();
+    }
+
+    public long getSkippedForExposure() {
+        return skippedExposure.get();
+    }
+
+    public long getSkippedForContrast() {
+        return skippedContrast.get();
+    }
+
+    public long getSkippedForSharpness() {
+        return skippedSharpness.get();
+    }
+
+    /**
+     * @return accepted frames which then decoded, as reported through {@link #reportDecoded}
+     */
+    public long getFramesDecoded() {
+        return framesDecoded.get();
+    }
+
+    @Override
+    public String toString() {
+        return "FrameQualityFilter{checked=" + getFramesChecked()
+                + ", skipped=" + getFramesSkipped()
+                + " (exposure=" + getSkippedForExposure()
+                + ", contrast=" + getSkippedForContrast()
+                + ", sharpness=" + getSkippedForSharpness()
+                + "), decoded=" + getFramesDecoded()
+                + ", sharpnessThreshold=" + getSharpnessThreshold() + '}';
+    }
+
+    public static final class Builder {
+
+        private int minExposure = 8;
+        private int maxExposure = 248;
+        private int minContrast = 16;
+        private float minSharpness = 1f;
+        private float calibrationRatio = 0.5f;
+        private int probeInterval = 15;
+
+        /**
+         * Frames whose mean luminance is outside this range are skipped. Defaults to 8..248.
+         */
+        public Builder setExposureRange(int minExposure, int maxExposure) {
+            this.minExposure = minExposure;
+            this.maxExposure = maxExposure;
+            return this;
+        }
+
+        /**
+         * Frames whose 5th to 95th percentile luminance spread is below this are skipped.
+         * Defaults to 16.
+         */
+        public Builder setMinContrast(int minContrast) {
+            this.minContrast = minContrast;
+            return this;
+        }
+
+        /**
+         * Frames whose mean absolute gradient is below this are always skipped, calibrated or not.
+         * Defaults to 1.
+         */
+        public Builder setMinSharpness(float minSharpness) {
+            this.minSharpness = minSharpness;
+            return this;
+        }
+
+        /**
+         * Once calibrated, frames less sharp than this fraction of the blurriest recently decoded
+         * frames are skipped. 0 turns calibration off. Defaults to 0.5.
+         */
+        public Builder setCalibrationRatio(float calibrationRatio) {
+            this.calibrationRatio = calibrationRatio;
+            return this;
+        }
+
+        /**
+         * Every {@code probeInterval}th frame is decoded regardless of its score. Defaults to 15.
+         */
+        public Builder setProbeInterval(int probeInterval) {
+            if (probeInterval < 1) {
+                throw new IllegalArgumentException("probeInterval must be at least 1");
+            }
+            this.probeInterval = probeInterval;
+            return this;
+        }
+
+        public FrameQualityFilter build() {
+            return new FrameQualityFilter(this);
+        }
+
+    }
+
+}
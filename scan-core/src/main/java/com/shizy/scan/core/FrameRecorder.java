@@ -0,0 +1,125 @@
+package com.shizy.scan.core;
+
+import java.io.Closeable;
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.FileChannel;
+
+/**
+ * Appends frames to a sequence file which {@link FrameSequence} can map and replay.
+ * <p>
+ * Layout, all numbers little-endian:
+ * <pre>
+ * file header   magic "CSFR", version, frame count, reserved, index offset (long), reserved (long)
+ * frame record  width, height, row stride, pixel stride, rotation, data length, timestamp (long),
+ *               followed by the luminance plane exactly as captured, strides and all
+ * index         one long per frame, the offset of its record
+ * </pre>
+ * The frame count and index are only written by {@link #close()}. A file whose recording was cut
+ * short still replays, {@link FrameSequence} then finds the records by walking the file.
+ */
+public final class FrameRecorder implements Closeable {
+
+    static final int MAGIC = 0x52465343; // "CSFR"
+    static final int VERSION = 1;
+    static final int FILE_HEADER_SIZE = 32;
+    static final int FRAME_HEADER_SIZE = 32;
+
+    private final RandomAccessFile file;
+    private final FileChannel channel;
+    private final ByteBuffer header = ByteBuffer.allocateDirect(FRAME_HEADER_SIZE).order(ByteOrder.LITTLE_ENDIAN);
+    private long[] offsets = new long[64];
+    private int frameCount;
+    private boolean closed;
+
+    public FrameRecorder(File file) throws IOException {
+        this.file = new RandomAccessFile(file, "rw");
+        this.file.setLength(0);
+        this.channel = this.file.getChannel();
+        writeFileHeader(0, 0L);
+        channel.position(FILE_HEADER_SIZE);
+    }
+
+    /**
+     * Writes the whole frame, ignoring its crop, so that replays can try other crops.
+     */
+    public synchronized void record(Frame frame) throws IOException {
+        if (closed) {
+            throw new IOException("Recorder is closed");
+        }
+        final int dataLength = (frame.getHeight() - 1) * frame.getRowStride()
+                + (frame.getWidth() - 1) * frame.getPixelStride() + 1;
+
+        if (frameCount == offsets.length) {
+            final long[] grown = new long[offsets.length * 2];
+            System.arraycopy(offsets, 0, grown, 0, frameCount);
+            offsets = grown;
+        }
+        offsets[frameCount++] = channel.position();
+
+        header.clear();
+        header.putInt(frame.getWidth())
+                .putInt(frame.getHeight())
+                .putInt(frame.getRowStride())
+                .putInt(frame.getPixelStride())
+                .putInt(frame.getRotationDegrees())
+                .putInt(dataLength)
+                .putLong(frame.getTimestampNanos());
+        header.flip();
+        writeFully(header);
+
+        final ByteBuffer data = frame.getBuffer().duplicate();
+        data.clear();
+        data.limit(dataLength);
+        writeFully(data);
+    }
+
+    public synchronized int getFrameCount() {
+        return frameCount;
+    }
+
+    @Override
+    public synchronized void close() throws IOException {
+        if (closed) {
+            return;
+        }
+        closed = true;
+        try {
+            final long indexOffset = channel.position();
+            final ByteBuffer index = ByteBuffer.allocate(frameCount * 8).order(ByteOrder.LITTLE_ENDIAN);
+            for (int i = 0; i < frameCount; i++) {
+                index.putLong(offsets[i]);
+            }
+            index.flip();
+            writeFully(index);
+            writeFileHeader(frameCount, indexOffset);
+        } finally {
+            file.close();
+        }
+    }
+
+    private void writeFileHeader(int frameCount, long indexOffset) throws IOException {
+        final ByteBuffer fileHeader = ByteBuffer.allocate(FILE_HEADER_SIZE).order(ByteOrder.LITTLE_ENDIAN);
+        fileHeader.putInt(MAGIC)
+                .putInt(VERSION)
+                .putInt(frameCount)
+                .putInt(0)
+                .putLong(indexOffset)
+                .putLong(0L);
+        fileHeader.flip();
+        // The header sits at the start of the file, so buffer and file positions coincide.
+        while (fileHeader.hasRemaining()) {
+            channel.write(fileHeader, fileHeader.position());
+        }
+    }
+
+    private void writeFully(ByteBuffer buffer) throws IOException {
+        while (buffer.hasRemaining()) {
+            channel.write(buffer);
+        }
+    }
+
+}
@@ -0,0 +1,113 @@
+package com.shizy.scan.core;
+
+import com.google.zxing.Result;
+
+/**
+ * Feeds recorded frames through a {@link FrameDecoder} as fast as it will go, for regression runs
+ * and for tuning decode settings on real captures.
+ * <p>
+ * Replaying the same sequence with and without a {@link FrameQualityFilter} shows how much decode
+ * time the filter saves and whether it costs any decodes.
+ */
+public final class FrameReplayer {
+
+    public interface Listener {
+
+        /**
+         * @param result the decoded result, or {@code null} if the frame did not decode
+         */
+        void onFrame(int index, Frame frame, Result result);
+
+    }
+
+    /**
+     * Totals of one replay.
+     */
+    public static final class Report {
+
+        private final int frames;
+        private final int decoded;
+        private final int skipped;
+        private final long elapsedNanos;
+
+        Report(int frames, int decoded, int skipped, long elapsedNanos) {
+            this.frames = frames;
+            this.decoded = decoded;
+            this.skipped = skipped;
+            this.elapsedNanos = elapsedNanos;
+        }
+
+        public int getFrames() {
+            return frames;
+        }
+
+        public int getDecoded() {
+            return decoded;
+        }
+
+        /**
+         * @return frames rejected by the quality filter without being decoded
+         */
+        public int getSkipped() {
+            return skipped;
+        }
+
+        public long getElapsedNanos() {
+            return elapsedNanos;
+        }
+
+        @Override
+        public String toString() {
+            return "Report{frames=" + frames
+                    + ", decoded=" + decoded
+                    + ", skipped=" + skipped
+                    + ", nsPerFrame=" + (frames > 0 ? elapsedNanos / frames : 0) + '}';
+        }
+
+    }
+
+    private final FrameDecoder decoder;
+    private final FrameQualityFilter qualityFilter;
+
+    public FrameReplayer(FrameDecoder decoder) {
+        this(decoder, null);
+    }
+
+    /**
+     * @param qualityFilter frames it rejects are reported as not decoded, or {@code null} to decode
+     *                      every frame
+     */
+    public FrameReplayer(FrameDecoder decoder, FrameQualityFilter qualityFilter) {
+        this.decoder = decoder;
+        this.qualityFilter = qualityFilter;
+    }
+
+    /**
+     * @param listener may be {@code null} when only the report is of interest
+     */
+    public Report replay(FrameSequence sequence, Listener listener) {
+        int decoded = 0;
+        int skipped = 0;
+        final long start = System.nanoTime();
+        for (int i = 0; i < sequence.size(); i++) {
+            final Frame frame = sequence.get(i);
+            Result result = null;
+            if (qualityFilter == null || qualityFilter.accept(frame)) {
+                result = decoder.decode(frame);
+            } else {
+                skipped++;
+            }
+            if (result != null) {
+                decoded++;
+                if (qualityFilter != null) {
+                    qualityFilter.reportDecoded();
+                }
+            }
+            if (listener != null) {
+                listener.onFrame(i, frame, result);
+            }
+        }
+        return new Report(sequence.size(), decoded, skipped, System.nanoTime() - start);
+    }
+
+}
@@ -0,0 +1,105 @@
+package com.shizy.scan.core;
+
+import java.io.Closeable;
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+
+/**
+ * A sequence file written by {@link FrameRecorder}, memory-mapped for reading. Frames share the
+ * mapping, nothing is copied.
+ */
+public final class FrameSequence implements Closeable {
+
+    private final RandomAccessFile file;
+    private final MappedByteBuffer mapping;
+    private final long[] offsets;
+
+    public FrameSequence(File file) throws IOException {
+        this.file = new RandomAccessFile(file, "r");
+        try {
+            final FileChannel channel = this.file.getChannel();
+            if (channel.size() > Integer.MAX_VALUE) {
+                throw new IOException("Sequence files are limited to 2 GB: " + file);
+            }
+            mapping = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+            mapping.order(ByteOrder.LITTLE_ENDIAN);
+            if (mapping.limit() < FrameRecorder.FILE_HEADER_SIZE
+                    || mapping.getInt(0) != FrameRecorder.MAGIC
+                    || mapping.getInt(4) != FrameRecorder.VERSION) {
+                throw new IOException("Not a frame sequence: " + file);
+            }
+            final int frameCount = mapping.getInt(8);
+            final long indexOffset = mapping.getLong(16);
+            offsets = indexOffset > 0 ? readIndex(frameCount, (int) indexOffset) : scanRecords();
+        } catch (IOException | RuntimeException e) {
+            this.file.close();
+            throw e;
+        }
+    }
+
+    private long[] readIndex(int frameCount, int indexOffset) {
+        final long[] offsets = new long[frameCount];
+        for (int i = 0; i < frameCount; i++) {
+            offsets[i] = mapping.getLong(indexOffset + i * 8);
+        }
+        return offsets;
+    }
+
+    /**
+     * The recording was not closed properly, so there is no index. Walk the records instead and
+     * stop at the first one that was only partly written.
+     */
+    private long[] scanRecords() {
+        long[] offsets = new long[64];
+        int count = 0;
+        int offset = FrameRecorder.FILE_HEADER_SIZE;
+        final int end = mapping.limit();
+        while (end - offset >= FrameRecorder.FRAME_HEADER_SIZE) {
+            final int dataLength = mapping.getInt(offset + 20);
+            if (dataLength <= 0 || dataLength > end - offset - FrameRecorder.FRAME_HEADER_SIZE) {
+                break;
+            }
+            if (count == offsets.length) {
+                final long[] grown = new long[offsets.length * 2];
+                System.arraycopy(offsets, 0, grown, 0, count);
+                offsets = grown;
+            }
+            offsets[count++] = offset;
+            offset += FrameRecorder.FRAME_HEADER_SIZE + dataLength;
+        }
+        final long[] result = new long[count];
+        System.arraycopy(offsets, 0, result, 0, count);
+        return result;
+    }
+
+    public int size() {
+        return offsets.length;
+    }
+
+    public Frame get(int index) {
+        final int offset = (int) offsets[index];
+        final int width = mapping.getInt(offset);
+        final int height = mapping.getInt(offset + 4);
+        final int rowStride = mapping.getInt(offset + 8);
+        final int pixelStride = mapping.getInt(offset + 12);
+        final int rotation = mapping.getInt(offset + 16);
+        final int dataLength = mapping.getInt(offset + 20);
+        final long timestamp = mapping.getLong(offset + 24);
+
+        final ByteBuffer data = mapping.duplicate();
+        data.position(offset + FrameRecorder.FRAME_HEADER_SIZE);
+        data.limit(offset + FrameRecorder.FRAME_HEADER_SIZE + dataLength);
+        return new Frame(data.slice(), width, height, rowStride, pixelStride, rotation, timestamp);
+    }
+
+    @Override
+    public void close() throws IOException {
+        file.close();
+    }
+
+}
@@ -0,0 +1,108 @@
+package com.shizy.scan.core;
+
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * Records durations into fixed log-linear buckets, the way HdrHistogram does: values below 32 are
+ * counted exactly, and above that each power of two is split into 16 buckets, which keeps every
+ * bucket within about 6% of the values it holds. Recording never allocates and may happen from any
+ * number of threads; values above about half an hour land in the last bucket.
+ * <p>
+ * Reads are not atomic with respect to concurrent recording, so a percentile taken while frames are
+ * being decoded may miss the last few values. That is fine for monitoring.
+ */
+public final class LatencyHistogram {
+
+    private static final int EXACT_BUCKETS = 32;
+    private static final int SUB_BUCKET_BITS = 4;
+    private static final int SUB_BUCKETS = 1 << SUB_BUCKET_BITS;
+    private static final int MAX_SHIFT = 36;
+    private static final int BUCKET_COUNT = EXACT_BUCKETS + MAX_SHIFT * SUB_BUCKETS;
+
+    private final AtomicLongArray counts = new AtomicLongArray(BUCKET_COUNT);
+    private final AtomicLong count = new AtomicLong();
+    private final AtomicLong sum = new AtomicLong();
+    private final AtomicLong max = new AtomicLong();
+
+    public void record(long nanos) {
+        if (nanos < 0) {
+            nanos = 0;
+        }
+        counts.incrementAndGet(bucketOf(nanos));
+        count.incrementAndGet();
+        sum.addAndGet(nanos);
+        long previous;
+        while (nanos > (previous = max.get()) && !max.compareAndSet(previous, nanos)) {
+            // retry
+        }
+    }
+
+    static int bucketOf(long value) {
+        if (value < EXACT_BUCKETS) {
+            return (int) value;
+        }
+        final int shift = 63 - Long.numberOfLeadingZeros(value) - SUB_BUCKET_BITS;
+        if (shift > MAX_SHIFT) {
+            return BUCKET_COUNT - 1;
+        }
+        final int subBucket = (int) (value >>> shift) - SUB_BUCKETS;
+        return EXACT_BUCKETS + (shift - 1) * SUB_BUCKETS + subBucket;
+    }
+
+    /**
+     * @return the largest value that falls into {@code bucket}
+     */
+    static long highestValueOf(int bucket) {
+        if (bucket < EXACT_BUCKETS) {
+            return bucket;
+        }
+        final int shift = (bucket - EXACT_BUCKETS) / SUB_BUCKETS + 1;
+        final long subBucket = (bucket - EXACT_BUCKETS) % SUB_BUCKETS + SUB_BUCKETS;
+        return ((subBucket + 1) << shift) - 1;
+    }
+
+    public long getCount() {
+        return count.get();
+    }
+
+    public long getMaxNanos() {
+        return max.get();
+    }
+
+    public long getMeanNanos() {
+        final long n = count.get();
+        return n > 0 ? sum.get() / n : 0;
+    }
+
+    /**
+     * @param percentile between 0 and 100
+     * @return the value which {@code percentile} percent of the recorded values do not exceed,
+     * rounded up to its bucket, or 0 if nothing was recorded
+     */
+    public long getValueAtPercentile(double percentile) {
+        final long n = count.get();
+        if (n == 0) {
+            return 0;
+        }
+        final long target = Math.max(1, (long) Math.ceil(n * percentile / 100));
+        long seen = 0;
+        for (int i = 0; i < BUCKET_COUNT; i++) {
+            seen += counts.get(i);
+            if (seen >= target) {
+                return Math.min(highestValueOf(i), max.get());
+            }
+        }
+        return max.get();
+    }
+
+    public void reset() {
+        for (int i = 0; i < BUCKET_COUNT; i++) {
+            counts.set(i, 0);
+        }
+        count.set(0);
+        sum.set(0);
+        max.set(0);
+    }
+
+}
@@ -0,0 +1,162 @@
+package com.shizy.scan.core;
+
+import com.google.zxing.BarcodeFormat;
+import com.google.zxing.Result;
+import com.google.zxing.ResultPoint;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * Collects the distinct codes seen over a run of frames until a target count is reached, e.g. all
+ * the codes on a pallet label.
+ * <p>
+ * Codes are told apart by format and text. Identical codes seen in the same frame are different
+ * physical labels and are tracked separately, by location: each detection is matched with the
+ * nearest track of the same text which is not yet taken in that frame. Across frames the camera
+ * moves, so a detection always joins the nearest existing track of its text.
+ */
+public final class MultiCodeTracker {
+
+    private static final class Track {
+        final BarcodeFormat format;
+        final String text;
+        float x;
+        float y;
+        int lastFrame;
+
+        Track(BarcodeFormat format, String text) {
+            this.format = format;
+            this.text = text;
+        }
+    }
+
+    private final int targetCount;
+    private final List<Track> tracks = new ArrayList<>();
+    private final List<Result> codes = new ArrayList<>();
+    private int frame;
+
+    /**
+     * @param targetCount number of distinct codes after which the tracker is complete
+     */
+    public MultiCodeTracker(int targetCount) {
+        if (targetCount < 1) {
+            throw new IllegalArgumentException("targetCount must be at least 1");
+        }
+        this.targetCount = targetCount;
+    }
+
+    /**
+     * Adds the codes decoded from one frame.
+     *
+     * @return the codes which had not been seen before, in the order they were found
+     */
+    public synchronized List<Result> update(Result[] results) {
+        frame++;
+        List<Result> added = Collections.emptyList();
+        for (Result result : results) {
+            if (codes.size() >= targetCount) {
+                break;
+            }
+            final float x = centerX(result);
+            final float y = centerY(result);
+            Track track = nearestFreeTrack(result, x, y);
+            if (track == null) {
+                track = new Track(result.getBarcodeFormat(), result.getText());
+                tracks.add(track);
+                codes.add(result);
+                if (added.isEmpty()) {
+                    added = new ArrayList<>();
+                }
+                added.add(result);
+            }
+            track.x = x;
+            track.y = y;
+            track.lastFrame = frame;
+        }
+        return added;
+    }
+
+    private Track nearestFreeTrack(Result result, float x, float y) {
+        Track nearest = null;
+        float nearestDistance = Float.MAX_VALUE;
+        for (Track track : tracks) {
+            if (track.lastFrame == frame
+                    || track.format != result.getBarcodeFormat()
+                    || !track.text.equals(result.getText())) {
+                continue;
+            }
+            final float dx = track.x - x;
+            final float dy = track.y - y;
+            final float distance = dx * dx + dy * dy;
+            if (distance < nearestDistance) {
+                nearest = track;
+                nearestDistance = distance;
+            }
+        }
+        return nearest;
+    }
+
+    public synchronized boolean isComplete() {
+        return codes.size() >= targetCount;
+    }
+
+    /**
+     * @param added as returned by {@link #update}
+     * @return whether that update found the last code, true for exactly one update until
+     * {@link #reset}, however many threads update the tracker
+     */
+    public synchronized boolean isCompletedBy(List<Result> added) {
+        return !added.isEmpty() && codes.size() >= targetCount
+                && codes.get(targetCount - 1) == added.get(added.size() - 1);
+    }
+
+    public int getTargetCount() {
+        return targetCount;
+    }
+
+    /**
+     * @return every distinct code found so far
+     */
+    public synchronized List<Result> getCodes() {
+        return new ArrayList<>(codes);
+    }
+
+    public synchronized void reset() {
+        tracks.clear();
+        codes.clear();
+        frame = 0;
+    }
+
+    private static float centerX(Result result) {
+        final ResultPoint[] points = result.getResultPoints();
+        float sum = 0;
+        int count = 0;
+        if (points != null) {
+            for (ResultPoint point : points) {
+                if (point != null) {
+                    sum += point.getX();
+                    count++;
+                }
+            }
+        }
+        return count > 0 ? sum / count : 0;
+    }
+
+    private static float centerY(Result result) {
+        final ResultPoint[] points = result.getResultPoints();
+        float sum = 0;
+        int count = 0;
+        if (points != null) {
+            for (ResultPoint point : points) {
+                if (point != null) {
+                    sum += point.getY();
+                    count++;
+                }
+            }
+        }
+        return count > 0 ? sum / count : 0;
+    }
+
+}
@@ -0,0 +1,242 @@
+package com.shizy.scan.core;
+
+import com.google.zxing.Binarizer;
+import com.google.zxing.LuminanceSource;
+import com.google.zxing.NotFoundException;
+import com.google.zxing.common.BitArray;
+import com.google.zxing.common.BitMatrix;
+import com.google.zxing.common.GlobalHistogramBinarizer;
+
+/**
+ * Same algorithm as ZXing's {@link GlobalHistogramBinarizer}, but all scratch arrays and the
+ * resulting {@link BitMatrix} come from a {@link DecodeContext} instead of being allocated. The time
+ * spent binarizing is added up in the context, and the context's {@link DecodeToken} is checked
+ * before every row or matrix.
+ * <p>
+ * A rotated {@link YPlaneLuminanceSource} is binarized in plane order, straight from the plane, and
+ * only the bits are set at their upright positions; the luminances are never copied rotated.
+ * <p>
+ * Bitmaps derived by the readers (the TRY_HARDER rotation of the 1D readers, the crops of the
+ * multi readers) are binarized the same way through the same context. They may be alive at the same
+ * time as this one, so only their matrix is allocated rather than taken from the context.
+ */
+class PooledGlobalHistogramBinarizer extends Binarizer {
+
+    private static final int LUMINANCE_BITS = 5;
+    private static final int LUMINANCE_SHIFT = 8 - LUMINANCE_BITS;
+
+    final DecodeContext context;
+    /**
+     * Plane to upright pixel mapping of the source, see {@link YPlaneLuminanceSource#uprightMapping}.
+     */
+    final int[] mapping = new int[6];
+    /**
+     * Whether this binarizer was made by {@link #createBinarizer} and must not use the context's
+     * matrix.
+     */
+    private final boolean derived;
+
+    PooledGlobalHistogramBinarizer(LuminanceSource source, DecodeContext context) {
+        this(source, context, false);
+    }
+
+    PooledGlobalHistogramBinarizer(LuminanceSource source, DecodeContext context, boolean derived) {
+        super(source);
+        this.context = context;
+        this.derived = derived;
+    }
+
+    @Override
+    public final BitArray getBlackRow(int y, BitArray row) throws NotFoundException {
+        context.checkCancelled();
+        final long start = System.nanoTime();
+        try {
+            return blackRow(y, row);
+        } finally {
+            context.binarizeNanos += System.nanoTime() - start;
+        }
+    }
+
+    @Override
+    public final BitMatrix getBlackMatrix() throws NotFoundException {
+        context.checkCancelled();
+        final long start = System.nanoTime();
+        try {
+            return blackMatrix();
+        } finally {
+            context.binarizeNanos += System.nanoTime() - start;
+        }
+    }
+
+    // Applies simple sharpening to the row data to improve performance of the 1D Readers.
+    BitArray blackRow(int y, BitArray row) throws NotFoundException {
+        LuminanceSource source = getLuminanceSource();
+        int width = source.getWidth();
+        if (row == null || row.getSize() < width) {
+            row = new BitArray(width);
+        } else {
+            row.clear();
+        }
+
+        byte[] localLuminances = source.getRow(y, context.rowLuminances(width));
+        int[] localBuckets = context.buckets();
+        for (int x = 0; x < width; x++) {
+            localBuckets[(localLuminances[x] & 0xff) >> LUMINANCE_SHIFT]++;
+        }
+        int blackPoint = estimateBlackPoint(localBuckets);
+
+        if (width < 3) {
+            // Special case for very small images
+            for (int x = 0; x < width; x++) {
+                if ((localLuminances[x] & 0xff) < blackPoint) {
+                    row.set(x);
+                }
+            }
+        } else {
+            int left = localLuminances[0] & 0xff;
+            int center = localLuminances[1] & 0xff;
+            for (int x = 1; x < width - 1; x++) {
+                int right = localLuminances[x + 1] & 0xff;
+                // A simple -1 4 -1 box filter with a weight of 2.
+                if (((center * 4) - left - right) / 2 < blackPoint) {
+                    row.set(x);
+                }
+                left = center;
+                center = right;
+            }
+        }
+        return row;
+    }
+
+    // Does not sharpen the data, as this call is intended to only be used by 2D Readers.
+    BitMatrix blackMatrix() throws NotFoundException {
+        LuminanceSource source = getLuminanceSource();
+        int width = source.getWidth();
+        int height = source.getHeight();
+
+        // Quickly calculates the histogram by sampling four rows from the image. This proved to be
+        // more robust on the blackbox tests than sampling a diagonal as we used to do.
+        int[] localBuckets = context.buckets();
+        byte[] rowLuminances = context.rowLuminances(width);
+        for (int y = 1; y < 5; y++) {
+            int row = height * y / 5;
+            byte[] localLuminances = source.getRow(row, rowLuminances);
+            int right = (width * 4) / 5;
+            for (int x = width / 5; x < right; x++) {
+                int pixel = localLuminances[x] & 0xff;
+                localBuckets[pixel >> LUMINANCE_SHIFT]++;
+            }
+        }
+        int blackPoint = estimateBlackPoint(localBuckets);
+
+        // We delay reading the entire image luminance until the black point estimation succeeds.
+        // Although we end up reading four rows twice, it is consistent with our motto of
+        // "fail quickly" which is necessary for continuous scanning.
+        LuminanceSource plane = planeSource(source);
+        int planeWidth = plane.getWidth();
+        byte[] localLuminances = context.luminances(plane);
+        BitMatrix matrix = newMatrix(width, height);
+        int[] m = mapping;
+        for (int y = 0; y < plane.getHeight(); y++) {
+            int offset = y * planeWidth;
+            int u = y * m[1] + m[2];
+            int v = y * m[4] + m[5];
+            for (int x = 0; x < planeWidth; x++, u += m[0], v += m[3]) {
+                int pixel = localLuminances[offset + x] & 0xff;
+                if (pixel < blackPoint) {
+                    matrix.set(u, v);
+                }
+            }
+        }
+        return matrix;
+    }
+
+    /**
+     * @return {@code source} in plane orientation, with {@link #mapping} set to put its pixels
+     * back upright
+     */
+    final LuminanceSource planeSource(LuminanceSource source) {
+        if (source instanceof YPlaneLuminanceSource) {
+            final YPlaneLuminanceSource yPlane = (YPlaneLuminanceSource) source;
+            yPlane.uprightMapping(mapping);
+            return yPlane.unrotated();
+        }
+        mapping[0] = 1;
+        mapping[1] = 0;
+        mapping[2] = 0;
+        mapping[3] = 0;
+        mapping[4] = 1;
+        mapping[5] = 0;
+        return source;
+    }
+
+    /**
+     * @return a cleared matrix of the given size, the context's own unless this binarizer is derived
+     */
+    final BitMatrix newMatrix(int width, int height) {
+        return derived ? new BitMatrix(width, height) : context.matrix(width, height);
+    }
+
+    @Override
+    public Binarizer createBinarizer(LuminanceSource source) {
+        return new PooledGlobalHistogramBinarizer(source, context, true);
+    }
+
+    private static int estimateBlackPoint(int[] buckets) throws NotFoundException {
+        // Find the tallest peak in the histogram.
+        int numBuckets = buckets.length;
+        int maxBucketCount = 0;
+        int firstPeak = 0;
+        int firstPeakSize = 0;
+        for (int x = 0; x < numBuckets; x++) {
+            if (buckets[x] > firstPeakSize) {
+                firstPeak = x;
+                firstPeakSize = buckets[x];
+            }
+            if (buckets[x] > maxBucketCount) {
+                maxBucketCount = buckets[x];
+            }
+        }
+
+        // Find the second-tallest peak which is somewhat far from the tallest peak.
+        int secondPeak = 0;
+        int secondPeakScore = 0;
+        for (int x = 0; x < numBuckets; x++) {
+            int distanceToBiggest = x - firstPeak;
+            // Encourage more distant second peaks by multiplying by square of distance.
+            int score = buckets[x] * distanceToBiggest * distanceToBiggest;
+            if (score > secondPeakScore) {
+                secondPeak = x;
+                secondPeakScore = score;
+            }
+        }
+
+        // Make sure firstPeak corresponds to the black peak.
+        if (firstPeak > secondPeak) {
+            int temp = firstPeak;
+            firstPeak = secondPeak;
+            secondPeak = temp;
+        }
+
+        // If there is too little contrast in the image to pick a meaningful black point, throw rather
+        // than waste time trying to decode the image, and risk false positives.
+        if (secondPeak - firstPeak <= numBuckets / 16) {
+            throw NotFoundException.getNotFoundInstance();
+        }
+
+        // Find a valley between them that is low and closer to the white peak.
+        int bestValley = secondPeak - 1;
+        int bestValleyScore = -1;
+        for (int x = secondPeak - 1; x > firstPeak; x--) {
+            int fromFirst = x - firstPeak;
+            int score = fromFirst * fromFirst * (secondPeak - x) * (maxBucketCount - buckets[x]);
+            if (score > bestValleyScore) {
+                bestValley = x;
+                bestValleyScore = score;
+            }
+        }
+
+        return bestValley << LUMINANCE_SHIFT;
+    }
+
+}
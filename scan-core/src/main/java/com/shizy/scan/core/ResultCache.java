@@ -0,0 +1,95 @@
+package com.shizy.scan.core;
+
+import com.google.zxing.Result;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * Remembers recently reported codes so that continuous scanning reports a code once rather than on
+ * every frame it stays in view.
+ * <p>
+ * Entries expire {@code ttlNanos} after the code was last seen, and every sighting renews the
+ * entry, so a code held in front of the camera is only reported again once it has been out of view
+ * for the whole TTL. At most {@code capacity} codes are remembered, least recently seen go first.
+ */
+public final class ResultCache {
+
+    private final long ttlNanos;
+    private final LinkedHashMap<String, Long> lastSeen;
+
+    private long hits;
+    private long misses;
+    private long evictions;
+
+    public ResultCache(final int capacity, long ttlMillis) {
+        if (capacity < 1) {
+            throw new IllegalArgumentException("capacity must be at least 1");
+        }
+        this.ttlNanos = ttlMillis * 1000000L;
+        this.lastSeen = new LinkedHashMap<String, Long>(capacity * 4 / 3 + 1, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<String, Long> eldest) {
+                if (size() > capacity) {
+                    evictions++;
+                    return true;
+                }
+                return false;
+            }
+        };
+    }
+
+    /**
+     * Records a sighting of {@code result}.
+     *
+     * @return {@code true} if it should be reported, i.e. it was not seen within the TTL
+     */
+    public boolean offer(Result result) {
+        return offer(result, System.nanoTime());
+    }
+
+    public synchronized boolean offer(Result result, long nowNanos) {
+        final String key = result.getBarcodeFormat().name() + ':' + result.getText();
+        final Long previous = lastSeen.put(key, nowNanos);
+        if (previous != null && nowNanos - previous <= ttlNanos) {
+            hits++;
+            return false;
+        }
+        misses++;
+        return true;
+    }
+
+    public synchronized void clear() {
+        lastSeen.clear();
+    }
+
+    /**
+     * @return sightings suppressed because the code was seen recently
+     */
+    public synchronized long getHits() {
+        return hits;
+    }
+
+    /**
+     * @return sightings which were reported
+     */
+    public synchronized long getMisses() {
+        return misses;
+    }
+
+    /**
+     * @return codes forgotten early because the cache was full
+     */
+    public synchronized long getEvictions() {
+        return evictions;
+    }
+
+    @Override
+    public synchronized String toString() {
+        return "ResultCache{size=" + lastSeen.size()
+                + ", hits=" + hits
+                + ", misses=" + misses
+                + ", evictions=" + evictions + '}';
+    }
+
+}
@@ -0,0 +1,284 @@
+package com.shizy.scan.core;
+
+import java.util.ArrayDeque;
+import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.Executor;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * Delivers decoded codes to any number of subscribers, each on its own executor and at its own
+ * pace, without ever making the decoding thread wait for them.
+ * <p>
+ * {@link #publish} only puts the result into a small hand-off queue. A dispatcher thread takes it
+ * from there into the bounded buffer of every subscription, where the subscription's
+ * {@link OverflowPolicy} decides what happens when the subscriber is behind. Each subscription
+ * drains its buffer on its executor, one result at a time and in order.
+ * <p>
+ * Should results come faster than the dispatcher can hand them on, which only a {@code BLOCK}
+ * subscriber falling behind can cause, the oldest waiting results are dropped and counted in
+ * {@link #getDropped()}.
+ */
+public final class ResultStream {
+
+    public interface Subscriber {
+
+        /**
+         * Called on the subscription's executor, never concurrently for one subscription. An
+         * exception is logged and does not stop the deliveries.
+         */
+        void onResult(ScanResult result);
+
+    }
+
+    /**
+     * What a subscription does with a new result while its buffer is full.
+     */
+    public enum OverflowPolicy {
+
+        /**
+         * Drops the oldest buffered result, for subscribers which want recent history, such as a
+         * list on screen.
+         */
+        DROP_OLDEST,
+
+        /**
+         * Keeps only the newest result, whatever the capacity, for subscribers which only care
+         * about the current state, such as a label.
+         */
+        LATEST_ONLY,
+
+        /**
+         * Waits for room instead of dropping from the subscription's buffer, for subscribers such
+         * as a database. The wait happens on the dispatcher thread and holds up the other
+         * subscribers too, never the decoding thread. Delivery is not lossless: while the
+         * dispatcher waits, new results queue up in front of it, and once that queue is full the
+         * oldest are dropped, see {@link ResultStream#getDropped()}.
+         */
+        BLOCK
+    }
+
+    private static final Logger LOG = Logger.getLogger(ResultStream.class.getName());
+
+    private static final int HANDOFF_CAPACITY = 64;
+
+    private final List<Subscription> subscriptions = new CopyOnWriteArrayList<>();
+    private final BlockingQueue<ScanResult> handoff = new ArrayBlockingQueue<>(HANDOFF_CAPACITY);
+    private final AtomicLong published = new AtomicLong();
+    private final AtomicLong dropped = new AtomicLong();
+    private Thread dispatcher;
+    private volatile boolean closed;
+
+    /**
+     * @param executor where {@code subscriber} is called
+     * @param capacity results buffered for this subscriber while it is busy, ignored for
+     *                 {@link OverflowPolicy#LATEST_ONLY}
+     */
+    public synchronized Subscription subscribe(Subscriber subscriber, Executor executor, int capacity,
+                                               OverflowPolicy policy) {
+        if (capacity < 1) {
+            throw new IllegalArgumentException("capacity must be at least 1");
+        }
+        if (closed) {
+            throw new IllegalStateException("closed");
+        }
+        final Subscription subscription = new Subscription(subscriber, executor,
+                policy == OverflowPolicy.LATEST_ONLY ? 1 : capacity, policy);
+        subscriptions.add(subscription);
+        if (dispatcher == null) {
+            dispatcher = new Thread(this::dispatch, "result-stream");
+            dispatcher.setDaemon(true);
+            dispatcher.start();
+        }
+        return subscription;
+    }
+
+    /**
+     * Never blocks. May be called from any thread.
+     */
+    public void publish(ScanResult result) {
+        if (subscriptions.isEmpty() || closed) {
+            return;
+        }
+        published.incrementAndGet();
+        while (!handoff.offer(result)) {
+            if (handoff.poll() != null) {
+                dropped.incrementAndGet();
+            }
+        }
+    }
+
+    private void dispatch() {
+        try {
+            while (!closed) {
+                final ScanResult result = handoff.take();
+                for (Subscription subscription : subscriptions) {
+                    subscription.offer(result);
+                }
+            }
+        } catch (InterruptedException e) {
+            // closed
+        }
+    }
+
+    /**
+     * @return results published while anybody was subscribed
+     */
+    public long getPublished() {
+        return published.get();
+    }
+
+    /**
+     * @return results dropped before reaching any subscription, see the class comment
+     */
+    public long getDropped() {
+        return dropped.get();
+    }
+
+    /**
+     * Cancels every subscription and stops the dispatcher. Results already being delivered finish.
+     */
+    public synchronized void close() {
+        closed = true;
+        for (Subscription subscription : subscriptions) {
+            subscription.cancel();
+        }
+        if (dispatcher != null) {
+            dispatcher.interrupt();
+        }
+    }
+
+    public final class Subscription {
+
+        private final Subscriber subscriber;
+        private final Executor executor;
+        private final int capacity;
+        private final OverflowPolicy policy;
+        private final ArrayDeque<ScanResult> buffer;
+        private final Runnable drainTask = this::drain;
+        private boolean draining;
+        private boolean cancelled;
+        private final AtomicLong delivered = new AtomicLong();
+        private final AtomicLong overflowed = new AtomicLong();
+        private final AtomicLong failed = new AtomicLong();
+
+        Subscription(Subscriber subscriber, Executor executor, int capacity, OverflowPolicy policy) {
+            this.subscriber = subscriber;
+            this.executor = executor;
+            this.capacity = capacity;
+            this.policy = policy;
+            this.buffer = new ArrayDeque<>(capacity);
+        }
+
+        /**
+         * Called on the dispatcher thread.
+         */
+        void offer(ScanResult result) throws InterruptedException {
+            synchronized (this) {
+                if (cancelled) {
+                    return;
+                }
+                if (buffer.size() >= capacity) {
+                    if (policy == OverflowPolicy.BLOCK) {
+                        while (buffer.size() >= capacity && !cancelled) {
+                            wait();
+                        }
+                        if (cancelled) {
+                            return;
+                        }
+                    } else {
+                        // LATEST_ONLY has a capacity of 1, so this replaces the buffered result.
+                        buffer.pollFirst();
+                        overflowed.incrementAndGet();
+                    }
+                }
+                buffer.addLast(result);
+                if (draining) {
+                    return;
+                }
+                draining = true;
+            }
+            try {
+                executor.execute(drainTask);
+            } catch (RejectedExecutionException e) {
+                // The executor was shut down, there is nobody left to deliver to.
+                cancel();
+            }
+        }
+
+        private void drain() {
+            while (true) {
+                final ScanResult result;
+                synchronized (this) {
+                    result = cancelled ? null : buffer.pollFirst();
+                    if (result == null) {
+                        draining = false;
+                        return;
+                    }
+                    // Room for a BLOCK offer waiting on the dispatcher thread.
+                    notifyAll();
+                }
+                try {
+                    subscriber.onResult(result);
+                    delivered.incrementAndGet();
+                } catch (RuntimeException e) {
+                    // Carry on with the results behind it, they would be stuck until the next one.
+                    failed.incrementAndGet();
+                    LOG.log(Level.WARNING, "Subscriber failed on " + result, e);
+                }
+            }
+        }
+
+        /**
+         * Stops deliveries; results still buffered are dropped. May be called from any thread,
+         * including the subscriber's.
+         */
+        public void cancel() {
+            subscriptions.remove(this);
+            synchronized (this) {
+                cancelled = true;
+                buffer.clear();
+                notifyAll();
+            }
+        }
+
+        public OverflowPolicy getPolicy() {
+            return policy;
+        }
+
+        public long getDelivered() {
+            return delivered.get();
+        }
+
+        /**
+         * @return results dropped or replaced because the subscriber was behind, always 0 for
+         * {@link OverflowPolicy#BLOCK}
+         */
+        public long getOverflowed() {
+            return overflowed.get();
+        }
+
+        /**
+         * @return results on which the subscriber threw
+         */
+        public long getFailed() {
+            return failed.get();
+        }
+
+        @Override
+        public String toString() {
+            return "Subscription{policy=" + policy
+                    + ", capacity=" + capacity
+                    + ", delivered=" + getDelivered()
+                    + ", overflowed=" + getOverflowed()
+                    + ", failed=" + getFailed() + '}';
+        }
+
+    }
+
+}
@@ -0,0 +1,734 @@
+package com.shizy.scan.core;
+
+import com.google.zxing.BarcodeFormat;
+import com.google.zxing.Result;
+
+import java.io.Closeable;
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.Charset;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+import java.util.zip.CRC32;
+
+/**
+ * Every code ever scanned, kept across sessions, with constant time "seen before?" lookups.
+ * <p>
+ * Scans are appended to a memory-mapped log, {@value #LOG_FILE}, one checksummed record each, and
+ * indexed by their text in an open-addressing hash table, {@value #INDEX_FILE}, memory-mapped as
+ * well. {@link #record} only queues the scan: a writer thread of its own appends whatever has
+ * queued up in one batch, forces the log to disk and only then points the index at the new
+ * records, so the index never refers to a record which could be lost.
+ * <p>
+ * The index header holds the log offset up to which the index is complete. On opening, the log is
+ * replayed from there, up to the first record which is incomplete or fails its checksum, which is
+ * where a crash interrupted writing; the next record overwrites it.
+ * <p>
+ * Lookups may be called from any thread, also while the writer is busy, and see queued scans as
+ * well as written ones.
+ * <p>
+ * The log is never compacted and cannot grow past 2 GB, which is some tens of millions of scans;
+ * record a code once per sighting, not once per frame it was decoded in. Once a write fails, the
+ * log being full included, the history stops recording for good and {@link #getFailure()} tells
+ * why.
+ */
+public final class ScanHistory implements Closeable {
+
+    static final String LOG_FILE = "history.log";
+    static final String INDEX_FILE = "history.idx";
+
+    private static final Charset UTF_8 = Charset.forName("UTF-8");
+
+    private static final int LOG_MAGIC = 0x53484c47;
+    private static final int INDEX_MAGIC = 0x53484958;
+    private static final int VERSION = 1;
+
+    // Log: magic, version, 8 bytes reserved, then records of payload length, CRC32 of the payload
+    // and the payload itself: time, format and UTF-8 text.
+    private static final int LOG_HEADER_SIZE = 16;
+    private static final int RECORD_HEADER_SIZE = 8;
+    private static final int PAYLOAD_HEADER_SIZE = 9;
+    private static final int MAX_PAYLOAD_SIZE = 1 << 16;
+    private static final int INITIAL_LOG_SIZE = 1 << 20;
+    private static final int MAX_LOG_GROWTH = 64 << 20;
+
+    // Index: magic, version, capacity, distinct codes, checkpoint and record count, then slots of
+    // a 64-bit text hash, 0 for an empty slot, and the offset of the code's latest record.
+    private static final int INDEX_HEADER_SIZE = 32;
+    private static final int SLOT_SIZE = 16;
+    private static final int INITIAL_INDEX_CAPACITY = 1 << 14;
+
+    private static final int MAX_BATCH = 512;
+
+    private static final class Entry {
+        final String text;
+        final BarcodeFormat format;
+        final long timeMillis;
+        final CountDownLatch written;
+
+        Entry(String text, BarcodeFormat format, long timeMillis, CountDownLatch written) {
+            this.text = text;
+            this.format = format;
+            this.timeMillis = timeMillis;
+            this.written = written;
+        }
+    }
+
+    private static final Entry CLOSE = new Entry(null, null, 0, null);
+
+    private final File directory;
+    private final BlockingQueue<Entry> queue = new LinkedBlockingQueue<>();
+    private final ConcurrentHashMap<String, Entry> pending = new ConcurrentHashMap<>();
+    // Guards the index slots and the swapping of either mapping; the writer appends to the log
+    // outside of it, beyond anything the index points at.
+    private final ReentrantReadWriteLock lock = new ReentrantReadWriteLock();
+    private final AtomicLong recorded = new AtomicLong();
+    private final CRC32 crc = new CRC32();
+    private final Thread writer;
+
+    private FileChannel logChannel;
+    private MappedByteBuffer log;
+    private ByteBuffer logWriter;
+    private int logEnd;
+    private FileChannel indexChannel;
+    private MappedByteBuffer index;
+    private int indexMask;
+    private int distinct;
+    private long records;
+    private byte[] scratch = new byte[256];
+    private final int[] batchOffsets = new int[MAX_BATCH];
+
+    private volatile boolean closed;
+    private volatile IOException failure;
+    private final Runnable afterIndexGrowth;
+
+    private ScanHistory(File directory, Runnable afterIndexGrowth) {
+        this.directory = directory;
+        this.afterIndexGrowth = afterIndexGrowth;
+        this.writer = new Thread(this::write, "scan-history");
+        // Dying with the process is what recovery is for.
+        this.writer.setDaemon(true);
+    }
+
+    /**
+     * Opens the history kept in {@code directory}, creating it if need be, and replays whatever the
+     * index is missing. Does disk I/O, keep it off the main thread.
+     */
+    public static ScanHistory open(File directory) throws IOException {
+        return open(directory, null);
+    }
+
+    /**
+     * @param afterIndexGrowth run by the writer once a grown index has replaced the old one, or
+     *                         {@code null}. Tests throw from it to stop the writer right there, as if
+     *                         the process had died.
+     */
+    static ScanHistory open(File directory, Runnable afterIndexGrowth) throws IOException {
+        if (!directory.isDirectory() && !directory.mkdirs()) {
+            throw new IOException("Cannot create " + directory);
+        }
+        final ScanHistory history = new ScanHistory(directory, afterIndexGrowth);
+        try {
+            history.openLog();
+            history.openIndex();
+        } catch (IOException | RuntimeException e) {
+            history.closeChannels();
+            throw e;
+        }
+        history.writer.start();
+        return history;
+    }
+
+    /**
+     * Queues a scan, timed by the result's timestamp. Never blocks; may be called from any thread.
+     */
+    public void record(Result result) {
+        record(result.getText(), result.getBarcodeFormat(), result.getTimestamp());
+    }
+
+    /**
+     * Queues a scan. Never blocks; may be called from any thread. Ignored once closed or after a
+     * write failed, see {@link #flush}.
+     */
+    public void record(String text, BarcodeFormat format, long timeMillis) {
+        if (closed || failure != null || text == null) {
+            return;
+        }
+        final Entry entry = new Entry(text, format, timeMillis, null);
+        pending.put(text, entry);
+        recorded.incrementAndGet();
+        queue.offer(entry);
+    }
+
+    /**
+     * @return whether a code with this text was ever recorded. Constant time, may be called from
+     * any thread.
+     */
+    public boolean contains(String text) {
+        if (pending.containsKey(text)) {
+            return true;
+        }
+        final long hash = hash(text);
+        lock.readLock().lock();
+        try {
+            return find(hash, text) >= 0;
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    /**
+     * @return time of the latest scan of a code with this text, or -1 if it was never recorded
+     */
+    public long lastSeen(String text) {
+        final Entry queued = pending.get(text);
+        if (queued != null) {
+            return queued.timeMillis;
+        }
+        final long hash = hash(text);
+        lock.readLock().lock();
+        try {
+            final int slot = find(hash, text);
+            if (slot < 0) {
+                return -1;
+            }
+            final int record = (int) index.getLong(slotOffset(slot) + 8);
+            return log.getLong(record + RECORD_HEADER_SIZE);
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    /**
+     * @return the number of distinct codes written so far
+     */
+    public int size() {
+        lock.readLock().lock();
+        try {
+            return distinct;
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    /**
+     * @return scans written so far, repeats included
+     */
+    public long getRecordCount() {
+        lock.readLock().lock();
+        try {
+            return records;
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    /**
+     * @return scans recorded since opening, written or not
+     */
+    public long getRecordedSinceOpen() {
+        return recorded.get();
+    }
+
+    /**
+     * @return the write failure which stopped recording, or {@code null} while recording works
+     */
+    public IOException getFailure() {
+        return failure;
+    }
+
+    /**
+     * Waits until everything recorded so far is on disk.
+     *
+     * @throws IOException if writing failed; the history stops recording then
+     */
+    public void flush() throws IOException {
+        final IOException failed = failure;
+        if (failed != null) {
+            throw failed;
+        }
+        if (closed) {
+            return;
+        }
+        final CountDownLatch written = new CountDownLatch(1);
+        queue.offer(new Entry(null, null, 0, written));
+        try {
+            written.await();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IOException("Interrupted", e);
+        }
+        if (failure != null) {
+            throw failure;
+        }
+    }
+
+    /**
+     * Writes what is still queued and closes the files.
+     */
+    @Override
+    public void close() throws IOException {
+        if (closed) {
+            return;
+        }
+        closed = true;
+        queue.offer(CLOSE);
+        try {
+            writer.join();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        if (failure != null) {
+            throw failure;
+        }
+    }
+
+    private void openLog() throws IOException {
+        logChannel = new RandomAccessFile(new File(directory, LOG_FILE), "rw").getChannel();
+        final long size = logChannel.size();
+        if (size > Integer.MAX_VALUE) {
+            throw new IOException("Log too large: " + size);
+        }
+        mapLog((int) Math.max(size, INITIAL_LOG_SIZE));
+        if (size < LOG_HEADER_SIZE) {
+            log.putInt(0, LOG_MAGIC);
+            log.putInt(4, VERSION);
+        } else if (log.getInt(0) != LOG_MAGIC || log.getInt(4) != VERSION) {
+            throw new IOException("Not a scan history log: " + directory);
+        }
+    }
+
+    private void mapLog(int size) throws IOException {
+        final MappedByteBuffer mapped = logChannel.map(FileChannel.MapMode.READ_WRITE, 0, size);
+        lock.writeLock().lock();
+        try {
+            log = mapped;
+        } finally {
+            lock.writeLock().unlock();
+        }
+        logWriter = mapped.duplicate();
+    }
+
+    private void openIndex() throws IOException {
+        final File file = new File(directory, INDEX_FILE);
+        indexChannel = new RandomAccessFile(file, "rw").getChannel();
+        long checkpoint = -1;
+        if (indexChannel.size() >= INDEX_HEADER_SIZE) {
+            final MappedByteBuffer mapped = indexChannel.map(FileChannel.MapMode.READ_WRITE, 0, indexChannel.size());
+            final int capacity = mapped.getInt(8);
+            if (mapped.getInt(0) == INDEX_MAGIC && mapped.getInt(4) == VERSION
+                    && capacity > 0 && Integer.bitCount(capacity) == 1
+                    && mapped.capacity() >= INDEX_HEADER_SIZE + (long) capacity * SLOT_SIZE) {
+                index = mapped;
+                indexMask = capacity - 1;
+                distinct = mapped.getInt(12);
+                checkpoint = mapped.getLong(16);
+                records = mapped.getLong(24);
+            }
+        }
+        if (checkpoint < LOG_HEADER_SIZE || checkpoint > log.capacity()) {
+            // New, or unusable: rebuild from the whole log.
+            indexChannel.close();
+            indexChannel = createIndex(file, INITIAL_INDEX_CAPACITY);
+            index = indexChannel.map(FileChannel.MapMode.READ_WRITE, 0, indexChannel.size());
+            indexMask = INITIAL_INDEX_CAPACITY - 1;
+            distinct = 0;
+            records = 0;
+            checkpoint = LOG_HEADER_SIZE;
+        }
+        logEnd = (int) checkpoint;
+        if (replay() > 0) {
+            // Slots of the replayed records may have been written before the crash already, the
+            // stored count cannot tell.
+            distinct = countSlots();
+            checkpoint();
+        }
+    }
+
+    /**
+     * Indexes the valid records from {@link #logEnd} on, and moves it past them.
+     *
+     * @return the number of records replayed
+     */
+    private int replay() throws IOException {
+        int count = 0;
+        while (true) {
+            final int length = validRecordLength(logEnd);
+            if (length < 0) {
+                break;
+            }
+            final byte[] text = new byte[length - PAYLOAD_HEADER_SIZE];
+            final ByteBuffer reader = log.duplicate();
+            reader.position(logEnd + RECORD_HEADER_SIZE + PAYLOAD_HEADER_SIZE);
+            reader.get(text);
+            ensureIndexCapacity(distinct + 1, logEnd);
+            insert(new String(text, UTF_8), logEnd);
+            logEnd += RECORD_HEADER_SIZE + length;
+            records++;
+            count++;
+        }
+        return count;
+    }
+
+    /**
+     * @return the payload length of the record at {@code offset}, or -1 if there is no complete
+     * record with a matching checksum
+     */
+    private int validRecordLength(int offset) {
+        if (offset > log.capacity() - RECORD_HEADER_SIZE) {
+            return -1;
+        }
+        final int length = log.getInt(offset);
+        if (length < PAYLOAD_HEADER_SIZE || length > MAX_PAYLOAD_SIZE
+                || length > log.capacity() - offset - RECORD_HEADER_SIZE) {
+            return -1;
+        }
+        final byte[] payload = scratch(length);
+        final ByteBuffer reader = log.duplicate();
+        reader.position(offset + RECORD_HEADER_SIZE);
+        reader.get(payload, 0, length);
+        crc.reset();
+        crc.update(payload, 0, length);
+        return (int) crc.getValue() == log.getInt(offset + 4) ? length : -1;
+    }
+
+    private static FileChannel createIndex(File file, int capacity) throws IOException {
+        final RandomAccessFile raf = new RandomAccessFile(file, "rw");
+        raf.setLength(0);
+        raf.setLength(INDEX_HEADER_SIZE + (long) capacity * SLOT_SIZE);
+        raf.writeInt(INDEX_MAGIC);
+        raf.writeInt(VERSION);
+        raf.writeInt(capacity);
+        return raf.getChannel();
+    }
+
+    private void write() {
+        final List<Entry> batch = new ArrayList<>(MAX_BATCH);
+        boolean running = true;
+        while (running) {
+            try {
+                batch.add(queue.take());
+            } catch (InterruptedException e) {
+                break;
+            }
+            // Whatever queued up while the last batch was being forced goes into this one.
+            queue.drainTo(batch, MAX_BATCH - 1);
+            try {
+                if (failure == null) {
+                    writeBatch(batch);
+                }
+            } catch (IOException | RuntimeException e) {
+                failure = e instanceof IOException ? (IOException) e : new IOException(e);
+                pending.clear();
+            }
+            for (Entry entry : batch) {
+                if (entry == CLOSE) {
+                    running = false;
+                } else if (entry.written != null) {
+                    entry.written.countDown();
+                }
+            }
+            batch.clear();
+        }
+        closeChannels();
+    }
+
+    private void writeBatch(List<Entry> batch) throws IOException {
+        final int[] offsets = batchOffsets;
+        final int batchStart = logEnd;
+        int appended = 0;
+        for (int i = 0; i < batch.size(); i++) {
+            final Entry entry = batch.get(i);
+            offsets[i] = entry.text != null ? append(entry) : -1;
+            if (offsets[i] >= 0) {
+                appended++;
+            }
+        }
+        if (appended == 0) {
+            return;
+        }
+        // The records must be on disk before the index may point at them.
+        log.force();
+        // The batch is not in the index yet, a grown one only covers the log up to its start.
+        ensureIndexCapacity(distinct + appended, batchStart);
+        lock.writeLock().lock();
+        try {
+            for (int i = 0; i < batch.size(); i++) {
+                if (offsets[i] < 0) {
+                    continue;
+                }
+                final Entry entry = batch.get(i);
+                insert(entry.text, offsets[i]);
+                records++;
+                pending.remove(entry.text, entry);
+            }
+        } finally {
+            lock.writeLock().unlock();
+        }
+        index.force();
+        checkpoint();
+    }
+
+    /**
+     * @return the offset of the new record, or -1 if the entry was not written
+     */
+    private int append(Entry entry) throws IOException {
+        final byte[] text = entry.text.getBytes(UTF_8);
+        final int length = PAYLOAD_HEADER_SIZE + text.length;
+        if (length > MAX_PAYLOAD_SIZE) {
+            // No code holds that much, do not let one break the log.
+            pending.remove(entry.text, entry);
+            return -1;
+        }
+        final int size = RECORD_HEADER_SIZE + length;
+        if (logEnd > log.capacity() - size) {
+            growLog(size);
+        }
+        final byte[] record = scratch(size);
+        final ByteBuffer wrapped = ByteBuffer.wrap(record);
+        wrapped.putInt(length);
+        wrapped.putInt(0);
+        wrapped.putLong(entry.timeMillis);
+        wrapped.put(entry.format != null ? (byte) entry.format.ordinal() : (byte) -1);
+        wrapped.put(text);
+        crc.reset();
+        crc.update(record, RECORD_HEADER_SIZE, length);
+        wrapped.putInt(4, (int) crc.getValue());
+        final int offset = logEnd;
+        logWriter.position(offset);
+        logWriter.put(record, 0, size);
+        logEnd += size;
+        return offset;
+    }
+
+    private void growLog(int needed) throws IOException {
+        final long size = Math.min((long) Integer.MAX_VALUE,
+                log.capacity() + Math.max(needed, Math.min(log.capacity(), MAX_LOG_GROWTH)));
+        if (size - logEnd < needed) {
+            throw new IOException("Scan history log is full");
+        }
+        log.force();
+        mapLog((int) size);
+    }
+
+    /**
+     * Points the slot of {@code text} at the record at {@code offset}, adding the slot if need be.
+     * Writer thread only, under the write lock once the writer runs; there must be room, see
+     * {@link #ensureIndexCapacity}.
+     */
+    private void insert(String text, int offset) {
+        final long hash = hash(text);
+        final int slot = find(hash, text);
+        if (slot >= 0) {
+            index.putLong(slotOffset(slot) + 8, offset);
+            return;
+        }
+        putSlot(index, indexMask, hash, offset);
+        distinct++;
+    }
+
+    /**
+     * @return the slot holding {@code text}, or -1 if there is none
+     */
+    private int find(long hash, String text) {
+        for (int slot = (int) hash & indexMask; ; slot = (slot + 1) & indexMask) {
+            final int slotOffset = slotOffset(slot);
+            final long slotHash = index.getLong(slotOffset);
+            if (slotHash == 0) {
+                return -1;
+            }
+            if (slotHash == hash && textEquals((int) index.getLong(slotOffset + 8), text)) {
+                return slot;
+            }
+        }
+    }
+
+    private static void putSlot(ByteBuffer index, int mask, long hash, long offset) {
+        for (int slot = (int) hash & mask; ; slot = (slot + 1) & mask) {
+            final int slotOffset = slotOffset(slot);
+            if (index.getLong(slotOffset) == 0) {
+                index.putLong(slotOffset + 8, offset);
+                index.putLong(slotOffset, hash);
+                return;
+            }
+        }
+    }
+
+    private static int slotOffset(int slot) {
+        return INDEX_HEADER_SIZE + slot * SLOT_SIZE;
+    }
+
+    /**
+     * Keeps the index at most half full for {@code count} distinct codes, by rehashing into an index
+     * of more capacity, next to the current one, which it then replaces. Lookups go on in the
+     * current index meanwhile, as only the writer changes it.
+     *
+     * @param indexedEnd offset up to which the current slots cover the log, the checkpoint of the
+     *                   grown index
+     */
+    private void ensureIndexCapacity(int count, int indexedEnd) throws IOException {
+        int capacity = indexMask + 1;
+        while ((long) count * 2 > capacity) {
+            capacity *= 2;
+        }
+        if (capacity == indexMask + 1) {
+            return;
+        }
+        if (capacity <= 0 || INDEX_HEADER_SIZE + (long) capacity * SLOT_SIZE > Integer.MAX_VALUE) {
+            throw new IOException("Scan history index is full");
+        }
+        final File file = new File(directory, INDEX_FILE);
+        final File grown = new File(directory, INDEX_FILE + ".tmp");
+        final FileChannel channel = createIndex(grown, capacity);
+        final MappedByteBuffer mapped = channel.map(FileChannel.MapMode.READ_WRITE, 0, channel.size());
+        final int mask = capacity - 1;
+        for (int slot = 0; slot <= indexMask; slot++) {
+            final long hash = index.getLong(slotOffset(slot));
+            if (hash != 0) {
+                putSlot(mapped, mask, hash, index.getLong(slotOffset(slot) + 8));
+            }
+        }
+        mapped.putInt(12, distinct);
+        mapped.putLong(16, indexedEnd);
+        mapped.putLong(24, records);
+        mapped.force();
+        if (!grown.renameTo(file)) {
+            channel.close();
+            throw new IOException("Cannot replace " + file);
+        }
+        indexChannel.close();
+        indexChannel = channel;
+        lock.writeLock().lock();
+        try {
+            index = mapped;
+            indexMask = mask;
+        } finally {
+            lock.writeLock().unlock();
+        }
+        if (afterIndexGrowth != null) {
+            afterIndexGrowth.run();
+        }
+    }
+
+    private int countSlots() {
+        int count = 0;
+        for (int slot = 0; slot <= indexMask; slot++) {
+            if (index.getLong(slotOffset(slot)) != 0) {
+                count++;
+            }
+        }
+        return count;
+    }
+
+    /**
+     * Records in the index header that it covers the log up to {@link #logEnd}. Written after the
+     * slots were forced, so that a checkpoint on disk never gets ahead of them.
+     */
+    private void checkpoint() {
+        index.putInt(12, distinct);
+        index.putLong(16, logEnd);
+        index.putLong(24, records);
+    }
+
+    /**
+     * @return whether the text of the record at {@code offset} is {@code text}, compared by encoding
+     * {@code text} on the fly rather than decoding the record
+     */
+    private boolean textEquals(int offset, String text) {
+        int position = offset + RECORD_HEADER_SIZE + PAYLOAD_HEADER_SIZE;
+        final int end = offset + RECORD_HEADER_SIZE + log.getInt(offset);
+        for (int i = 0; i < text.length(); i++) {
+            int c = text.charAt(i);
+            if (Character.isHighSurrogate((char) c) && i + 1 < text.length()
+                    && Character.isLowSurrogate(text.charAt(i + 1))) {
+                c = Character.toCodePoint((char) c, text.charAt(++i));
+            } else if (Character.isSurrogate((char) c)) {
+                // What the encoder makes of an unpaired surrogate.
+                c = '?';
+            }
+            final int bytes = c < 0x80 ? 1 : c < 0x800 ? 2 : c < 0x10000 ? 3 : 4;
+            if (end - position < bytes) {
+                return false;
+            }
+            if (bytes == 1) {
+                if (log.get(position++) != (byte) c) {
+                    return false;
+                }
+                continue;
+            }
+            // Lead byte, then continuation bytes of 6 bits each.
+            final int lead = (0xf00 >> bytes) & 0xff | (c >> (6 * (bytes - 1)));
+            if (log.get(position++) != (byte) lead) {
+                return false;
+            }
+            for (int shift = 6 * (bytes - 2); shift >= 0; shift -= 6) {
+                if (log.get(position++) != (byte) (0x80 | ((c >> shift) & 0x3f))) {
+                    return false;
+                }
+            }
+        }
+        return position == end;
+    }
+
+    /**
+     * 64-bit FNV-1a over the characters, finished with the MurmurHash3 mix so that the low bits,
+     * which pick the slot, depend on all of them. Never 0, which marks an empty slot.
+     */
+    static long hash(String text) {
+        long h = 0xcbf29ce484222325L;
+        for (int i = 0; i < text.length(); i++) {
+            h ^= text.charAt(i);
+            h *= 0x100000001b3L;
+        }
+        h ^= h >>> 33;
+        h *= 0xff51afd7ed558ccdL;
+        h ^= h >>> 33;
+        h *= 0xc4ceb9fe1a85ec53L;
+        h ^= h >>> 33;
+        return h != 0 ? h : 1;
+    }
+
+    private byte[] scratch(int size) {
+        if (scratch.length < size) {
+            scratch = new byte[Math.max(size, scratch.length * 2)];
+        }
+        return scratch;
+    }
+
+    private void closeChannels() {
+        try {
+            if (log != null) {
+                log.force();
+            }
+            if (index != null) {
+                index.force();
+            }
+        } catch (RuntimeException e) {
+            // Closing anyway.
+        }
+        closeQuietly(logChannel);
+        closeQuietly(indexChannel);
+    }
+
+    private static void closeQuietly(FileChannel channel) {
+        if (channel == null) {
+            return;
+        }
+        try {
+            channel.close();
+        } catch (IOException e) {
+            // Nothing left to do.
+        }
+    }
+
+}
@@ -0,0 +1,284 @@
+package com.shizy.scan.core;
+
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Latency per {@link ScanStage} and frame counters for a scanning session, recorded without
+ * allocating from any thread. Take a {@link Snapshot} to read them.
+ */
+public final class ScanMetrics {
+
+    private final LatencyHistogram[] histograms;
+    private final AtomicLong framesReceived = new AtomicLong();
+    private final AtomicLong framesDropped = new AtomicLong();
+    private final AtomicLong framesSkipped = new AtomicLong();
+    private final AtomicLong framesDecoded = new AtomicLong();
+    private final AtomicLong framesWhilePaused = new AtomicLong();
+    private final AtomicLong framesCancelled = new AtomicLong();
+    private final AtomicLong framesTimedOut = new AtomicLong();
+    private final AtomicLong startNanos = new AtomicLong(System.nanoTime());
+    private final AtomicLong firstDecodeNanos = new AtomicLong(-1);
+
+    public ScanMetrics() {
+        histograms = new LatencyHistogram[ScanStage.values().length];
+        for (int i = 0; i < histograms.length; i++) {
+            histograms[i] = new LatencyHistogram();
+        }
+    }
+
+    public void record(ScanStage stage, long nanos) {
+        histograms[stage.ordinal()].record(nanos);
+    }
+
+    public LatencyHistogram getHistogram(ScanStage stage) {
+        return histograms[stage.ordinal()];
+    }
+
+    /**
+     * A frame arrived from the camera.
+     */
+    public void frameReceived() {
+        framesReceived.incrementAndGet();
+    }
+
+    /**
+     * A frame was thrown away because the decoder could not keep up.
+     */
+    public void frameDropped() {
+        framesDropped.incrementAndGet();
+    }
+
+    /**
+     * A frame was deliberately not decoded: throttled, outside the viewfinder or too poor.
+     */
+    public void frameSkipped() {
+        framesSkipped.incrementAndGet();
+    }
+
+    /**
+     * A frame arrived while scanning was paused. Pausing should stop frames from coming at all, so
+     * anything but 0 here is camera time, CPU and battery spent for nothing.
+     */
+    public void framePaused() {
+        framesWhilePaused.incrementAndGet();
+    }
+
+    /**
+     * A decode was abandoned half way because scanning stopped or a newer frame decoded first.
+     */
+    public void frameCancelled() {
+        framesCancelled.incrementAndGet();
+    }
+
+    /**
+     * A decode was abandoned half way because it ran out of its time budget.
+     */
+    public void frameTimedOut() {
+        framesTimedOut.incrementAndGet();
+    }
+
+    /**
+     * A frame yielded at least one code.
+     */
+    public void frameDecoded() {
+        framesDecoded.incrementAndGet();
+        firstDecodeNanos.compareAndSet(-1, System.nanoTime() - startNanos.get());
+    }
+
+    /**
+     * Starts the clock for the time to first decode, e.g. when scanning starts.
+     */
+    public void markStart() {
+        startNanos.set(System.nanoTime());
+        firstDecodeNanos.set(-1);
+    }
+
+    public void reset() {
+        for (LatencyHistogram histogram : histograms) {
+            histogram.reset();
+        }
+        framesReceived.set(0);
+        framesDropped.set(0);
+        framesSkipped.set(0);
+        framesDecoded.set(0);
+        framesWhilePaused.set(0);
+        framesCancelled.set(0);
+        framesTimedOut.set(0);
+        markStart();
+    }
+
+    public Snapshot snapshot() {
+        final StageSnapshot[] stages = new StageSnapshot[histograms.length];
+        for (int i = 0; i < stages.length; i++) {
+            stages[i] = new StageSnapshot(ScanStage.values()[i], histograms[i]);
+        }
+        return new Snapshot(framesReceived.get(), framesDropped.get(), framesSkipped.get(), framesDecoded.get(),
+                framesWhilePaused.get(), framesCancelled.get(), framesTimedOut.get(), firstDecodeNanos.get(), stages);
+    }
+
+    /**
+     * Latency summary of one stage.
+     */
+    public static final class StageSnapshot {
+
+        private final ScanStage stage;
+        private final long count;
+        private final long meanNanos;
+        private final long p50Nanos;
+        private final long p90Nanos;
+        private final long p99Nanos;
+        private final long maxNanos;
+
+        StageSnapshot(ScanStage stage, LatencyHistogram histogram) {
+            this.stage = stage;
+            this.count = histogram.getCount();
+            this.meanNanos = histogram.getMeanNanos();
+            this.p50Nanos = histogram.getValueAtPercentile(50);
+            this.p90Nanos = histogram.getValueAtPercentile(90);
+            this.p99Nanos = histogram.getValueAtPercentile(99);
+            this.maxNanos = histogram.getMaxNanos();
+        }
+
+        public ScanStage getStage() {
+            return stage;
+        }
+
+        public long getCount() {
+            return count;
+        }
+
+        public long getMeanNanos() {
+            return meanNanos;
+        }
+
+        public long getP50Nanos() {
+            return p50Nanos;
+        }
+
+        public long getP90Nanos() {
+            return p90Nanos;
+        }
+
+        public long getP99Nanos() {
+            return p99Nanos;
+        }
+
+        public long getMaxNanos() {
+            return maxNanos;
+        }
+
+        @Override
+        public String toString() {
+            return stage + " n=" + count
+                    + " p50=" + millis(p50Nanos)
+                    + " p90=" + millis(p90Nanos)
+                    + " p99=" + millis(p99Nanos)
+                    + " max=" + millis(maxNanos) + "ms";
+        }
+
+    }
+
+    /**
+     * Counters and latencies at one point in time.
+     */
+    public static final class Snapshot {
+
+        private final long framesReceived;
+        private final long framesDropped;
+        private final long framesSkipped;
+        private final long framesDecoded;
+        private final long framesWhilePaused;
+        private final long framesCancelled;
+        private final long framesTimedOut;
+        private final long firstDecodeNanos;
+        private final StageSnapshot[] stages;
+
+        Snapshot(long framesReceived, long framesDropped, long framesSkipped, long framesDecoded,
+                 long framesWhilePaused, long framesCancelled, long framesTimedOut, long firstDecodeNanos,
+                 StageSnapshot[] stages) {
+            this.framesReceived = framesReceived;
+            this.framesDropped = framesDropped;
+            this.framesSkipped = framesSkipped;
+            this.framesDecoded = framesDecoded;
+            this.framesWhilePaused = framesWhilePaused;
+            this.framesCancelled = framesCancelled;
+            this.framesTimedOut = framesTimedOut;
+            this.firstDecodeNanos = firstDecodeNanos;
+            this.stages = stages;
+        }
+
+        public long getFramesReceived() {
+            return framesReceived;
+        }
+
+        public long getFramesDropped() {
+            return framesDropped;
+        }
+
+        public long getFramesSkipped() {
+            return framesSkipped;
+        }
+
+        public long getFramesDecoded() {
+            return framesDecoded;
+        }
+
+        /**
+         * @return frames which arrived while scanning was paused, not counted as received
+         */
+        public long getFramesWhilePaused() {
+            return framesWhilePaused;
+        }
+
+        /**
+         * @return decodes abandoned because scanning stopped or a newer frame decoded first
+         */
+        public long getFramesCancelled() {
+            return framesCancelled;
+        }
+
+        /**
+         * @return decodes abandoned because they ran out of time
+         */
+        public long getFramesTimedOut() {
+            return framesTimedOut;
+        }
+
+        /**
+         * @return time from {@link #markStart()} to the first decoded frame, or -1 if nothing has
+         * decoded yet
+         */
+        public long getTimeToFirstDecodeNanos() {
+            return firstDecodeNanos;
+        }
+
+        public StageSnapshot getStage(ScanStage stage) {
+            return stages[stage.ordinal()];
+        }
+
+        @Override
+        public String toString() {
+            final StringBuilder builder = new StringBuilder()
+                    .append("frames received=").append(framesReceived)
+                    .append(" dropped=").append(framesDropped)
+                    .append(" skipped=").append(framesSkipped)
+                    .append(" decoded=").append(framesDecoded)
+                    .append(" paused=").append(framesWhilePaused)
+                    .append("\ncancelled=").append(framesCancelled)
+                    .append(" timed out=").append(framesTimedOut)
+                    .append("\nfirst decode=")
+                    .append(firstDecodeNanos >= 0 ? millis(firstDecodeNanos) + "ms" : "-");
+            for (StageSnapshot stage : stages) {
+                builder.append('\n').append(stage);
+            }
+            return builder.toString();
+        }
+
+    }
+
+    private static String millis(long nanos) {
+        final long tenths = (nanos + 50000) / 100000;
+        return tenths / 10 + "." + tenths % 10;
+    }
+
+}
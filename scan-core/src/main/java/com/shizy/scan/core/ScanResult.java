@@ -0,0 +1,95 @@
+package com.shizy.scan.core;
+
+import com.google.zxing.Result;
+
+/**
+ * A decoded code as published on a {@link ResultStream}, with the timing of the frame it came from.
+ * All times but {@link #getFrameTimestampNanos()} are {@link System#nanoTime()} readings.
+ */
+public final class ScanResult {
+
+    private final Result result;
+    private final int scale;
+    private final long frameTimestampNanos;
+    private final long decodeStartNanos;
+    private final long decodeEndNanos;
+    private final long publishNanos;
+
+    /**
+     * @param scale               {@link FrameDecoder#getResultScale()} for the frame
+     * @param frameTimestampNanos timestamp of the camera frame, in the camera's own time base
+     * @param decodeStartNanos    when decoding of the frame started
+     * @param decodeEndNanos      when decoding of the frame finished
+     */
+    public ScanResult(Result result, int scale, long frameTimestampNanos, long decodeStartNanos,
+                      long decodeEndNanos) {
+        this.result = result;
+        this.scale = scale;
+        this.frameTimestampNanos = frameTimestampNanos;
+        this.decodeStartNanos = decodeStartNanos;
+        this.decodeEndNanos = decodeEndNanos;
+        this.publishNanos = System.nanoTime();
+    }
+
+    public Result getResult() {
+        return result;
+    }
+
+    public String getText() {
+        return result.getText();
+    }
+
+    /**
+     * @return the factor by which the frame was shrunk when the code was found, 1 unless found at a
+     * downsampled level of a pyramid decode
+     */
+    public int getScale() {
+        return scale;
+    }
+
+    /**
+     * @return the camera timestamp of the frame, only comparable with other frame timestamps
+     */
+    public long getFrameTimestampNanos() {
+        return frameTimestampNanos;
+    }
+
+    public long getDecodeStartNanos() {
+        return decodeStartNanos;
+    }
+
+    public long getDecodeEndNanos() {
+        return decodeEndNanos;
+    }
+
+    /**
+     * @return time spent decoding the frame, binarizing included
+     */
+    public long getDecodeNanos() {
+        return decodeEndNanos - decodeStartNanos;
+    }
+
+    /**
+     * @return when the result was handed to the stream, after any de-duplication
+     */
+    public long getPublishNanos() {
+        return publishNanos;
+    }
+
+    /**
+     * @return time from the start of decoding until now, e.g. when a subscriber receives it
+     */
+    public long getAgeNanos() {
+        return System.nanoTime() - decodeStartNanos;
+    }
+
+    @Override
+    public String toString() {
+        return "ScanResult{text=" + result.getText()
+                + ", format=" + result.getBarcodeFormat()
+                + ", scale=" + scale
+                + ", decodeUs=" + getDecodeNanos() / 1000
+                + ", ageUs=" + getAgeNanos() / 1000 + '}';
+    }
+
+}
@@ -0,0 +1,28 @@
+package com.shizy.scan.core;
+
+/**
+ * The steps a frame goes through, each timed separately by {@link ScanMetrics}.
+ */
+public enum ScanStage {
+
+    /**
+     * Copying the crop region out of the camera buffer, when decoding on worker threads.
+     */
+    COPY,
+
+    /**
+     * Turning luminance into black and white, for the matrix and for 1D rows.
+     */
+    BINARIZE,
+
+    /**
+     * Detecting and decoding codes, binarizing excluded.
+     */
+    DECODE,
+
+    /**
+     * Running the listeners of a decoded frame.
+     */
+    DISPATCH
+
+}
@@ -0,0 +1,140 @@
+package com.shizy.scan.core;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * Decides which {@link DecodeStrategy strategies} each frame is decoded with, and learns from their
+ * successes which one to try first.
+ * <p>
+ * Every frame gets the strategy with the best recent success rate, followed by the others in turn,
+ * one per frame, so that the whole set is covered over a few consecutive frames rather than on every
+ * frame. Expensive strategies are not started once the frame has used up its time budget.
+ * <p>
+ * One scheduler may be shared by all decoding threads.
+ */
+public final class StrategyScheduler {
+
+    /**
+     * Weight of the latest attempt in a strategy's score; about the last 16 attempts count.
+     */
+    private static final float SCORE_WEIGHT = 1f / 16;
+
+    private final DecodeStrategy[] strategies;
+    private final int attemptsPerFrame;
+    private final long frameBudgetNanos;
+
+    private final float[] scores;
+    private final long[] attempts;
+    private final long[] hits;
+    private final long[] skipped;
+    private final long[] totalNanos;
+    private int explore;
+
+    /**
+     * Schedules every strategy, two per frame, with a 30 ms budget.
+     */
+    public StrategyScheduler() {
+        this(2, 30, DecodeStrategy.values());
+    }
+
+    /**
+     * @param attemptsPerFrame the most strategies tried on one frame
+     * @param frameBudgetMillis time after which a frame starts no further expensive strategy
+     * @param strategies        strategies to schedule; on ties the earlier one is tried first
+     */
+    public StrategyScheduler(int attemptsPerFrame, long frameBudgetMillis, DecodeStrategy... strategies) {
+        if (strategies.length == 0) {
+            throw new IllegalArgumentException("no strategies");
+        }
+        if (attemptsPerFrame < 1) {
+            throw new IllegalArgumentException("attemptsPerFrame must be at least 1");
+        }
+        this.strategies = strategies.clone();
+        this.attemptsPerFrame = Math.min(attemptsPerFrame, strategies.length);
+        this.frameBudgetNanos = frameBudgetMillis * 1000000L;
+        final int count = DecodeStrategy.values().length;
+        scores = new float[count];
+        attempts = new long[count];
+        hits = new long[count];
+        skipped = new long[count];
+        totalNanos = new long[count];
+    }
+
+    long getFrameBudgetNanos() {
+        return frameBudgetNanos;
+    }
+
+    /**
+     * Fills {@code plan} with the strategies for the next frame, in the order they should be tried.
+     *
+     * @param plan at least as long as the number of strategy kinds
+     * @return the number of strategies planned
+     */
+    synchronized int plan(DecodeStrategy[] plan) {
+        int best = 0;
+        for (int i = 1; i < strategies.length; i++) {
+            if (scores[strategies[i].ordinal()] > scores[strategies[best].ordinal()]) {
+                best = i;
+            }
+        }
+        plan[0] = strategies[best];
+
+        int count = 1;
+        for (int i = 0; i < strategies.length && count < attemptsPerFrame; i++) {
+            final int candidate = (explore + i) % strategies.length;
+            if (candidate != best) {
+                plan[count++] = strategies[candidate];
+            }
+        }
+        explore = (explore + 1) % strategies.length;
+        return count;
+    }
+
+    synchronized void record(DecodeStrategy strategy, boolean success, long nanos) {
+        final int i = strategy.ordinal();
+        attempts[i]++;
+        totalNanos[i] += nanos;
+        if (success) {
+            hits[i]++;
+        }
+        scores[i] += ((success ? 1f : 0f) - scores[i]) * SCORE_WEIGHT;
+    }
+
+    synchronized void recordSkipped(DecodeStrategy strategy) {
+        skipped[strategy.ordinal()]++;
+    }
+
+    /**
+     * @return one snapshot per scheduled strategy, best recent success rate first
+     */
+    public synchronized List<StrategyStats> getStats() {
+        final List<StrategyStats> stats = new ArrayList<>(strategies.length);
+        for (DecodeStrategy strategy : strategies) {
+            final int i = strategy.ordinal();
+            stats.add(new StrategyStats(strategy, attempts[i], hits[i], skipped[i], totalNanos[i], scores[i]));
+        }
+        Collections.sort(stats, (a, b) -> Float.compare(b.getScore(), a.getScore()));
+        return stats;
+    }
+
+    /**
+     * Forgets what has been learned, and the counters.
+     */
+    public synchronized void reset() {
+        Arrays.fill(scores, 0f);
+        Arrays.fill(attempts, 0L);
+        Arrays.fill(hits, 0L);
+        Arrays.fill(skipped, 0L);
+        Arrays.fill(totalNanos, 0L);
+        explore = 0;
+    }
+
+    @Override
+    public String toString() {
+        return "StrategyScheduler" + getStats();
+    }
+
+}
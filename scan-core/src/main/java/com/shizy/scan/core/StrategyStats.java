@@ -0,0 +1,80 @@
+package com.shizy.scan.core;
+
+/**
+ * Snapshot of how one {@link DecodeStrategy} has fared, to see where decode time goes.
+ */
+public final class StrategyStats {
+
+    private final DecodeStrategy strategy;
+    private final long attempts;
+    private final long hits;
+    private final long skipped;
+    private final long totalNanos;
+    private final float score;
+
+    StrategyStats(DecodeStrategy strategy, long attempts, long hits, long skipped, long totalNanos, float score) {
+        this.strategy = strategy;
+        this.attempts = attempts;
+        this.hits = hits;
+        this.skipped = skipped;
+        this.totalNanos = totalNanos;
+        this.score = score;
+    }
+
+    public DecodeStrategy getStrategy() {
+        return strategy;
+    }
+
+    public long getAttempts() {
+        return attempts;
+    }
+
+    /**
+     * @return attempts which decoded a code
+     */
+    public long getHits() {
+        return hits;
+    }
+
+    /**
+     * @return times this strategy was planned but not run because the frame was out of time
+     */
+    public long getSkipped() {
+        return skipped;
+    }
+
+    /**
+     * @return time spent in this strategy, successful or not
+     */
+    public long getTotalNanos() {
+        return totalNanos;
+    }
+
+    public double getHitRate() {
+        return attempts > 0 ? hits / (double) attempts : 0;
+    }
+
+    public double getAverageMillis() {
+        return attempts > 0 ? totalNanos / 1e6 / attempts : 0;
+    }
+
+    /**
+     * @return recent success rate the scheduler ranks strategies by, between 0 and 1
+     */
+    public float getScore() {
+        return score;
+    }
+
+    @Override
+    public String toString() {
+        return strategy
+                + "{attempts=" + attempts
+                + ", hits=" + hits
+                + ", skipped=" + skipped
+                + ", hitRate=" + getHitRate()
+                + ", avgMs=" + getAverageMillis()
+                + ", cpuMs=" + totalNanos / 1000000
+                + ", score=" + score + '}';
+    }
+
+}
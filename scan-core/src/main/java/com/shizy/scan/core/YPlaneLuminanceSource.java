@@ -0,0 +1,355 @@
+package com.shizy.scan.core;
+
+import com.google.zxing.LuminanceSource;
+
+import java.nio.ByteBuffer;
+
+/**
+ * A {@link LuminanceSource} which reads directly from the Y plane of a YUV_420_888 image, or any
+ * other 8-bit luminance buffer. No copy of the plane is made, and chroma is never touched.
+ * <p>
+ * The plane may be padded, so each row starts {@code rowStride} bytes after the previous one,
+ * and neighbouring pixels are {@code pixelStride} bytes apart.
+ * <p>
+ * The source is only valid as long as the backing buffer is, i.e. until the image is closed.
+ * <p>
+ * A source may be rotated, to serve the plane upright: rows and columns are then mapped to plane
+ * positions as they are read, still without copying the plane. Readers scanning rows, such as the
+ * 1D ones, thereby scan along the horizontal axis of the screen. Rotating counter-clockwise, as
+ * {@code TRY_HARDER} does, works the same way.
+ */
+public final class YPlaneLuminanceSource extends LuminanceSource {
+
+    private final ByteBuffer buffer;
+    private final int dataWidth;
+    private final int dataHeight;
+    private final int rowStride;
+    private final int pixelStride;
+    private final int left;
+    private final int top;
+    private final int cropWidth;
+    private final int cropHeight;
+    private final int rotationDegrees;
+    // Plane to upright pixel mapping, see uprightMapping(), worked out once per source.
+    private final int ux;
+    private final int uy;
+    private final int u0;
+    private final int vx;
+    private final int vy;
+    private final int v0;
+
+    /**
+     * Reads the crop region of {@code frame}, upright according to its rotation.
+     */
+    public YPlaneLuminanceSource(Frame frame) {
+        this(frame.getBuffer(), frame.getWidth(), frame.getHeight(), frame.getRowStride(), frame.getPixelStride(),
+                frame.getCropLeft(), frame.getCropTop(), frame.getCropWidth(), frame.getCropHeight(),
+                frame.getRotationDegrees());
+    }
+
+    public YPlaneLuminanceSource(ByteBuffer buffer, int dataWidth, int dataHeight, int rowStride, int pixelStride) {
+        this(buffer, dataWidth, dataHeight, rowStride, pixelStride, 0, 0, dataWidth, dataHeight);
+    }
+
+    public YPlaneLuminanceSource(ByteBuffer buffer,
+                                 int dataWidth,
+                                 int dataHeight,
+                                 int rowStride,
+                                 int pixelStride,
+                                 int left,
+                                 int top,
+                                 int width,
+                                 int height) {
+        this(buffer, dataWidth, dataHeight, rowStride, pixelStride, left, top, width, height, 0);
+    }
+
+    /**
+     * @param left            crop rectangle in plane coordinates, before rotation
+     * @param rotationDegrees clockwise rotation which makes the crop upright: 0, 90, 180 or 270.
+     *                        With 90 or 270 the source is {@code height} wide and {@code width} high.
+     */
+    public YPlaneLuminanceSource(ByteBuffer buffer,
+                                 int dataWidth,
+                                 int dataHeight,
+                                 int rowStride,
+                                 int pixelStride,
+                                 int left,
+                                 int top,
+                                 int width,
+                                 int height,
+                                 int rotationDegrees) {
+        super(isSideways(rotationDegrees) ? height : width, isSideways(rotationDegrees) ? width : height);
+
+        if (left < 0 || top < 0 || left + width > dataWidth || top + height > dataHeight) {
+            throw new IllegalArgumentException("Crop rectangle does not fit within image data.");
+        }
+        if (rowStride < dataWidth * pixelStride - (pixelStride - 1)) {
+            throw new IllegalArgumentException("Row stride is smaller than the image width.");
+        }
+        if (rotationDegrees % 90 != 0 || rotationDegrees < 0 || rotationDegrees >= 360) {
+            throw new IllegalArgumentException("Rotation must be 0, 90, 180 or 270: " + rotationDegrees);
+        }
+
+        // Keep our own position so reads never disturb the caller's buffer.
+        this.buffer = buffer.duplicate();
+        this.dataWidth = dataWidth;
+        this.dataHeight = dataHeight;
+        this.rowStride = rowStride;
+        this.pixelStride = pixelStride;
+        this.left = left;
+        this.top = top;
+        this.cropWidth = width;
+        this.cropHeight = height;
+        this.rotationDegrees = rotationDegrees;
+        final int w = width - 1;
+        final int h = height - 1;
+        switch (rotationDegrees) {
+            case 90:
+                ux = 0;
+                uy = -1;
+                u0 = h;
+                vx = 1;
+                vy = 0;
+                v0 = 0;
+                break;
+            case 180:
+                ux = -1;
+                uy = 0;
+                u0 = w;
+                vx = 0;
+                vy = -1;
+                v0 = h;
+                break;
+            case 270:
+                ux = 0;
+                uy = 1;
+                u0 = 0;
+                vx = -1;
+                vy = 0;
+                v0 = w;
+                break;
+            default:
+                ux = 1;
+                uy = 0;
+                u0 = 0;
+                vx = 0;
+                vy = 1;
+                v0 = 0;
+                break;
+        }
+    }
+
+    private static boolean isSideways(int rotationDegrees) {
+        return rotationDegrees == 90 || rotationDegrees == 270;
+    }
+
+    public int getRotationDegrees() {
+        return rotationDegrees;
+    }
+
+    /**
+     * @return width of the crop in the plane, before rotation
+     */
+    int getPlaneWidth() {
+        return cropWidth;
+    }
+
+    /**
+     * @return height of the crop in the plane, before rotation
+     */
+    int getPlaneHeight() {
+        return cropHeight;
+    }
+
+    /**
+     * @return this source in plane orientation, for binarizing in the order the plane is stored
+     */
+    YPlaneLuminanceSource unrotated() {
+        if (rotationDegrees == 0) {
+            return this;
+        }
+        return new YPlaneLuminanceSource(buffer, dataWidth, dataHeight, rowStride, pixelStride,
+                left, top, cropWidth, cropHeight, 0);
+    }
+
+    /**
+     * Fills {@code out} with the mapping from plane pixel (x, y) of the crop to pixel (u, v) of this
+     * source: {@code u = x * out[0] + y * out[1] + out[2]}, {@code v = x * out[3] + y * out[4] + out[5]}.
+     */
+    void uprightMapping(int[] out) {
+        out[0] = ux;
+        out[1] = uy;
+        out[2] = u0;
+        out[3] = vx;
+        out[4] = vy;
+        out[5] = v0;
+    }
+
+    /**
+     * @return the plane x, relative to the crop, of point ({@code u}, {@code v}) of this source
+     */
+    float toPlaneX(float u, float v) {
+        switch (rotationDegrees) {
+            case 90:
+                return v;
+            case 180:
+                return cropWidth - 1 - u;
+            case 270:
+                return cropWidth - 1 - v;
+            default:
+                return u;
+        }
+    }
+
+    /**
+     * @return the plane y, relative to the crop, of point ({@code u}, {@code v}) of this source
+     */
+    float toPlaneY(float u, float v) {
+        switch (rotationDegrees) {
+            case 90:
+                return cropHeight - 1 - u;
+            case 180:
+                return cropHeight - 1 - v;
+            case 270:
+                return u;
+            default:
+                return v;
+        }
+    }
+
+    @Override
+    public byte[] getRow(int y, byte[] row) {
+        if (y < 0 || y >= getHeight()) {
+            throw new IllegalArgumentException("Requested row is outside the image: " + y);
+        }
+        int width = getWidth();
+        if (row == null || row.length < width) {
+            row = new byte[width];
+        }
+        readRow(y, row, 0);
+        return row;
+    }
+
+    @Override
+    public byte[] getMatrix() {
+        int width = getWidth();
+        int height = getHeight();
+        byte[] matrix = new byte[width * height];
+        copyMatrix(matrix);
+        return matrix;
+    }
+
+    /**
+     * Copies the (cropped) luminance values into {@code matrix}, row by row with no padding.
+     * This is what {@link #getMatrix()} does, without allocating the destination.
+     */
+    void copyMatrix(byte[] matrix) {
+        int width = getWidth();
+        int height = getHeight();
+        if (rotationDegrees == 0) {
+            for (int y = 0, outputOffset = 0; y < height; y++, outputOffset += width) {
+                readRow(y, matrix, outputOffset);
+            }
+            return;
+        }
+        // Walk the plane in storage order and scatter into the rotated matrix, rather than the
+        // other way round, so that the reads stay sequential.
+        final int step = ux + vx * width;
+        for (int y = 0; y < cropHeight; y++) {
+            int offset = (y + top) * rowStride + left * pixelStride;
+            int outputOffset = (y * vy + v0) * width + y * uy + u0;
+            for (int x = 0; x < cropWidth; x++, offset += pixelStride, outputOffset += step) {
+                matrix[outputOffset] = buffer.get(offset);
+            }
+        }
+    }
+
+    /**
+     * @return the backing array if it already is this source's matrix, tightly packed, or
+     * {@code null} if it has to be copied
+     */
+    byte[] tightArray() {
+        if (rotationDegrees == 0 && pixelStride == 1 && left == 0 && top == 0 && rowStride == getWidth()
+                && buffer.hasArray() && buffer.arrayOffset() == 0) {
+            return buffer.array();
+        }
+        return null;
+    }
+
+    private void readRow(int y, byte[] dest, int destOffset) {
+        int width = getWidth();
+        // Plane offset of the row's first pixel, and the distance to the next one.
+        final int offset;
+        final int step;
+        switch (rotationDegrees) {
+            case 90:
+                offset = (top + cropHeight - 1) * rowStride + (left + y) * pixelStride;
+                step = -rowStride;
+                break;
+            case 180:
+                offset = (top + cropHeight - 1 - y) * rowStride + (left + cropWidth - 1) * pixelStride;
+                step = -pixelStride;
+                break;
+            case 270:
+                offset = top * rowStride + (left + cropWidth - 1 - y) * pixelStride;
+                step = rowStride;
+                break;
+            default:
+                offset = (y + top) * rowStride + left * pixelStride;
+                step = pixelStride;
+                break;
+        }
+        if (step == 1) {
+            buffer.position(offset);
+            buffer.get(dest, destOffset, width);
+        } else {
+            for (int x = 0, i = offset; x < width; x++, i += step) {
+                dest[destOffset + x] = buffer.get(i);
+            }
+        }
+    }
+
+    @Override
+    public boolean isCropSupported() {
+        return true;
+    }
+
+    /**
+     * @param left in the coordinates of this source, i.e. after rotation
+     */
+    @Override
+    public LuminanceSource crop(int left, int top, int width, int height) {
+        if (left < 0 || top < 0 || width < 1 || height < 1
+                || left + width > getWidth() || top + height > getHeight()) {
+            throw new IllegalArgumentException("Crop rectangle does not fit within this source.");
+        }
+        final int x0 = Math.round(Math.min(toPlaneX(left, top), toPlaneX(left + width - 1, top + height - 1)));
+        final int y0 = Math.round(Math.min(toPlaneY(left, top), toPlaneY(left + width - 1, top + height - 1)));
+        final boolean sideways = isSideways(rotationDegrees);
+        return new YPlaneLuminanceSource(buffer,
+                dataWidth,
+                dataHeight,
+                rowStride,
+                pixelStride,
+                this.left + x0,
+                this.top + y0,
+                sideways ? height : width,
+                sideways ? width : height,
+                rotationDegrees);
+    }
+
+    @Override
+    public boolean isRotateSupported() {
+        return true;
+    }
+
+    /**
+     * @return the same crop, rotated by another 90 degrees counter-clockwise; nothing is copied
+     */
+    @Override
+    public LuminanceSource rotateCounterClockwise() {
+        return new YPlaneLuminanceSource(buffer, dataWidth, dataHeight, rowStride, pixelStride,
+                left, top, cropWidth, cropHeight, (rotationDegrees + 270) % 360);
+    }
+
+}
@@ -0,0 +1,148 @@
+package com.shizy.scan.core;
+
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+public class AnalysisTunerTest {
+
+    private static final long TARGET_MILLIS = 30;
+
+    /**
+     * Stands in for the camera and decoder: every frame of a given width takes a fixed time to
+     * decode, and decodes or not as told.
+     */
+    private static final class FakeFrameSource implements AnalysisTuner.Listener {
+
+        private final Map<Integer, Long> decodeMillisByWidth = new HashMap<>();
+        private final List<AnalysisProfile> changes = new ArrayList<>();
+        private final List<Integer> changeWindows = new ArrayList<>();
+        private boolean decoded;
+        private int window;
+
+        FakeFrameSource cost(int width, long decodeMillis) {
+            decodeMillisByWidth.put(width, decodeMillis);
+            return this;
+        }
+
+        FakeFrameSource decoding(boolean decoded) {
+            this.decoded = decoded;
+            return this;
+        }
+
+        void run(AnalysisTuner tuner, int windows) {
+            for (int w = 0; w < windows; w++) {
+                window++;
+                for (int i = 0; i < AnalysisTuner.WINDOW; i++) {
+                    final long millis = decodeMillisByWidth.get(tuner.getProfile().getWidth());
+                    // A little spread, so that the percentile has something to pick from.
+                    tuner.onFrame(millis * 1000000L + i * 1000L, decoded);
+                }
+            }
+        }
+
+        @Override
+        public void onProfileChanged(AnalysisProfile profile) {
+            changes.add(profile);
+            changeWindows.add(window);
+        }
+
+    }
+
+    private static AnalysisTuner tuner(int width, int height, FakeFrameSource source) {
+        return new AnalysisTuner(TARGET_MILLIS, new AnalysisProfile(width, height, 0), source);
+    }
+
+    @Test
+    public void stepsDownUntilWithinTarget() {
+        final FakeFrameSource source = new FakeFrameSource()
+                .cost(1600, 80).cost(1280, 45).cost(960, 25).cost(640, 10)
+                .decoding(true);
+        final AnalysisTuner tuner = tuner(1600, 1200, source);
+        source.run(tuner, 10);
+        assertEquals(new AnalysisProfile(960, 720, 0), tuner.getProfile());
+        assertEquals(2, source.changes.size());
+        // The window after each change only settles.
+        assertEquals(1, (int) source.changeWindows.get(0));
+        assertEquals(3, (int) source.changeWindows.get(1));
+    }
+
+    @Test
+    public void stepsUpWhileFastAndNotDecoding() {
+        final FakeFrameSource source = new FakeFrameSource()
+                .cost(1600, 12).cost(1280, 8).cost(960, 5).cost(640, 3)
+                .decoding(false);
+        final AnalysisTuner tuner = tuner(640, 480, source);
+        source.run(tuner, 10);
+        assertEquals(new AnalysisProfile(1600, 1200, 0), tuner.getProfile());
+        assertEquals(3, source.changes.size());
+    }
+
+    @Test
+    public void staysWhileDecoding() {
+        final FakeFrameSource source = new FakeFrameSource()
+                .cost(1600, 12).cost(1280, 8).cost(960, 5).cost(640, 3)
+                .decoding(true);
+        final AnalysisTuner tuner = tuner(640, 480, source);
+        source.run(tuner, 10);
+        assertEquals(new AnalysisProfile(640, 480, 0), tuner.getProfile());
+        assertTrue(source.changes.isEmpty());
+    }
+
+    @Test
+    public void throttlesAtTheBottomAndRecovers() {
+        final FakeFrameSource source = new FakeFrameSource().cost(640, 50).decoding(false);
+        final AnalysisTuner tuner = tuner(640, 480, source);
+        source.run(tuner, 1);
+        assertEquals(new AnalysisProfile(640, 480, 100), tuner.getProfile());
+        // Same decode time, nothing further to gain by throttling harder.
+        source.run(tuner, 4);
+        assertEquals(1, source.changes.size());
+
+        source.cost(640, 4).decoding(true);
+        source.run(tuner, 8);
+        final List<Long> intervals = new ArrayList<>();
+        for (AnalysisProfile profile : source.changes) {
+            intervals.add(profile.getFrameIntervalMillis());
+        }
+        assertEquals("[100, 50, 25, 12, 0]", intervals.toString());
+    }
+
+    @Test
+    public void blocksATooSlowResolutionForLongerEachTime() {
+        // Fast enough at 960 to want more pixels, too slow at 1280.
+        final FakeFrameSource source = new FakeFrameSource()
+                .cost(1280, 40).cost(960, 10)
+                .decoding(false);
+        final AnalysisTuner tuner = tuner(1280, 960, source);
+        source.run(tuner, 200);
+
+        final List<Integer> widths = new ArrayList<>();
+        for (AnalysisProfile profile : source.changes) {
+            widths.add(profile.getWidth());
+        }
+        assertEquals("[960, 1280, 960, 1280, 960, 1280, 960]", widths.toString());
+        final List<Integer> windows = source.changeWindows;
+        // Each step down blocks 1280 for twice as long as the one before.
+        assertEquals(20, windows.get(1) - windows.get(0));
+        assertEquals(40, windows.get(3) - windows.get(2));
+        assertEquals(80, windows.get(5) - windows.get(4));
+        // Retrying costs a settling window and one slow window.
+        assertEquals(2, windows.get(2) - windows.get(1));
+    }
+
+    @Test
+    public void startRoundsToTheNearestStep() {
+        final FakeFrameSource source = new FakeFrameSource();
+        assertEquals(new AnalysisProfile(1280, 960, 0), tuner(1200, 900, source).getProfile());
+        assertEquals(new AnalysisProfile(640, 480, 1000),
+                new AnalysisTuner(TARGET_MILLIS, new AnalysisProfile(320, 240, 5000), source).getProfile());
+    }
+
+}
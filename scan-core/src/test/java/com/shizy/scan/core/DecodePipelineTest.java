@@ -0,0 +1,91 @@
+package com.shizy.scan.core;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.nio.ByteBuffer;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.fail;
+
+public class DecodePipelineTest {
+
+    private static final int WIDTH = 320;
+    private static final int HEIGHT = 240;
+    private static final long TIMEOUT_MILLIS = 10000;
+
+    private final Logger logger = Logger.getLogger(DecodePipeline.class.getName());
+    private Level level;
+    private DecodePipeline pipeline;
+
+    @Before
+    public void setUp() {
+        // The failures below are expected, keep their stack traces out of the test output.
+        level = logger.getLevel();
+        logger.setLevel(Level.OFF);
+    }
+
+    @After
+    public void tearDown() {
+        if (pipeline != null) {
+            pipeline.close();
+        }
+        logger.setLevel(level);
+    }
+
+    private static Frame qrFrame(int rotationDegrees) {
+        return new Frame(ByteBuffer.wrap(TestFrames.qrCode("pipeline", WIDTH, HEIGHT, 160)), WIDTH, HEIGHT, WIDTH, 1,
+                rotationDegrees, 0);
+    }
+
+    private interface Condition {
+
+        boolean isMet();
+
+    }
+
+    private static void await(String what, Condition condition) throws InterruptedException {
+        final long deadline = System.currentTimeMillis() + TIMEOUT_MILLIS;
+        while (!condition.isMet()) {
+            if (System.currentTimeMillis() > deadline) {
+                fail("timed out waiting for " + what);
+            }
+            Thread.sleep(1);
+        }
+    }
+
+    @Test
+    public void keepsDecodingAfterTheCallbackThrows() throws InterruptedException {
+        final AtomicInteger calls = new AtomicInteger();
+        pipeline = new DecodePipeline(1, DecodeConfig.DEFAULT, (results, scale, timestamp, start, end) -> {
+            calls.incrementAndGet();
+            throw new IllegalStateException("detached");
+        });
+        for (int i = 1; i <= 3; i++) {
+            pipeline.submit(qrFrame(0));
+            final int expected = i;
+            await("delivery " + i, () -> calls.get() == expected);
+        }
+        await("the failures to be counted", () -> pipeline.getStats().getCallbackFailures() == 3);
+        assertEquals(0, pipeline.getStats().getFramesFailed());
+    }
+
+    @Test
+    public void keepsDecodingAfterAFrameFails() throws InterruptedException {
+        final AtomicInteger calls = new AtomicInteger();
+        pipeline = new DecodePipeline(1, DecodeConfig.DEFAULT,
+                (results, scale, timestamp, start, end) -> calls.incrementAndGet());
+        // Not a rotation the decoder can read.
+        pipeline.submit(qrFrame(45));
+        await("the failure", () -> pipeline.getStats().getFramesFailed() == 1);
+
+        pipeline.submit(qrFrame(0));
+        await("a delivery", () -> calls.get() == 1);
+        assertEquals(0, pipeline.getStats().getCallbackFailures());
+    }
+
+}
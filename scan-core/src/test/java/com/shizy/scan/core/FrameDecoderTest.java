@@ -0,0 +1,160 @@
+package com.shizy.scan.core;
+
+import com.google.zxing.LuminanceSource;
+import com.google.zxing.Result;
+import com.google.zxing.ResultPoint;
+
+import org.junit.Test;
+
+import java.nio.ByteBuffer;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+public class FrameDecoderTest {
+
+    private static final int WIDTH = 320;
+    private static final int HEIGHT = 240;
+
+    /**
+     * A Code 128 held level on screen lies across the bars of a sensor turned by
+     * {@code rotation}: it only decodes read upright, and its points come back on the plane.
+     */
+    @Test
+    public void decodesLevelCode128UprightAndReportsPlanePoints() {
+        final byte[] level = TestFrames.code128("ROTATED-128", WIDTH, HEIGHT, 240, 60);
+        for (int rotation : new int[]{90, 180, 270}) {
+            final byte[] plane = TestFrames.rotated(level, WIDTH, HEIGHT, 360 - rotation);
+            final int planeWidth = rotation == 180 ? WIDTH : HEIGHT;
+            final int planeHeight = WIDTH * HEIGHT / planeWidth;
+
+            final FrameDecoder decoder = new FrameDecoder(DecodeConfig.DEFAULT);
+            final Result result = decoder.decode(new Frame(ByteBuffer.wrap(plane), planeWidth, planeHeight,
+                    planeWidth, 1, rotation, 0));
+            assertNotNull("rotation " + rotation, result);
+            assertEquals("ROTATED-128", result.getText());
+            final int[] bars = darkBounds(plane, planeWidth, planeHeight);
+            for (ResultPoint point : result.getResultPoints()) {
+                assertTrue("rotation " + rotation + " " + point,
+                        point.getX() >= bars[0] - 1 && point.getX() <= bars[2] + 1
+                                && point.getY() >= bars[1] - 1 && point.getY() <= bars[3] + 1);
+            }
+        }
+    }
+
+    @Test
+    public void sidewaysCode128NeedsTheRotation() {
+        final byte[] plane = TestFrames.rotated(TestFrames.code128("ROTATED-128", WIDTH, HEIGHT, 240, 60),
+                WIDTH, HEIGHT, 270);
+        assertNull(new FrameDecoder(DecodeConfig.DEFAULT).decode(new Frame(ByteBuffer.wrap(plane), HEIGHT, WIDTH,
+                HEIGHT, 1, 0, 0)));
+    }
+
+    /**
+     * With TRY_HARDER the 1D readers read the frame again turned by a quarter; that pass must stop
+     * at its first row too once the token is cancelled.
+     */
+    @Test
+    public void cancelledTryHarderDecodeStopsInTheRotatedPass() {
+        final byte[] noise = TestFrames.noise(WIDTH, HEIGHT, 5);
+        final DecodeConfig config = new DecodeConfig.Builder().setTryHarder(true).build();
+
+        final CountingSource whole = new CountingSource(
+                new YPlaneLuminanceSource(ByteBuffer.wrap(noise), WIDTH, HEIGHT, WIDTH, 1));
+        assertNull(new FrameDecoder(config).decode(whole));
+        assertTrue(whole.rotatedRows[0] > 1);
+
+        final CountingSource cancelled = new CountingSource(
+                new YPlaneLuminanceSource(ByteBuffer.wrap(noise), WIDTH, HEIGHT, WIDTH, 1));
+        final FrameDecoder decoder = new FrameDecoder(config);
+        decoder.setDecodeToken(() -> cancelled.rotatedRows[0] > 0);
+        assertNull(decoder.decode(cancelled));
+        assertEquals(1, cancelled.rotatedRows[0]);
+    }
+
+    /**
+     * A pyramid decode goes through several sources, but the scheduler plans and counts the frame
+     * once.
+     */
+    @Test
+    public void schedulerSeesOneAttemptPerStrategyPerFrame() {
+        final int width = 640;
+        final int height = 480;
+        final StrategyScheduler scheduler = new StrategyScheduler(2, 1000,
+                DecodeStrategy.HYBRID, DecodeStrategy.GLOBAL_HISTOGRAM);
+        final FrameDecoder decoder = new FrameDecoder(new DecodeConfig.Builder().setPyramid(true).build(), scheduler);
+        final Frame frame = new Frame(ByteBuffer.wrap(TestFrames.noise(width, height, 8)), width, height, width, 1, 0, 0);
+        final int frames = 3;
+        for (int i = 0; i < frames; i++) {
+            assertNull(decoder.decode(frame));
+        }
+        for (StrategyStats stats : scheduler.getStats()) {
+            assertEquals(stats.getStrategy().toString(), frames, stats.getAttempts());
+        }
+    }
+
+    /**
+     * Counts the rows read from its rotations.
+     */
+    private static final class CountingSource extends LuminanceSource {
+
+        private final LuminanceSource delegate;
+        private final boolean rotated;
+        final int[] rotatedRows;
+
+        CountingSource(LuminanceSource delegate) {
+            this(delegate, false, new int[1]);
+        }
+
+        private CountingSource(LuminanceSource delegate, boolean rotated, int[] rotatedRows) {
+            super(delegate.getWidth(), delegate.getHeight());
+            this.delegate = delegate;
+            this.rotated = rotated;
+            this.rotatedRows = rotatedRows;
+        }
+
+        @Override
+        public byte[] getRow(int y, byte[] row) {
+            if (rotated) {
+                rotatedRows[0]++;
+            }
+            return delegate.getRow(y, row);
+        }
+
+        @Override
+        public byte[] getMatrix() {
+            return delegate.getMatrix();
+        }
+
+        @Override
+        public boolean isRotateSupported() {
+            return true;
+        }
+
+        @Override
+        public LuminanceSource rotateCounterClockwise() {
+            return new CountingSource(delegate.rotateCounterClockwise(), true, rotatedRows);
+        }
+    }
+
+    /**
+     * @return left, top, right and bottom of the black pixels
+     */
+    private static int[] darkBounds(byte[] packed, int width, int height) {
+        final int[] bounds = {width, height, -1, -1};
+        for (int y = 0; y < height; y++) {
+            for (int x = 0; x < width; x++) {
+                if (packed[y * width + x] == TestFrames.BLACK) {
+                    bounds[0] = Math.min(bounds[0], x);
+                    bounds[1] = Math.min(bounds[1], y);
+                    bounds[2] = Math.max(bounds[2], x);
+                    bounds[3] = Math.max(bounds[3], y);
+                }
+            }
+        }
+        return bounds;
+    }
+
+}
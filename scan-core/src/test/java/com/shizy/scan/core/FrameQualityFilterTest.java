@@ -0,0 +1,182 @@
+package com.shizy.scan.core;
+
+import com.google.zxing.Result;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.Random;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+public class FrameQualityFilterTest {
+
+    private static final int WIDTH = 640;
+    private static final int HEIGHT = 480;
+
+    @Rule
+    public final TemporaryFolder folder = new TemporaryFolder();
+
+    private final byte[] sharp = sensorNoise(TestFrames.qrCode("quality", WIDTH, HEIGHT, 300), 1);
+
+    @Test
+    public void replayedSessionLosesNoDecodes() throws IOException {
+        final File file = folder.newFile("session.csfr");
+        recordSession(file);
+        try (FrameSequence sequence = new FrameSequence(file)) {
+            final Result[] plain = new Result[sequence.size()];
+            final FrameReplayer.Report plainReport = new FrameReplayer(new FrameDecoder(DecodeConfig.DEFAULT))
+                    .replay(sequence, (index, frame, result) -> plain[index] = result);
+
+            final FrameQualityFilter filter = new FrameQualityFilter.Builder().build();
+            final Result[] filtered = new Result[sequence.size()];
+            final FrameReplayer.Report filteredReport = new FrameReplayer(new FrameDecoder(DecodeConfig.DEFAULT), filter)
+                    .replay(sequence, (index, frame, result) -> filtered[index] = result);
+
+            for (int i = 0; i < plain.length; i++) {
+                if (plain[i] != null) {
+                    assertNotNull("frame " + i + " no longer decodes", filtered[i]);
+                }
+            }
+            assertEquals(plainReport.getDecoded(), filteredReport.getDecoded());
+            // Most of the frames which cannot decode never reach the decoder.
+            final int hopeless = plainReport.getFrames() - plainReport.getDecoded();
+            assertTrue(filteredReport + " of " + hopeless + " hopeless", filteredReport.getSkipped() >= hopeless * 3 / 4);
+            assertEquals(filteredReport.getSkipped(), filter.getFramesSkipped());
+            assertEquals(filteredReport.getDecoded(), filter.getFramesDecoded());
+        }
+    }
+
+    /**
+     * Sharp frames among blurry ones, as while focusing, and nearly black ones, as with the lens
+     * covered.
+     */
+    private void recordSession(File file) throws IOException {
+        final byte[] blurry = blur(sharp, 24);
+        final byte[] veryBlurry = blur(sharp, 60);
+        final byte[] dark = sensorNoise(darken(sharp, 0.04f), 3);
+        final Random random = new Random(2);
+        try (FrameRecorder recorder = new FrameRecorder(file)) {
+            for (int i = 0; i < 200; i++) {
+                final byte[] luminances;
+                if (random.nextInt(10) < 3) {
+                    luminances = sharp;
+                } else if (random.nextBoolean()) {
+                    luminances = random.nextBoolean() ? blurry : veryBlurry;
+                } else {
+                    luminances = dark;
+                }
+                recorder.record(new Frame(luminances, WIDTH, HEIGHT));
+            }
+        }
+    }
+
+    @Test
+    public void rejectsDarkAndBrightFrames() {
+        final FrameQualityFilter filter = new FrameQualityFilter.Builder().setProbeInterval(1000).build();
+        assertFalse(filter.accept(new Frame(darken(sharp, 0.02f), WIDTH, HEIGHT)));
+        assertFalse(filter.accept(new Frame(TestFrames.flat(WIDTH, HEIGHT, 252), WIDTH, HEIGHT)));
+        assertEquals(2, filter.getSkippedForExposure());
+    }
+
+    @Test
+    public void rejectsFlatFrames() {
+        final FrameQualityFilter filter = new FrameQualityFilter.Builder().setProbeInterval(1000).build();
+        assertFalse(filter.accept(new Frame(TestFrames.flat(WIDTH, HEIGHT, 128), WIDTH, HEIGHT)));
+        assertEquals(1, filter.getSkippedForContrast());
+    }
+
+    @Test
+    public void acceptsSharpCode() {
+        final FrameQualityFilter filter = new FrameQualityFilter.Builder().setProbeInterval(1000).build();
+        assertTrue(filter.accept(new Frame(sharp, WIDTH, HEIGHT)));
+        assertEquals(0, filter.getFramesSkipped());
+    }
+
+    @Test
+    public void probesRejectedFramesAtTheInterval() {
+        final FrameQualityFilter filter = new FrameQualityFilter.Builder().setProbeInterval(4).build();
+        final Frame flat = new Frame(TestFrames.flat(WIDTH, HEIGHT, 128), WIDTH, HEIGHT);
+        int accepted = 0;
+        for (int i = 0; i < 40; i++) {
+            if (filter.accept(flat)) {
+                accepted++;
+            }
+        }
+        assertEquals(10, accepted);
+        assertEquals(40, filter.getFramesChecked());
+        assertEquals(30, filter.getFramesSkipped());
+    }
+
+    @Test
+    public void calibratesSharpnessToDecodedFrames() {
+        // A floor of 0 leaves the sharpness threshold entirely to calibration.
+        final FrameQualityFilter filter = new FrameQualityFilter.Builder()
+                .setMinSharpness(0f)
+                .setProbeInterval(1000)
+                .build();
+        final Frame blurry = new Frame(blur(sharp, 60), WIDTH, HEIGHT);
+        assertTrue(filter.accept(blurry));
+        final Frame frame = new Frame(sharp, WIDTH, HEIGHT);
+        for (int i = 0; i < 8; i++) {
+            assertTrue(filter.accept(frame));
+            filter.reportDecoded();
+        }
+        assertTrue(filter.getSharpnessThreshold() > 0);
+        assertFalse(filter.accept(blurry));
+        assertEquals(1, filter.getSkippedForSharpness());
+    }
+
+    @Test
+    public void veryBlurryFramesDoNotDecode() {
+        final FrameDecoder decoder = new FrameDecoder(DecodeConfig.DEFAULT);
+        assertNotNull(decoder.decode(new Frame(sharp, WIDTH, HEIGHT)));
+        assertNull(decoder.decode(new Frame(blur(sharp, 60), WIDTH, HEIGHT)));
+    }
+
+    /**
+     * Averages a sparse diagonal line of samples, as a camera shaking diagonally would.
+     */
+    private static byte[] blur(byte[] source, int radius) {
+        final byte[] out = new byte[source.length];
+        for (int y = 0; y < HEIGHT; y++) {
+            for (int x = 0; x < WIDTH; x++) {
+                int sum = 0;
+                int count = 0;
+                for (int k = -radius; k <= radius; k += 2) {
+                    final int sx = Math.min(WIDTH - 1, Math.max(0, x + k));
+                    final int sy = Math.min(HEIGHT - 1, Math.max(0, y + k));
+                    sum += source[sy * WIDTH + sx] & 0xff;
+                    count++;
+                }
+                out[y * WIDTH + x] = (byte) (sum / count);
+            }
+        }
+        return out;
+    }
+
+    private static byte[] sensorNoise(byte[] source, long seed) {
+        final Random random = new Random(seed);
+        final byte[] out = new byte[source.length];
+        for (int i = 0; i < source.length; i++) {
+            out[i] = (byte) Math.max(0, Math.min(255, (source[i] & 0xff) + random.nextInt(9) - 4));
+        }
+        return out;
+    }
+
+    private static byte[] darken(byte[] source, float factor) {
+        final byte[] out = new byte[source.length];
+        for (int i = 0; i < source.length; i++) {
+            out[i] = (byte) ((source[i] & 0xff) * factor);
+        }
+        return out;
+    }
+
+}
@@ -0,0 +1,111 @@
+package com.shizy.scan.core;
+
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+public class LatencyHistogramTest {
+
+    /**
+     * Index of the last bucket, which also holds everything too large for the others.
+     */
+    private static final int LAST_BUCKET = LatencyHistogram.bucketOf(Long.MAX_VALUE);
+
+    @Test
+    public void smallValuesAreExact() {
+        for (int value = 0; value < 32; value++) {
+            assertEquals(value, LatencyHistogram.bucketOf(value));
+            assertEquals(value, LatencyHistogram.highestValueOf(value));
+        }
+    }
+
+    @Test
+    public void bucketsTileTheRangeWithoutGaps() {
+        long lowest = 0;
+        for (int bucket = 0; bucket < LAST_BUCKET; bucket++) {
+            final long highest = LatencyHistogram.highestValueOf(bucket);
+            assertEquals("lowest of " + bucket, bucket, LatencyHistogram.bucketOf(lowest));
+            assertEquals("highest of " + bucket, bucket, LatencyHistogram.bucketOf(highest));
+            assertEquals("after " + bucket, bucket + 1, LatencyHistogram.bucketOf(highest + 1));
+            lowest = highest + 1;
+        }
+    }
+
+    @Test
+    public void bucketsStayWithinASixteenth() {
+        for (int bucket = 32; bucket < LAST_BUCKET; bucket++) {
+            final long lowest = LatencyHistogram.highestValueOf(bucket - 1) + 1;
+            final long highest = LatencyHistogram.highestValueOf(bucket);
+            assertTrue("bucket " + bucket, (highest - lowest + 1) * 16 <= lowest);
+        }
+    }
+
+    @Test
+    public void hugeValuesLandInTheLastBucket() {
+        final long halfAnHour = 30L * 60 * 1000 * 1000 * 1000;
+        assertTrue(LatencyHistogram.bucketOf(halfAnHour) < LAST_BUCKET);
+        assertTrue(LatencyHistogram.highestValueOf(LAST_BUCKET - 1) >= halfAnHour);
+        assertEquals(LAST_BUCKET, LatencyHistogram.bucketOf(LatencyHistogram.highestValueOf(LAST_BUCKET) + 1));
+        assertEquals(LAST_BUCKET, LatencyHistogram.bucketOf(Long.MAX_VALUE));
+    }
+
+    @Test
+    public void percentilesRoundUpToTheirBucket() {
+        final LatencyHistogram histogram = new LatencyHistogram();
+        for (long value = 1; value <= 1000; value++) {
+            histogram.record(value * 1000);
+        }
+        assertEquals(1000, histogram.getCount());
+        assertEquals(1000 * 1000, histogram.getMaxNanos());
+        assertEquals(500500, histogram.getMeanNanos());
+
+        final long median = histogram.getValueAtPercentile(50);
+        assertTrue(String.valueOf(median), median >= 500 * 1000 && median <= 500 * 1000 * 17 / 16);
+        final long p99 = histogram.getValueAtPercentile(99);
+        assertTrue(String.valueOf(p99), p99 >= 990 * 1000 && p99 <= 1000 * 1000);
+        assertEquals(histogram.getMaxNanos(), histogram.getValueAtPercentile(100));
+    }
+
+    @Test
+    public void emptyAndResetReportZero() {
+        final LatencyHistogram histogram = new LatencyHistogram();
+        assertEquals(0, histogram.getValueAtPercentile(50));
+        assertEquals(0, histogram.getMeanNanos());
+
+        histogram.record(12345);
+        histogram.reset();
+        assertEquals(0, histogram.getCount());
+        assertEquals(0, histogram.getMaxNanos());
+        assertEquals(0, histogram.getValueAtPercentile(99));
+    }
+
+    @Test
+    public void negativeDurationsCountAsZero() {
+        final LatencyHistogram histogram = new LatencyHistogram();
+        histogram.record(-5);
+        assertEquals(1, histogram.getCount());
+        assertEquals(0, histogram.getValueAtPercentile(100));
+    }
+
+    @Test
+    public void concurrentRecordingLosesNothing() throws InterruptedException {
+        final LatencyHistogram histogram = new LatencyHistogram();
+        final Thread[] threads = new Thread[4];
+        for (int t = 0; t < threads.length; t++) {
+            final long base = t * 1000000L;
+            threads[t] = new Thread(() -> {
+                for (int i = 0; i < 100000; i++) {
+                    histogram.record(base + i);
+                }
+            });
+            threads[t].start();
+        }
+        for (Thread thread : threads) {
+            thread.join();
+        }
+        assertEquals(400000, histogram.getCount());
+        assertEquals(3000000L + 99999, histogram.getMaxNanos());
+    }
+
+}
@@ -0,0 +1,190 @@
+package com.shizy.scan.core;
+
+import com.google.zxing.BinaryBitmap;
+import com.google.zxing.LuminanceSource;
+import com.google.zxing.NotFoundException;
+import com.google.zxing.common.BitArray;
+import com.google.zxing.common.BitMatrix;
+import com.google.zxing.common.GlobalHistogramBinarizer;
+import com.google.zxing.common.HybridBinarizer;
+
+import org.junit.Assume;
+import org.junit.Test;
+
+import java.lang.management.ManagementFactory;
+import java.nio.ByteBuffer;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+public class PooledBinarizerTest {
+
+    /**
+     * Frames of changing content and size through one context, as a scanner would see them.
+     */
+    private static final LuminanceSource[] FRAMES = {
+            source(TestFrames.qrCode("pooled", 320, 240, 160), 320, 240),
+            source(TestFrames.noise(320, 240, 1), 320, 240),
+            source(TestFrames.code128("POOLED-128", 320, 240, 240, 60), 320, 240),
+            // Smaller, then larger than before, so the buffers are both reused and grown.
+            source(TestFrames.qrCode("smaller", 200, 150, 120), 200, 150),
+            source(TestFrames.noise(480, 360, 2), 480, 360),
+            // Below the hybrid binarizer's minimum size, where it falls back to the global histogram.
+            source(TestFrames.noise(30, 30, 3), 30, 30),
+            source(TestFrames.qrCode("pooled", 320, 240, 160), 320, 240),
+    };
+
+    private static LuminanceSource source(byte[] luminances, int width, int height) {
+        return new YPlaneLuminanceSource(ByteBuffer.wrap(luminances), width, height, width, 1);
+    }
+
+    @Test
+    public void hybridMatchesZxingAcrossReusedBuffers() throws NotFoundException {
+        final DecodeContext context = new DecodeContext();
+        for (LuminanceSource source : FRAMES) {
+            assertEquals(new HybridBinarizer(source).getBlackMatrix(),
+                    context.newBinaryBitmap(source).getBlackMatrix());
+        }
+    }
+
+    @Test
+    public void globalHistogramMatchesZxingAcrossReusedBuffers() throws NotFoundException {
+        final DecodeContext context = new DecodeContext();
+        for (LuminanceSource source : FRAMES) {
+            final BinaryBitmap pooled = context.newGlobalHistogramBitmap(source);
+            final GlobalHistogramBinarizer zxing = new GlobalHistogramBinarizer(source);
+            assertEquals(zxing.getBlackMatrix(), pooled.getBlackMatrix());
+            for (int y = 0; y < source.getHeight(); y += 7) {
+                assertEquals(zxing.getBlackRow(y, null), pooled.getBlackRow(y, new BitArray(source.getWidth())));
+            }
+        }
+    }
+
+    @Test
+    public void flatFramesBinarizeLikeZxing() throws NotFoundException {
+        final DecodeContext context = new DecodeContext();
+        for (int level : new int[]{0, 8, 128, 255}) {
+            final LuminanceSource flat = source(TestFrames.flat(100, 100, level), 100, 100);
+            BitMatrix expected;
+            try {
+                expected = new GlobalHistogramBinarizer(flat).getBlackMatrix();
+            } catch (NotFoundException e) {
+                expected = null;
+            }
+            try {
+                final BitMatrix actual = context.newGlobalHistogramBitmap(flat).getBlackMatrix();
+                assertEquals("level " + level, expected, actual);
+            } catch (NotFoundException e) {
+                if (expected != null) {
+                    throw e;
+                }
+            }
+            assertEquals(new HybridBinarizer(flat).getBlackMatrix(), context.newBinaryBitmap(flat).getBlackMatrix());
+        }
+    }
+
+    @Test
+    public void reusesMatrixWhileSizeStaysTheSame() throws NotFoundException {
+        final DecodeContext context = new DecodeContext();
+        final BitMatrix first = context.newBinaryBitmap(FRAMES[0]).getBlackMatrix();
+        final BitMatrix second = context.newBinaryBitmap(FRAMES[1]).getBlackMatrix();
+        assertSame(first, second);
+        assertEquals(new HybridBinarizer(FRAMES[1]).getBlackMatrix(), second);
+    }
+
+    @Test
+    public void binarizingAllocatesNearlyNothingOnceWarm() throws NotFoundException {
+        final java.lang.management.ThreadMXBean threads = ManagementFactory.getThreadMXBean();
+        Assume.assumeTrue(threads instanceof com.sun.management.ThreadMXBean);
+        final com.sun.management.ThreadMXBean allocations = (com.sun.management.ThreadMXBean) threads;
+        Assume.assumeTrue(allocations.isThreadAllocatedMemorySupported());
+        allocations.setThreadAllocatedMemoryEnabled(true);
+
+        final int width = 640;
+        final int height = 480;
+        final LuminanceSource source = source(TestFrames.qrCode("allocations", width, height, 300), width, height);
+        final DecodeContext context = new DecodeContext();
+        final int frames = 200;
+        for (int i = 0; i < frames; i++) {
+            context.newBinaryBitmap(source).getBlackMatrix();
+        }
+        final long threadId = Thread.currentThread().getId();
+        long before = allocations.getThreadAllocatedBytes(threadId);
+        for (int i = 0; i < frames; i++) {
+            context.newBinaryBitmap(source).getBlackMatrix();
+        }
+        final long pooledPerFrame = (allocations.getThreadAllocatedBytes(threadId) - before) / frames;
+
+        before = allocations.getThreadAllocatedBytes(threadId);
+        for (int i = 0; i < frames; i++) {
+            new BinaryBitmap(new HybridBinarizer(source)).getBlackMatrix();
+        }
+        final long zxingPerFrame = (allocations.getThreadAllocatedBytes(threadId) - before) / frames;
+
+        // Only the bitmap and binarizer objects themselves are new; ZXing copies the whole frame.
+        assertTrue("pooled " + pooledPerFrame + " bytes/frame", pooledPerFrame < 256);
+        assertTrue("zxing " + zxingPerFrame + " bytes/frame", zxingPerFrame > width * height);
+    }
+
+    @Test
+    public void rotatedSourcesBinarizeLikeRotatedCopies() throws NotFoundException {
+        final DecodeContext context = new DecodeContext();
+        // Block-aligned sizes, so that the hybrid blocks cover the same pixels either way round.
+        final int width = 320;
+        final int height = 240;
+        final byte[][] planes = {
+                TestFrames.qrCode("rotated", width, height, 160),
+                TestFrames.noise(width, height, 7),
+        };
+        for (byte[] plane : planes) {
+            for (int rotation : new int[]{90, 180, 270}) {
+                final LuminanceSource rotated = new YPlaneLuminanceSource(ByteBuffer.wrap(plane), width, height,
+                        width, 1, 0, 0, width, height, rotation);
+                final int uprightWidth = rotated.getWidth();
+                final int uprightHeight = rotated.getHeight();
+                final LuminanceSource copy = source(TestFrames.rotated(plane, width, height, rotation),
+                        uprightWidth, uprightHeight);
+                assertEquals("hybrid " + rotation, new HybridBinarizer(copy).getBlackMatrix(),
+                        context.newBinaryBitmap(rotated).getBlackMatrix());
+                final GlobalHistogramBinarizer zxing = new GlobalHistogramBinarizer(copy);
+                final BinaryBitmap pooled = context.newGlobalHistogramBitmap(rotated);
+                assertEquals("global " + rotation, zxing.getBlackMatrix(), pooled.getBlackMatrix());
+                for (int y = 0; y < uprightHeight; y += 7) {
+                    assertEquals(zxing.getBlackRow(y, null), pooled.getBlackRow(y, new BitArray(uprightWidth)));
+                }
+            }
+        }
+    }
+
+    @Test
+    public void derivedBitmapsBinarizeLikeZxingWithoutTouchingTheParent() throws NotFoundException {
+        final DecodeContext context = new DecodeContext();
+        final LuminanceSource source = FRAMES[0];
+        final BinaryBitmap parent = context.newBinaryBitmap(source);
+        final BitMatrix parentMatrix = parent.getBlackMatrix();
+        final BitMatrix expectedParent = new HybridBinarizer(source).getBlackMatrix();
+
+        final BinaryBitmap crop = parent.crop(40, 30, 200, 160);
+        assertEquals(new HybridBinarizer(source.crop(40, 30, 200, 160)).getBlackMatrix(), crop.getBlackMatrix());
+        final BinaryBitmap rotated = parent.rotateCounterClockwise();
+        final LuminanceSource rotatedSource = source.rotateCounterClockwise();
+        assertEquals(new HybridBinarizer(rotatedSource).getBlackMatrix(), rotated.getBlackMatrix());
+        final GlobalHistogramBinarizer zxing = new GlobalHistogramBinarizer(rotatedSource);
+        for (int y = 0; y < rotatedSource.getHeight(); y += 7) {
+            assertEquals(zxing.getBlackRow(y, null), rotated.getBlackRow(y, new BitArray(rotatedSource.getWidth())));
+        }
+
+        assertSame(parentMatrix, parent.getBlackMatrix());
+        assertEquals(expectedParent, parentMatrix);
+    }
+
+    @Test(expected = DecodeCancelledException.class)
+    public void derivedBitmapsCheckTheToken() throws NotFoundException {
+        final DecodeContext context = new DecodeContext();
+        final BinaryBitmap rotated = context.newBinaryBitmap(FRAMES[2]).rotateCounterClockwise();
+        context.token = () -> true;
+        rotated.getBlackRow(0, null);
+    }
+
+}
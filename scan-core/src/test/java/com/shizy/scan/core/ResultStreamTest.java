@@ -0,0 +1,215 @@
+package com.shizy.scan.core;
+
+import com.google.zxing.BarcodeFormat;
+import com.google.zxing.Result;
+
+import org.junit.After;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.Executor;
+import java.util.function.BooleanSupplier;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+public class ResultStreamTest {
+
+    private static final long TIMEOUT_MILLIS = 5000;
+
+    private final ResultStream stream = new ResultStream();
+
+    /**
+     * Holds drain tasks until the test runs them, which stands for a subscriber that is busy.
+     */
+    private static final class ManualExecutor implements Executor {
+
+        private final ConcurrentLinkedQueue<Runnable> tasks = new ConcurrentLinkedQueue<>();
+
+        @Override
+        public void execute(Runnable command) {
+            tasks.add(command);
+        }
+
+        int pending() {
+            return tasks.size();
+        }
+
+        void runAll() {
+            Runnable task;
+            while ((task = tasks.poll()) != null) {
+                task.run();
+            }
+        }
+
+    }
+
+    private static final class Recorder implements ResultStream.Subscriber {
+
+        final List<String> texts = new CopyOnWriteArrayList<>();
+
+        @Override
+        public void onResult(ScanResult result) {
+            texts.add(result.getText());
+        }
+
+    }
+
+    @After
+    public void tearDown() {
+        stream.close();
+    }
+
+    private static ScanResult result(int i) {
+        return new ScanResult(new Result("r" + i, null, null, BarcodeFormat.QR_CODE), 1, i, i, i);
+    }
+
+    private static void await(String what, BooleanSupplier condition) throws InterruptedException {
+        final long deadline = System.currentTimeMillis() + TIMEOUT_MILLIS;
+        while (!condition.getAsBoolean()) {
+            if (System.currentTimeMillis() > deadline) {
+                fail("timed out waiting for " + what);
+            }
+            Thread.sleep(1);
+        }
+    }
+
+    private static List<String> texts(int from, int to) {
+        final List<String> texts = new ArrayList<>();
+        for (int i = from; i < to; i++) {
+            texts.add("r" + i);
+        }
+        return texts;
+    }
+
+    @Test
+    public void dropOldestKeepsTheNewest() throws InterruptedException {
+        final ManualExecutor executor = new ManualExecutor();
+        final Recorder recorder = new Recorder();
+        final ResultStream.Subscription subscription =
+                stream.subscribe(recorder, executor, 3, ResultStream.OverflowPolicy.DROP_OLDEST);
+        for (int i = 0; i < 10; i++) {
+            stream.publish(result(i));
+        }
+        await("overflow", () -> subscription.getOverflowed() == 7);
+        assertEquals(1, executor.pending());
+
+        executor.runAll();
+        assertEquals(texts(7, 10), recorder.texts);
+        assertEquals(3, subscription.getDelivered());
+        assertEquals(0, stream.getDropped());
+    }
+
+    @Test
+    public void latestOnlyIgnoresTheCapacity() throws InterruptedException {
+        final ManualExecutor executor = new ManualExecutor();
+        final Recorder recorder = new Recorder();
+        final ResultStream.Subscription subscription =
+                stream.subscribe(recorder, executor, 16, ResultStream.OverflowPolicy.LATEST_ONLY);
+        for (int i = 0; i < 10; i++) {
+            stream.publish(result(i));
+        }
+        await("overflow", () -> subscription.getOverflowed() == 9);
+
+        executor.runAll();
+        assertEquals(texts(9, 10), recorder.texts);
+    }
+
+    @Test
+    public void blockDeliversInOrderAndCountsWhatTheHandOffDrops() throws InterruptedException {
+        final ManualExecutor executor = new ManualExecutor();
+        final Recorder recorder = new Recorder();
+        final ResultStream.Subscription subscription =
+                stream.subscribe(recorder, executor, 2, ResultStream.OverflowPolicy.BLOCK);
+        final int published = 500;
+        for (int i = 0; i < published; i++) {
+            stream.publish(result(i));
+        }
+        assertEquals(published, stream.getPublished());
+
+        await("delivery", () -> {
+            executor.runAll();
+            return subscription.getDelivered() + stream.getDropped() == published;
+        });
+        // The dispatcher stalled on the full buffer while publishing went on.
+        assertTrue(String.valueOf(stream.getDropped()), stream.getDropped() > 0);
+        assertEquals(0, subscription.getOverflowed());
+        assertEquals("r" + (published - 1), recorder.texts.get(recorder.texts.size() - 1));
+        for (int i = 1; i < recorder.texts.size(); i++) {
+            final int previous = Integer.parseInt(recorder.texts.get(i - 1).substring(1));
+            final int current = Integer.parseInt(recorder.texts.get(i).substring(1));
+            assertTrue(recorder.texts.toString(), current > previous);
+        }
+    }
+
+    @Test
+    public void keepsDrainingAfterTheSubscriberThrows() throws InterruptedException {
+        final Logger logger = Logger.getLogger(ResultStream.class.getName());
+        final Level level = logger.getLevel();
+        logger.setLevel(Level.OFF);
+        try {
+            final ManualExecutor executor = new ManualExecutor();
+            final Recorder recorder = new Recorder();
+            final ResultStream.Subscription subscription = stream.subscribe(result -> {
+                if (result.getText().equals("r1")) {
+                    throw new IllegalStateException("boom");
+                }
+                recorder.onResult(result);
+            }, executor, 8, ResultStream.OverflowPolicy.DROP_OLDEST);
+            for (int i = 0; i < 3; i++) {
+                stream.publish(result(i));
+            }
+            await("hand-off", () -> {
+                executor.runAll();
+                return subscription.getDelivered() + subscription.getFailed() == 3;
+            });
+            assertEquals(2, subscription.getDelivered());
+            assertEquals(1, subscription.getFailed());
+            assertEquals("[r0, r2]", recorder.texts.toString());
+        } finally {
+            logger.setLevel(level);
+        }
+    }
+
+    @Test
+    public void cancelStopsDeliveries() throws InterruptedException {
+        final ManualExecutor executor = new ManualExecutor();
+        final Recorder recorder = new Recorder();
+        final Recorder other = new Recorder();
+        final ResultStream.Subscription subscription =
+                stream.subscribe(recorder, executor, 4, ResultStream.OverflowPolicy.DROP_OLDEST);
+        stream.subscribe(other, Runnable::run, 4, ResultStream.OverflowPolicy.DROP_OLDEST);
+        stream.publish(result(0));
+        await("other subscriber", () -> other.texts.size() == 1);
+
+        subscription.cancel();
+        stream.publish(result(1));
+        await("other subscriber", () -> other.texts.size() == 2);
+        executor.runAll();
+        assertTrue(recorder.texts.isEmpty());
+    }
+
+    @Test
+    public void publishingWithoutSubscribersCountsNothing() {
+        stream.publish(result(0));
+        assertEquals(0, stream.getPublished());
+    }
+
+    @Test(expected = IllegalStateException.class)
+    public void closedStreamRejectsSubscribers() {
+        stream.close();
+        stream.subscribe(new Recorder(), Runnable::run, 1, ResultStream.OverflowPolicy.LATEST_ONLY);
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void rejectsZeroCapacity() {
+        stream.subscribe(new Recorder(), Runnable::run, 0, ResultStream.OverflowPolicy.DROP_OLDEST);
+    }
+
+}
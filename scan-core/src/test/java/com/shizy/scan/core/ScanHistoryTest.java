@@ -0,0 +1,138 @@
+package com.shizy.scan.core;
+
+import com.google.zxing.BarcodeFormat;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.file.Files;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+public class ScanHistoryTest {
+
+    @Rule
+    public final TemporaryFolder folder = new TemporaryFolder();
+
+    @Test
+    public void keepsCodesAcrossSessions() throws IOException {
+        final File directory = folder.newFolder();
+        try (ScanHistory history = ScanHistory.open(directory)) {
+            assertNull(history.getFailure());
+            history.record("first", BarcodeFormat.QR_CODE, 1000);
+            history.record("second", BarcodeFormat.CODE_128, 2000);
+            history.record("first", BarcodeFormat.QR_CODE, 3000);
+            // Seen while still queued.
+            assertTrue(history.contains("second"));
+        }
+        try (ScanHistory history = ScanHistory.open(directory)) {
+            assertEquals(2, history.size());
+            assertEquals(3, history.getRecordCount());
+            assertEquals(3000, history.lastSeen("first"));
+            assertEquals(2000, history.lastSeen("second"));
+            assertEquals(-1, history.lastSeen("third"));
+            assertFalse(history.contains("third"));
+        }
+    }
+
+    @Test
+    public void rebuildsADeletedIndexFromTheLog() throws IOException {
+        final File directory = folder.newFolder();
+        try (ScanHistory history = ScanHistory.open(directory)) {
+            for (int i = 0; i < 100; i++) {
+                history.record("code " + i % 40, BarcodeFormat.QR_CODE, i);
+            }
+        }
+        assertTrue(new File(directory, ScanHistory.INDEX_FILE).delete());
+        try (ScanHistory history = ScanHistory.open(directory)) {
+            assertEquals(40, history.size());
+            assertEquals(100, history.getRecordCount());
+            assertEquals(99, history.lastSeen("code 19"));
+        }
+    }
+
+    @Test
+    public void replaysUpToATornRecord() throws IOException {
+        final File directory = folder.newFolder();
+        try (ScanHistory history = ScanHistory.open(directory)) {
+            history.record("kept", BarcodeFormat.QR_CODE, 1);
+            history.flush();
+            history.record("torn", BarcodeFormat.QR_CODE, 2);
+        }
+        // Log header, then a record header, time and format, and the text of the first record.
+        final int torn = 16 + 8 + 9 + "kept".length();
+        try (RandomAccessFile log = new RandomAccessFile(new File(directory, ScanHistory.LOG_FILE), "rw")) {
+            // The last byte of the text never made it to disk.
+            log.seek(torn + 8 + 9 + "torn".length() - 1);
+            log.write(0);
+        }
+        // The index had already taken the record in, have it replayed instead.
+        assertTrue(new File(directory, ScanHistory.INDEX_FILE).delete());
+
+        try (ScanHistory history = ScanHistory.open(directory)) {
+            assertTrue(history.contains("kept"));
+            assertFalse(history.contains("torn"));
+            assertEquals(1, history.getRecordCount());
+            history.record("after", BarcodeFormat.QR_CODE, 3);
+        }
+        try (ScanHistory history = ScanHistory.open(directory)) {
+            assertTrue(history.contains("after"));
+            assertFalse(history.contains("torn"));
+            assertEquals(2, history.size());
+            assertEquals(2, history.getRecordCount());
+        }
+    }
+
+    /**
+     * The writer dies right after a batch has grown the index, before the batch went into it. The
+     * batch is in the log by then, so reopening must replay it, like rebuilding the index would.
+     */
+    @Test
+    public void replaysTheBatchThatGrewTheIndex() throws IOException {
+        final File directory = folder.newFolder();
+        final int before = 8000;
+        final int after = 500;
+        try (ScanHistory history = ScanHistory.open(directory)) {
+            for (int i = 0; i < before; i++) {
+                history.record("code " + i, BarcodeFormat.QR_CODE, i);
+            }
+        }
+
+        final ScanHistory crashing = ScanHistory.open(directory, () -> {
+            throw new IllegalStateException("crash");
+        });
+        for (int i = before; i < before + after; i++) {
+            crashing.record("code " + i, BarcodeFormat.QR_CODE, i);
+        }
+        try {
+            crashing.close();
+            fail("the index never grew");
+        } catch (IOException expected) {
+            // The writer stopped at the hook.
+            assertSame(expected, crashing.getFailure());
+        }
+
+        final File rebuilt = folder.newFolder();
+        Files.copy(new File(directory, ScanHistory.LOG_FILE).toPath(), new File(rebuilt, ScanHistory.LOG_FILE).toPath());
+        try (ScanHistory reopened = ScanHistory.open(directory);
+             ScanHistory reference = ScanHistory.open(rebuilt)) {
+            // Growing takes more than half of the initial 16384 slots.
+            assertTrue(String.valueOf(reopened.size()), reopened.size() > 8192);
+            assertEquals(reference.size(), reopened.size());
+            assertEquals(reference.getRecordCount(), reopened.getRecordCount());
+            for (int i = 0; i < before + after; i++) {
+                assertEquals("code " + i, reference.contains("code " + i), reopened.contains("code " + i));
+            }
+        }
+    }
+
+}
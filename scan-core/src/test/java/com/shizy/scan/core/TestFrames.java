@@ -0,0 +1,130 @@
+package com.shizy.scan.core;
+
+import com.google.zxing.BarcodeFormat;
+import com.google.zxing.WriterException;
+import com.google.zxing.common.BitMatrix;
+import com.google.zxing.oned.Code128Writer;
+import com.google.zxing.qrcode.QRCodeWriter;
+
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+import java.util.Random;
+
+/**
+ * Synthetic luminance frames for the tests.
+ */
+final class TestFrames {
+
+    static final byte WHITE = (byte) 220;
+    static final byte BLACK = (byte) 30;
+
+    private TestFrames() {
+    }
+
+    /**
+     * @return a packed {@code width} x {@code height} frame with a QR code of {@code size} pixels
+     * centered in it
+     */
+    static byte[] qrCode(String text, int width, int height, int size) {
+        try {
+            return draw(new QRCodeWriter().encode(text, BarcodeFormat.QR_CODE, size, size), width, height);
+        } catch (WriterException e) {
+            throw new AssertionError(e);
+        }
+    }
+
+    /**
+     * @return a packed frame with a horizontal Code 128 barcode of {@code barWidth} x
+     * {@code barHeight} pixels centered in it
+     */
+    static byte[] code128(String text, int width, int height, int barWidth, int barHeight) {
+        return draw(new Code128Writer().encode(text, BarcodeFormat.CODE_128, barWidth, barHeight), width, height);
+    }
+
+    private static byte[] draw(BitMatrix code, int width, int height) {
+        final byte[] frame = new byte[width * height];
+        Arrays.fill(frame, WHITE);
+        final int left = (width - code.getWidth()) / 2;
+        final int top = (height - code.getHeight()) / 2;
+        for (int y = 0; y < code.getHeight(); y++) {
+            for (int x = 0; x < code.getWidth(); x++) {
+                if (code.get(x, y)) {
+                    frame[(top + y) * width + left + x] = BLACK;
+                }
+            }
+        }
+        return frame;
+    }
+
+    /**
+     * @return a packed frame of uniform noise around mid grey
+     */
+    static byte[] noise(int width, int height, long seed) {
+        final byte[] frame = new byte[width * height];
+        final Random random = new Random(seed);
+        for (int i = 0; i < frame.length; i++) {
+            frame[i] = (byte) (96 + random.nextInt(64));
+        }
+        return frame;
+    }
+
+    /**
+     * @return a packed frame of one grey level
+     */
+    static byte[] flat(int width, int height, int level) {
+        final byte[] frame = new byte[width * height];
+        Arrays.fill(frame, (byte) level);
+        return frame;
+    }
+
+    /**
+     * Spreads a packed frame out as a camera would lay out its Y plane, with row padding and
+     * interleaved bytes. Padding is filled with a value no test frame uses, so that reading it shows.
+     */
+    static ByteBuffer padded(byte[] packed, int width, int height, int rowStride, int pixelStride) {
+        final byte[] plane = new byte[(height - 1) * rowStride + (width - 1) * pixelStride + 1];
+        Arrays.fill(plane, (byte) 0x5a);
+        for (int y = 0; y < height; y++) {
+            for (int x = 0; x < width; x++) {
+                plane[y * rowStride + x * pixelStride] = packed[y * width + x];
+            }
+        }
+        return ByteBuffer.wrap(plane);
+    }
+
+    /**
+     * @return the {@code width} x {@code height} rectangle of a packed frame at ({@code left},
+     * {@code top})
+     */
+    static byte[] crop(byte[] packed, int frameWidth, int left, int top, int width, int height) {
+        final byte[] out = new byte[width * height];
+        for (int y = 0; y < height; y++) {
+            System.arraycopy(packed, (top + y) * frameWidth + left, out, y * width, width);
+        }
+        return out;
+    }
+
+    /**
+     * @return a packed frame turned clockwise by {@code degrees}, one pixel at a time; with 90 or
+     * 270 it is {@code height} wide and {@code width} high
+     */
+    static byte[] rotated(byte[] packed, int width, int height, int degrees) {
+        byte[] out = packed;
+        int w = width;
+        int h = height;
+        for (int turn = 0; turn < degrees / 90; turn++) {
+            final byte[] turned = new byte[out.length];
+            for (int y = 0; y < h; y++) {
+                for (int x = 0; x < w; x++) {
+                    turned[x * h + h - 1 - y] = out[y * w + x];
+                }
+            }
+            out = turned;
+            final int swap = w;
+            w = h;
+            h = swap;
+        }
+        return out;
+    }
+
+}
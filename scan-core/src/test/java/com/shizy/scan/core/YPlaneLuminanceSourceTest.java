@@ -0,0 +1,218 @@
+package com.shizy.scan.core;
+
+import com.google.zxing.BinaryBitmap;
+import com.google.zxing.LuminanceSource;
+import com.google.zxing.PlanarYUVLuminanceSource;
+import com.google.zxing.Result;
+import com.google.zxing.common.HybridBinarizer;
+import com.google.zxing.qrcode.QRCodeReader;
+
+import org.junit.Test;
+
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.fail;
+
+public class YPlaneLuminanceSourceTest {
+
+    private static final int WIDTH = 64;
+    private static final int HEIGHT = 48;
+
+    @Test
+    public void readsRowsPastRowPadding() {
+        assertReadsPacked(WIDTH, 1);
+        assertReadsPacked(WIDTH + 13, 1);
+    }
+
+    @Test
+    public void readsInterleavedPixels() {
+        assertReadsPacked(WIDTH * 2, 2);
+        assertReadsPacked(WIDTH * 2 + 7, 2);
+        // The last pixel of a row needs no trailing bytes.
+        assertReadsPacked(WIDTH * 2 - 1, 2);
+    }
+
+    private static void assertReadsPacked(int rowStride, int pixelStride) {
+        final byte[] packed = TestFrames.noise(WIDTH, HEIGHT, rowStride);
+        final YPlaneLuminanceSource source = new YPlaneLuminanceSource(
+                TestFrames.padded(packed, WIDTH, HEIGHT, rowStride, pixelStride), WIDTH, HEIGHT, rowStride, pixelStride);
+        assertEquals(WIDTH, source.getWidth());
+        assertEquals(HEIGHT, source.getHeight());
+        assertArrayEquals(packed, source.getMatrix());
+        for (int y = 0; y < HEIGHT; y++) {
+            assertArrayEquals(TestFrames.crop(packed, WIDTH, 0, y, WIDTH, 1), source.getRow(y, null));
+        }
+    }
+
+    @Test
+    public void cropsInConstructor() {
+        final byte[] packed = TestFrames.noise(WIDTH, HEIGHT, 1);
+        final ByteBuffer plane = TestFrames.padded(packed, WIDTH, HEIGHT, WIDTH * 2 + 3, 2);
+        final YPlaneLuminanceSource source = new YPlaneLuminanceSource(plane, WIDTH, HEIGHT, WIDTH * 2 + 3, 2,
+                5, 7, 20, 30);
+        assertEquals(20, source.getWidth());
+        assertEquals(30, source.getHeight());
+        assertArrayEquals(TestFrames.crop(packed, WIDTH, 5, 7, 20, 30), source.getMatrix());
+    }
+
+    @Test
+    public void cropsOfCropsAddUp() {
+        final byte[] packed = TestFrames.noise(WIDTH, HEIGHT, 2);
+        final LuminanceSource source = new YPlaneLuminanceSource(
+                TestFrames.padded(packed, WIDTH, HEIGHT, WIDTH + 9, 1), WIDTH, HEIGHT, WIDTH + 9, 1)
+                .crop(4, 3, 40, 30)
+                .crop(6, 5, 12, 10);
+        assertArrayEquals(TestFrames.crop(packed, WIDTH, 10, 8, 12, 10), source.getMatrix());
+        assertArrayEquals(TestFrames.crop(packed, WIDTH, 10, 17, 12, 1), source.getRow(9, null));
+    }
+
+    @Test
+    public void readsFrameCrop() {
+        final byte[] packed = TestFrames.noise(WIDTH, HEIGHT, 3);
+        final Frame frame = new Frame(TestFrames.padded(packed, WIDTH, HEIGHT, WIDTH + 4, 1), WIDTH, HEIGHT,
+                WIDTH + 4, 1, 0, 0L).withCrop(8, 6, 32, 24);
+        assertArrayEquals(TestFrames.crop(packed, WIDTH, 8, 6, 32, 24), new YPlaneLuminanceSource(frame).getMatrix());
+    }
+
+    @Test
+    public void fillsGivenRow() {
+        final YPlaneLuminanceSource source = new YPlaneLuminanceSource(
+                ByteBuffer.wrap(TestFrames.noise(WIDTH, HEIGHT, 4)), WIDTH, HEIGHT, WIDTH, 1);
+        final byte[] row = new byte[WIDTH];
+        assertSame(row, source.getRow(1, row));
+    }
+
+    @Test
+    public void leavesCallersBufferPositionAlone() {
+        final ByteBuffer plane = TestFrames.padded(TestFrames.noise(WIDTH, HEIGHT, 5), WIDTH, HEIGHT, WIDTH, 1);
+        plane.position(17);
+        new YPlaneLuminanceSource(plane, WIDTH, HEIGHT, WIDTH, 1).getMatrix();
+        assertEquals(17, plane.position());
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void rejectsCropOutsidePlane() {
+        new YPlaneLuminanceSource(ByteBuffer.allocate(WIDTH * HEIGHT), WIDTH, HEIGHT, WIDTH, 1, 10, 0, WIDTH - 9, HEIGHT);
+    }
+
+    /**
+     * The plane around a crop holds pixels, so a second crop reaching past the first must fail
+     * rather than read them.
+     */
+    @Test
+    public void rejectsCropOutsideSource() {
+        final LuminanceSource source = new YPlaneLuminanceSource(ByteBuffer.allocate(WIDTH * HEIGHT), WIDTH, HEIGHT,
+                WIDTH, 1, 10, 10, 40, 30, 90);
+        // Upright, the source is 30 wide and 40 high.
+        final int[][] crops = {{-1, 0, 10, 10}, {0, -1, 10, 10}, {21, 0, 10, 10}, {0, 31, 10, 10}, {0, 0, 0, 10}};
+        for (int[] crop : crops) {
+            try {
+                source.crop(crop[0], crop[1], crop[2], crop[3]);
+                fail(Arrays.toString(crop));
+            } catch (IllegalArgumentException expected) {
+                // rejected
+            }
+        }
+        assertEquals(30, source.crop(0, 0, 30, 40).getWidth());
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void rejectsRowStrideShorterThanRow() {
+        new YPlaneLuminanceSource(ByteBuffer.allocate(WIDTH * HEIGHT * 2), WIDTH, HEIGHT, WIDTH * 2 - 2, 2);
+    }
+
+    @Test
+    public void decodesPaddedPlaneLikePackedCopy() throws Exception {
+        final int width = 320;
+        final int height = 240;
+        final byte[] packed = TestFrames.qrCode("stride", width, height, 150);
+        final Result expected = new QRCodeReader().decode(new BinaryBitmap(new HybridBinarizer(
+                new PlanarYUVLuminanceSource(packed, width, height, 0, 0, width, height, false))));
+
+        final int[][] layouts = {{width + 32, 1}, {width * 2, 2}, {width * 2 + 64, 2}};
+        for (int[] layout : layouts) {
+            final Result actual = new QRCodeReader().decode(new BinaryBitmap(new HybridBinarizer(
+                    new YPlaneLuminanceSource(TestFrames.padded(packed, width, height, layout[0], layout[1]),
+                            width, height, layout[0], layout[1]))));
+            assertEquals(expected.getText(), actual.getText());
+            assertArrayEquals(expected.getResultPoints(), actual.getResultPoints());
+        }
+    }
+
+    @Test
+    public void rotatedSourcesMatchRotatedCopies() {
+        final byte[] packed = TestFrames.noise(WIDTH, HEIGHT, 4);
+        final ByteBuffer plane = TestFrames.padded(packed, WIDTH, HEIGHT, WIDTH * 2 + 5, 2);
+        final byte[] crop = TestFrames.crop(packed, WIDTH, 3, 5, 40, 30);
+        for (int rotation : new int[]{90, 180, 270}) {
+            final byte[] expected = TestFrames.rotated(crop, 40, 30, rotation);
+            final YPlaneLuminanceSource source = new YPlaneLuminanceSource(plane, WIDTH, HEIGHT, WIDTH * 2 + 5, 2,
+                    3, 5, 40, 30, rotation);
+            final int width = rotation == 180 ? 40 : 30;
+            assertEquals(width, source.getWidth());
+            assertEquals(40 * 30 / width, source.getHeight());
+            assertArrayEquals("rotation " + rotation, expected, source.getMatrix());
+            for (int y = 0; y < source.getHeight(); y++) {
+                assertArrayEquals("rotation " + rotation + " row " + y,
+                        TestFrames.crop(expected, width, 0, y, width, 1), source.getRow(y, null));
+            }
+        }
+    }
+
+    @Test
+    public void uprightMappingAndItsInverseAgreeWithMatrix() {
+        final byte[] packed = TestFrames.noise(WIDTH, HEIGHT, 5);
+        final int[] mapping = new int[6];
+        for (int rotation : new int[]{0, 90, 180, 270}) {
+            final YPlaneLuminanceSource source = new YPlaneLuminanceSource(ByteBuffer.wrap(packed), WIDTH, HEIGHT,
+                    WIDTH, 1, 0, 0, WIDTH, HEIGHT, rotation);
+            final byte[] matrix = source.getMatrix();
+            source.uprightMapping(mapping);
+            for (int y = 0; y < HEIGHT; y++) {
+                for (int x = 0; x < WIDTH; x++) {
+                    final int u = x * mapping[0] + y * mapping[1] + mapping[2];
+                    final int v = x * mapping[3] + y * mapping[4] + mapping[5];
+                    assertEquals(packed[y * WIDTH + x], matrix[v * source.getWidth() + u]);
+                    assertEquals(x, source.toPlaneX(u, v), 0f);
+                    assertEquals(y, source.toPlaneY(u, v), 0f);
+                }
+            }
+        }
+    }
+
+    @Test
+    public void cropsAndRotationsOfRotatedSourcesMatchCopies() {
+        final byte[] packed = TestFrames.noise(WIDTH, HEIGHT, 6);
+        final byte[] upright = TestFrames.rotated(packed, WIDTH, HEIGHT, 90);
+        final LuminanceSource source = new YPlaneLuminanceSource(ByteBuffer.wrap(packed), WIDTH, HEIGHT, WIDTH, 1,
+                0, 0, WIDTH, HEIGHT, 90);
+        // Upright, the source is HEIGHT wide and WIDTH high.
+        final LuminanceSource cropped = source.crop(4, 10, 20, 30);
+        assertArrayEquals(TestFrames.crop(upright, HEIGHT, 4, 10, 20, 30), cropped.getMatrix());
+
+        LuminanceSource turned = source;
+        byte[] expected = upright;
+        int width = HEIGHT;
+        int height = WIDTH;
+        for (int turn = 0; turn < 4; turn++) {
+            turned = turned.rotateCounterClockwise();
+            expected = TestFrames.rotated(expected, width, height, 270);
+            final int swap = width;
+            width = height;
+            height = swap;
+            assertEquals(width, turned.getWidth());
+            assertArrayEquals("turn " + turn, expected, turned.getMatrix());
+        }
+        assertArrayEquals(upright, turned.getMatrix());
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void rejectsOddRotation() {
+        new YPlaneLuminanceSource(ByteBuffer.allocate(WIDTH * HEIGHT), WIDTH, HEIGHT, WIDTH, 1, 0, 0, WIDTH, HEIGHT, 45);
+    }
+
+}